@@ -0,0 +1,106 @@
+package nl.tudelft.sem.template.delivery.benchmarks;
+
+import com.sun.net.httpserver.HttpServer;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import nl.tudelft.sem.template.delivery.services.AuthorisationService;
+import nl.tudelft.sem.template.delivery.services.DefaultAuthorisationService;
+import nl.tudelft.sem.template.delivery.services.JwtAuthorisationService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import users_microservice.ApiClient;
+import users_microservice.api.UserApi;
+import users_microservice.model.UsersGetUserTypeIdGet200Response.UserTypeEnum;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of authorising the caller of one request: a lookup at the users service (served by a local stub, so the
+ * figure is a lower bound for a real network hop) against verifying a signed token in process.
+ * Every invocation is a new request, so the request memo and the user type cache do not hide the lookup.
+ * Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AuthorisationOverheadBenchmark {
+    private static final String SECRET = "benchmarkSecret";
+    private static final long CALLER = 42L;
+
+    @Param({"remote", "jwt"})
+    private String mode;
+
+    private HttpServer usersStub;
+    private AuthorisationService authorisationService;
+    private String token;
+
+    /**
+     * Starts the users service stub and builds the authorisation service of the selected mode.
+     *
+     * @throws IOException if the stub cannot bind a port
+     */
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        usersStub = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        byte[] body = "{\"userType\":\"Vendor\"}".getBytes(StandardCharsets.UTF_8);
+        usersStub.createContext("/users/getUserType/", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        usersStub.start();
+
+        UserApi userApi = new UserApi(new ApiClient()
+                .setBasePath("http://localhost:" + usersStub.getAddress().getPort()));
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("jwt.secret", SECRET)
+                .withProperty("authorisation.cache.enabled", "false");
+        var remote = new DefaultAuthorisationService(userApi, environment, new SimpleMeterRegistry());
+        authorisationService = "jwt".equals(mode) ? new JwtAuthorisationService(environment, remote) : remote;
+
+        token = Jwts.builder()
+                .setSubject(String.valueOf(CALLER))
+                .claim(JwtAuthorisationService.ROLE_CLAIM, UserTypeEnum.VENDOR.getValue())
+                .signWith(SignatureAlgorithm.HS256, SECRET.getBytes(StandardCharsets.UTF_8))
+                .compact();
+    }
+
+    /**
+     * Binds a fresh request carrying the caller's token to the benchmark thread.
+     */
+    @Setup(Level.Invocation)
+    public void newRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.AUTHORIZATION, "Bearer " + token);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+        usersStub.stop(0);
+    }
+
+    @Benchmark
+    public boolean authoriseCaller() {
+        return authorisationService.isVendor(CALLER);
+    }
+}
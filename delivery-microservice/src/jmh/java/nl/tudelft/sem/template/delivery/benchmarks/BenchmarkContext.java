@@ -0,0 +1,132 @@
+package nl.tudelft.sem.template.delivery.benchmarks;
+
+import nl.tudelft.sem.template.delivery.Application;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Boots the application against a private in-memory database and an empty archive directory so benchmarks do not
+ * touch the dev database file or archive.
+ */
+public final class BenchmarkContext {
+    /**
+     * Allocation size of the delivery id sequence, see the Delivery schema in the spec.
+     */
+    private static final int DELIVERY_ID_POOL = 50;
+
+    private BenchmarkContext() {
+    }
+
+    /**
+     * Starts the application without the web server.
+     *
+     * @param name name of the in-memory database, one per benchmark class
+     * @param extraArgs additional property overrides in command line form
+     * @return the running context
+     */
+    public static ConfigurableApplicationContext start(String name, String... extraArgs) {
+        return run(WebApplicationType.NONE, name, extraArgs);
+    }
+
+    /**
+     * Starts the application with the web server on a random free port, see {@link #port}.
+     *
+     * @param name name of the in-memory database, one per benchmark class
+     * @param extraArgs additional property overrides in command line form
+     * @return the running context
+     */
+    public static ConfigurableApplicationContext startWeb(String name, String... extraArgs) {
+        List<String> args = new ArrayList<>(List.of(extraArgs));
+        args.add("--server.port=0");
+        return run(WebApplicationType.SERVLET, name, args.toArray(new String[0]));
+    }
+
+    /**
+     * Gets the port the web server of a context started with {@link #startWeb} listens on.
+     *
+     * @param context the running context
+     * @return the port
+     */
+    public static int port(ConfigurableApplicationContext context) {
+        return context.getEnvironment().getProperty("local.server.port", Integer.class);
+    }
+
+    private static ConfigurableApplicationContext run(WebApplicationType type, String name, String... extraArgs) {
+        List<String> args = new ArrayList<>();
+        args.add("--jdbc.url=jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        try {
+            // a fresh archive, like the in-memory database
+            args.add("--archive.dir=" + Files.createTempDirectory("archive-" + name));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        args.addAll(List.of(extraArgs));
+
+        return new SpringApplicationBuilder(Application.class)
+                .web(type)
+                .run(args.toArray(new String[0]));
+    }
+
+    /**
+     * Inserts bare deliveries straight through JDBC, which is far faster than going through JPA. The deliveries get
+     * the ids 1 to {@code rows}. Vendor and courier ids are spread round-robin so every vendor owns
+     * {@code rows / vendors} deliveries.
+     *
+     * @param jdbcTemplate template bound to the benchmark database
+     * @param rows number of deliveries to insert
+     * @param vendors number of distinct vendors
+     * @param couriers number of distinct couriers
+     */
+    public static void seedDeliveries(JdbcTemplate jdbcTemplate, int rows, int vendors, int couriers) {
+        final int batchSize = 10_000;
+        List<Object[]> batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < rows; i++) {
+            batch.add(new Object[] {i + 1L, (long) i, (long) (i % vendors), (long) (i % couriers), i % 2 == 0});
+            if (batch.size() == batchSize) {
+                insert(jdbcTemplate, batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            insert(jdbcTemplate, batch);
+        }
+        reserveIds(jdbcTemplate, rows);
+    }
+
+    /**
+     * Inserts bare deliveries without a courier straight through JDBC, with the ids 1 to {@code rows}.
+     *
+     * @param jdbcTemplate template bound to the benchmark database
+     * @param rows number of deliveries to insert
+     */
+    public static void seedUnassignedDeliveries(JdbcTemplate jdbcTemplate, int rows) {
+        List<Object[]> batch = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            batch.add(new Object[] {i + 1L, (long) i, 0L, false});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO deliveries (delivery_id, order_id, vendor_id, delivered, version) "
+                + "VALUES (?, ?, ?, ?, 0)", batch);
+        reserveIds(jdbcTemplate, rows);
+    }
+
+    private static void insert(JdbcTemplate jdbcTemplate, List<Object[]> batch) {
+        jdbcTemplate.batchUpdate("INSERT INTO deliveries (delivery_id, order_id, vendor_id, courier_id, delivered, "
+                + "version) VALUES (?, ?, ?, ?, ?, 0)", batch);
+    }
+
+    /**
+     * Moves the delivery id sequence past the inserted ids. The pooled optimizer hands out the pool of ids below
+     * the value it reads from the sequence, so a full pool of room is left.
+     */
+    private static void reserveIds(JdbcTemplate jdbcTemplate, long lastId) {
+        jdbcTemplate.execute("ALTER SEQUENCE delivery_ids RESTART WITH " + (lastId + DELIVERY_ID_POOL + 1));
+    }
+}
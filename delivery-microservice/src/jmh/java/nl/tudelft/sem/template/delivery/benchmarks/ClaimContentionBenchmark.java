@@ -0,0 +1,111 @@
+package nl.tudelft.sem.template.delivery.benchmarks;
+
+import delivery_microservice.model.Delivery;
+import nl.tudelft.sem.template.delivery.database.DeliveryRepository;
+import nl.tudelft.sem.template.delivery.dtos.UpdateDeliveryDto;
+import nl.tudelft.sem.template.delivery.exceptions.DeliveryConflictException;
+import nl.tudelft.sem.template.delivery.exceptions.EntityNotFoundException;
+import nl.tudelft.sem.template.delivery.services.DeliveryService;
+import nl.tudelft.sem.template.delivery.services.DispatchQueue;
+import orders_microservice.ApiException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Many couriers taking unassigned deliveries at once: claiming through the dispatch queue against the previous
+ * flow of polling the unassigned ids from the database and assigning one of them with an update. The second flow
+ * can hand a delivery to several couriers; the number of such double assignments is printed after each iteration.
+ * Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(64)
+public class ClaimContentionBenchmark {
+    private static final int ROWS = 200_000;
+
+    private ConfigurableApplicationContext context;
+    private DeliveryService deliveryService;
+    private DeliveryRepository deliveryRepository;
+    private DispatchQueue dispatchQueue;
+    private JdbcTemplate jdbcTemplate;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = BenchmarkContext.start("claim");
+        deliveryService = context.getBean(DeliveryService.class);
+        deliveryRepository = context.getBean(DeliveryRepository.class);
+        dispatchQueue = context.getBean(DispatchQueue.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS claims (delivery_id BIGINT)");
+    }
+
+    /**
+     * Starts every iteration from a table of unassigned deliveries.
+     */
+    @Setup(Level.Iteration)
+    public void seed() {
+        while (dispatchQueue.poll() != null) {
+            // drain what the previous iteration left
+        }
+        jdbcTemplate.update("DELETE FROM deliveries");
+        BenchmarkContext.seedUnassignedDeliveries(jdbcTemplate, ROWS);
+        dispatchQueue.rebuild();
+    }
+
+    /**
+     * Reports how many claims the previous flow lost to a courier that assigned the same delivery.
+     */
+    @TearDown(Level.Iteration)
+    public void reportDoubleAssignments() {
+        System.out.println("deliveries assigned more than once: " + jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) - COUNT(DISTINCT delivery_id) FROM claims", Long.class));
+        jdbcTemplate.update("DELETE FROM claims");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Optional<Delivery> claim() {
+        return deliveryService.claimDelivery(ThreadLocalRandom.current().nextLong(1, 10_000));
+    }
+
+    /**
+     * Polls the unassigned ids, picks one and assigns it, recording the assignment to detect duplicates.
+     *
+     * @return the assigned delivery, or null if none was left
+     */
+    @Benchmark
+    public Delivery pollThenAssign()
+            throws EntityNotFoundException, ApiException, DeliveryConflictException {
+        List<Long> unassigned = deliveryRepository.findUnassignedDeliveryIds();
+        if (unassigned.isEmpty()) {
+            return null;
+        }
+        long deliveryId = unassigned.get(ThreadLocalRandom.current().nextInt(Math.min(unassigned.size(), 16)));
+        Delivery delivery = deliveryService.updateDelivery(null, UpdateDeliveryDto.builder()
+                .deliveryId(deliveryId)
+                .courierId(ThreadLocalRandom.current().nextLong(1, 10_000))
+                .build());
+        jdbcTemplate.update("INSERT INTO claims (delivery_id) VALUES (?)", deliveryId);
+        return delivery;
+    }
+}
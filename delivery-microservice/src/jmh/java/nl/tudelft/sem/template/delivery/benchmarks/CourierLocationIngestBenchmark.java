@@ -0,0 +1,72 @@
+package nl.tudelft.sem.template.delivery.benchmarks;
+
+import nl.tudelft.sem.template.delivery.exceptions.EntityNotFoundException;
+import nl.tudelft.sem.template.delivery.external.FakeCourierLocationData;
+import nl.tudelft.sem.template.delivery.external.FakeCourierLocationService;
+import nl.tudelft.sem.template.delivery.services.CourierPosition;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sustained courier position updates and reads per second on the latest-position store, with four threads at once.
+ * With one courier every thread races for the same slot; with 50000 couriers the threads rarely meet, which is
+ * closer to a fleet reporting every few seconds. Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(4)
+public class CourierLocationIngestBenchmark {
+    @Param({"50000", "1"})
+    private int couriers;
+
+    private FakeCourierLocationService service;
+    private final AtomicLong clock = new AtomicLong();
+
+    /**
+     * Gives every courier a first position, so the updates measure replacing a position.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        service = new FakeCourierLocationService(new FakeCourierLocationData());
+        for (long courierId = 0; courierId < couriers; courierId++) {
+            service.updatePositionOfCourier(courierId, new CourierPosition(52.0, 4.3, 0));
+        }
+    }
+
+    /**
+     * The couriers one thread walks through, each report a millisecond later than the one before.
+     */
+    @State(Scope.Thread)
+    public static class Reporter {
+        private long next;
+
+        long nextCourier(int couriers) {
+            next = (next + 7919) % couriers;
+            return next;
+        }
+    }
+
+    @Benchmark
+    public boolean update(Reporter reporter) {
+        long time = clock.incrementAndGet();
+        return service.updatePositionOfCourier(reporter.nextCourier(couriers),
+                new CourierPosition(52.0 + time * 1e-9, 4.3, time));
+    }
+
+    @Benchmark
+    public CourierPosition read(Reporter reporter) throws EntityNotFoundException {
+        return service.getPositionOfCourier(reporter.nextCourier(couriers));
+    }
+}
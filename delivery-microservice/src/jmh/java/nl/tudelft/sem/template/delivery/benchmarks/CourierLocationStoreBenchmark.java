@@ -0,0 +1,87 @@
+package nl.tudelft.sem.template.delivery.benchmarks;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import nl.tudelft.sem.template.delivery.external.FakeCourierLocationData;
+import nl.tudelft.sem.template.delivery.external.FakeCourierLocationService;
+import nl.tudelft.sem.template.delivery.services.CourierLocationService;
+import nl.tudelft.sem.template.delivery.services.OffHeapCourierLocationService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The latest-position store on the heap (FakeCourierLocationService) against the off-heap one, for 50000 couriers
+ * updated and read by four threads, in operations per second. The gc profiler reports the bytes allocated per
+ * operation next to it as gc.alloc.rate.norm. Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(4)
+public class CourierLocationStoreBenchmark {
+    private static final int COURIERS = 50_000;
+
+    @Param({"heap", "offheap"})
+    private String store;
+
+    private CourierLocationService service;
+
+    /**
+     * Builds the store and gives every courier a first position.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        FakeCourierLocationService heap = new FakeCourierLocationService(new FakeCourierLocationData());
+        service = "heap".equals(store) ? heap : new OffHeapCourierLocationService(heap, new MockEnvironment(),
+                new SimpleMeterRegistry());
+        for (long courierId = 0; courierId < COURIERS; courierId++) {
+            service.updatePositionOfCourier(courierId, 52.0, 4.3, 0);
+        }
+    }
+
+    /**
+     * The couriers one thread walks through, and the last position it read.
+     */
+    @State(Scope.Thread)
+    public static class Reporter implements CourierLocationService.PositionReader {
+        private long next;
+        private long time;
+        private double latitude;
+        private double longitude;
+        private long timestamp;
+
+        long nextCourier() {
+            next = (next + 7919) % COURIERS;
+            return next;
+        }
+
+        @Override
+        public void read(double latitude, double longitude, long timestamp) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.timestamp = timestamp;
+        }
+    }
+
+    @Benchmark
+    public boolean update(Reporter reporter) {
+        long time = ++reporter.time;
+        return service.updatePositionOfCourier(reporter.nextCourier(), 52.0 + time * 1e-9, 4.3, time);
+    }
+
+    @Benchmark
+    public double read(Reporter reporter) {
+        service.readPositionOfCourier(reporter.nextCourier(), reporter);
+        return reporter.latitude + reporter.longitude + reporter.timestamp;
+    }
+}
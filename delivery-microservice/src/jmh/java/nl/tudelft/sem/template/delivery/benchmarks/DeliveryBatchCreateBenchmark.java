@@ -0,0 +1,114 @@
+package nl.tudelft.sem.template.delivery.benchmarks;
+
+import delivery_microservice.model.CreateDeliveryRequest;
+import delivery_microservice.model.Delivery;
+import delivery_microservice.model.Location;
+import nl.tudelft.sem.template.delivery.exceptions.EntityNotFoundException;
+import nl.tudelft.sem.template.delivery.services.DeliveryService;
+import nl.tudelft.sem.template.delivery.services.DispatchQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import users_microservice.ApiException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creating the deliveries of a bulk pre-order one by one against one createDeliveries call, in deliveries per
+ * second. The batch is run with JDBC batching on and off, to separate the gain of batched inserts from the gain of
+ * a single transaction. Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DeliveryBatchCreateBenchmark {
+    private static final int BATCH = 1000;
+
+    /**
+     * Vendor of the fake users service.
+     */
+    private static final long VENDOR_ID = 3L;
+
+    @Param({"50", "1"})
+    private int jdbcBatchSize;
+
+    private ConfigurableApplicationContext context;
+    private DeliveryService deliveryService;
+    private DispatchQueue dispatchQueue;
+    private JdbcTemplate jdbcTemplate;
+    private List<CreateDeliveryRequest> requests;
+
+    /**
+     * Boots the application and builds the requests of one batch.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        context = BenchmarkContext.start("batch" + jdbcBatchSize,
+                "--spring.jpa.properties.hibernate.jdbc.batch_size=" + jdbcBatchSize);
+        deliveryService = context.getBean(DeliveryService.class);
+        dispatchQueue = context.getBean(DispatchQueue.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+        requests = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            requests.add(new CreateDeliveryRequest()
+                    .orderId((long) i)
+                    .vendorId(VENDOR_ID)
+                    .deliveryLocation(new Location()
+                            .country("Netherlands")
+                            .city("Delft")
+                            .address("Professor Schermerhornstraat 9")
+                            .postalCode("2628 CN")));
+        }
+    }
+
+    /**
+     * Starts every iteration from an empty table and dispatch queue.
+     */
+    @Setup(Level.Iteration)
+    public void clear() {
+        while (dispatchQueue.poll() != null) {
+            // drain the deliveries of the previous iteration
+        }
+        jdbcTemplate.update("DELETE FROM deliveries");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    /**
+     * Creates the deliveries the way a vendor had to before the batch endpoint.
+     *
+     * @return the last delivery
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Delivery oneByOne() throws ApiException, EntityNotFoundException {
+        Delivery last = null;
+        for (CreateDeliveryRequest request : requests) {
+            last = deliveryService.createDelivery(request.getOrderId(), request.getVendorId(),
+                    request.getDeliveryLocation(), request.getEstimatedPickupTime());
+        }
+        return last;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<Delivery> batch() throws ApiException, EntityNotFoundException {
+        return deliveryService.createDeliveries(requests);
+    }
+}
@@ -0,0 +1,78 @@
+package nl.tudelft.sem.template.delivery.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the delivery read endpoints over HTTP, with and without the connection pool.
+ * Run with {@code ./gradlew jmh}; the pooled and unpooled results are reported side by side.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(32)
+public class DeliveryEndpointLoadBenchmark {
+
+    @Param({"true", "false"})
+    private boolean pooled;
+
+    private static final int ROWS = 10_000;
+    private static final int VENDORS = 100;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private String baseUri;
+
+    /**
+     * Boots the web application and fills the deliveries table.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        context = BenchmarkContext.startWeb("load" + pooled, "--jdbc.pool.enabled=" + pooled);
+        BenchmarkContext.seedDeliveries(context.getBean(JdbcTemplate.class), ROWS, VENDORS, VENDORS);
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        baseUri = "http://localhost:" + BenchmarkContext.port(context);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int getDeliveryById() throws IOException, InterruptedException {
+        return get("/delivery/" + (ThreadLocalRandom.current().nextInt(ROWS) + 1));
+    }
+
+    @Benchmark
+    public int getDeliveriesOfVendor() throws IOException, InterruptedException {
+        return get("/delivery?vendorId=" + ThreadLocalRandom.current().nextInt(VENDORS));
+    }
+
+    private int get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUri + path))
+                .header("userId", "1")
+                .GET()
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+}
@@ -0,0 +1,82 @@
+package nl.tudelft.sem.template.delivery.benchmarks;
+
+import delivery_microservice.model.Delivery;
+import nl.tudelft.sem.template.delivery.database.DeliveryRepository;
+import nl.tudelft.sem.template.delivery.services.DeliveryService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Compares the indexed vendor/courier lookups with the previous findAll() scan on a large deliveries table.
+ * Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DeliveryLookupBenchmark {
+
+    @Param({"1000000"})
+    private int rows;
+
+    private static final int VENDORS = 10_000;
+    private static final int COURIERS = 20_000;
+    private static final int PAGE = 1000;
+
+    private ConfigurableApplicationContext context;
+    private DeliveryService deliveryService;
+    private DeliveryRepository deliveryRepository;
+
+    /**
+     * Boots the application and fills the deliveries table.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        context = BenchmarkContext.start("lookup");
+        deliveryService = context.getBean(DeliveryService.class);
+        deliveryRepository = context.getBean(DeliveryRepository.class);
+        BenchmarkContext.seedDeliveries(context.getBean(JdbcTemplate.class), rows, VENDORS, COURIERS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Delivery> indexedVendorLookup() {
+        return deliveryService.getDeliveryByVendorId(ThreadLocalRandom.current().nextInt(VENDORS), -1L, PAGE);
+    }
+
+    @Benchmark
+    public List<Delivery> indexedCourierLookup() {
+        return deliveryService.getDeliveryByCourierId(ThreadLocalRandom.current().nextInt(COURIERS), -1L, PAGE);
+    }
+
+    /**
+     * The lookup as it was implemented before the derived queries: load every row and filter on the heap.
+     *
+     * @return the deliveries of a random vendor
+     */
+    @Benchmark
+    public List<Delivery> fullScanVendorLookup() {
+        long vendorId = ThreadLocalRandom.current().nextInt(VENDORS);
+        return deliveryRepository.findAll().stream()
+                .filter(x -> x.getVendorId() == vendorId)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,103 @@
+package nl.tudelft.sem.template.delivery.benchmarks;
+
+import delivery_microservice.model.Delivery;
+import nl.tudelft.sem.template.delivery.database.DeliveryRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query time of the lookups the V2 migration indexes, with its indexes and with them dropped again. Run with
+ * {@code ./gradlew jmh}. The startup cost of migrating and validating the schema against letting Hibernate create
+ * it is measured by {@link Startup}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SchemaMigrationBenchmark {
+    private static final int VENDORS = 10_000;
+    private static final int COURIERS = 20_000;
+
+    @Param({"1000000"})
+    private int rows;
+
+    @Param({"true", "false"})
+    private boolean indexed;
+
+    private ConfigurableApplicationContext context;
+    private DeliveryRepository deliveryRepository;
+
+    /**
+     * Boots the application, fills the deliveries table and drops the V2 indexes if they are not wanted.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        context = BenchmarkContext.start("schema" + indexed);
+        deliveryRepository = context.getBean(DeliveryRepository.class);
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        BenchmarkContext.seedDeliveries(jdbcTemplate, rows, VENDORS, COURIERS);
+        // delivered long ago, so the archival query has rows to find
+        jdbcTemplate.update("UPDATE deliveries SET actual_delivery_time = ? "
+                + "WHERE delivered = TRUE AND MOD(delivery_id, 100) = 1", OffsetDateTime.now().minusDays(60));
+        if (!indexed) {
+            jdbcTemplate.execute("DROP INDEX idx_deliveries_order_id");
+            jdbcTemplate.execute("DROP INDEX idx_deliveries_delivered");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Optional<Delivery> deliveryOfOrder() {
+        return deliveryRepository.findDeliveryByOrderId(ThreadLocalRandom.current().nextInt(rows));
+    }
+
+    @Benchmark
+    public List<Long> archivableDeliveries() {
+        return deliveryRepository.findArchivableDeliveryIds(OffsetDateTime.now().minusDays(30),
+                PageRequest.of(0, 1000));
+    }
+
+    /**
+     * Time to boot the application, with the schema migrated by Flyway and validated by Hibernate, or created by
+     * Hibernate as before.
+     */
+    @State(Scope.Benchmark)
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public static class Startup {
+        @Param({"migrate", "create-drop"})
+        private String schema;
+
+        private int run;
+
+        @Benchmark
+        public ConfigurableApplicationContext boot() {
+            ConfigurableApplicationContext context = "migrate".equals(schema)
+                    ? BenchmarkContext.start("startup" + run++)
+                    : BenchmarkContext.start("startup" + run++, "--spring.flyway.enabled=false",
+                            "--spring.jpa.hibernate.ddl-auto=create-drop");
+            context.close();
+            return context;
+        }
+    }
+}
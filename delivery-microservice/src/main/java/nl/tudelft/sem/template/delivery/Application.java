@@ -4,12 +4,14 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * Delivery microservice application.
  */
 @SpringBootApplication
 @EnableJpaRepositories
+@EnableScheduling
 @EntityScan(basePackages = "delivery_microservice.model")
 public class Application {
     public static void main(String[] args) {
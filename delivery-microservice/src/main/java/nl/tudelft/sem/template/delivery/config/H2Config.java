@@ -1,5 +1,7 @@
 package nl.tudelft.sem.template.delivery.config;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
 import lombok.Getter;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -28,18 +30,35 @@ public class H2Config {
     }
 
     /**
-     * Set up the connection to the database.
+     * Set up the connection to the database. Connections are pooled unless jdbc.pool.enabled is false, in which
+     * case every transaction opens a fresh connection.
      *
      * @return The data source.
      */
     @Bean
     public DataSource dataSource() {
-        DriverManagerDataSource dataSource = new DriverManagerDataSource();
-        dataSource.setDriverClassName(environment.getProperty("jdbc.driverClassName"));
-        dataSource.setUrl(environment.getProperty("jdbc.url"));
-        dataSource.setUsername(environment.getProperty("jdbc.user"));
-        dataSource.setPassword(environment.getProperty("jdbc.pass"));
+        if (!environment.getProperty("jdbc.pool.enabled", Boolean.class, true)) {
+            DriverManagerDataSource dataSource = new DriverManagerDataSource();
+            dataSource.setDriverClassName(environment.getProperty("jdbc.driverClassName"));
+            dataSource.setUrl(environment.getProperty("jdbc.url"));
+            dataSource.setUsername(environment.getProperty("jdbc.user"));
+            dataSource.setPassword(environment.getProperty("jdbc.pass"));
 
-        return dataSource;
+            return dataSource;
+        }
+
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("delivery-pool");
+        config.setDriverClassName(environment.getProperty("jdbc.driverClassName"));
+        config.setJdbcUrl(environment.getProperty("jdbc.url"));
+        config.setUsername(environment.getProperty("jdbc.user"));
+        config.setPassword(environment.getProperty("jdbc.pass"));
+        config.setMaximumPoolSize(environment.getProperty("jdbc.pool.maximumPoolSize", Integer.class, 10));
+        config.setMinimumIdle(environment.getProperty("jdbc.pool.minimumIdle", Integer.class, 10));
+        config.setConnectionTimeout(environment.getProperty("jdbc.pool.connectionTimeoutMs", Long.class, 30_000L));
+        config.setIdleTimeout(environment.getProperty("jdbc.pool.idleTimeoutMs", Long.class, 600_000L));
+        config.setMaxLifetime(environment.getProperty("jdbc.pool.maxLifetimeMs", Long.class, 1_800_000L));
+
+        return new HikariDataSource(config);
     }
 }
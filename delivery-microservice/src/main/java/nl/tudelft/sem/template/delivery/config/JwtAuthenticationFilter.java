@@ -0,0 +1,41 @@
+package nl.tudelft.sem.template.delivery.config;
+
+import nl.tudelft.sem.template.delivery.services.JwtAuthorisationService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Rejects requests whose userId header is not the subject of their bearer token, so that in jwt mode a caller
+ * cannot act as another user. Requests without a userId header are left to the controllers.
+ */
+@Component
+@ConditionalOnProperty(name = "authorisation.mode", havingValue = "jwt")
+public class JwtAuthenticationFilter extends OncePerRequestFilter {
+    private final JwtAuthorisationService authorisationService;
+
+    public JwtAuthenticationFilter(JwtAuthorisationService authorisationService) {
+        this.authorisationService = authorisationService;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String userId = request.getHeader("userId");
+        if (userId != null) {
+            var principal = authorisationService.getPrincipal(request);
+            if (principal == null || !userId.equals(String.valueOf(principal.getUserId()))) {
+                response.sendError(HttpStatus.UNAUTHORIZED.value());
+                return;
+            }
+        }
+        chain.doFilter(request, response);
+    }
+}
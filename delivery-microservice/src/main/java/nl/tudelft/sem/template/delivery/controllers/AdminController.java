@@ -1,30 +1,25 @@
 package nl.tudelft.sem.template.delivery.controllers;
 
 import delivery_microservice.api.AdminApi;
-import delivery_microservice.model.Delivery;
-import delivery_microservice.model.Delay;
 import delivery_microservice.model.Analytics;
 import delivery_microservice.model.GetCurrentDefaultRadius200Response;
 import delivery_microservice.model.SetDefaultRadiusRadiusParameter;
 import delivery_microservice.model.RadiusVendorPair;
 import nl.tudelft.sem.template.delivery.services.RadiusVendorPairService;
-import nl.tudelft.sem.template.delivery.services.DeliveryService;
+import nl.tudelft.sem.template.delivery.services.AnalyticsAggregator;
 import nl.tudelft.sem.template.delivery.services.AuthorisationService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.time.Duration;
-import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 @RestController
 public class AdminController implements AdminApi {
 
     private final RadiusVendorPairService defaultRadiusService;
 
-    private final DeliveryService deliveryService;
+    private final AnalyticsAggregator analyticsAggregator;
 
     private final AuthorisationService authorisationService;
 
@@ -32,12 +27,12 @@ public class AdminController implements AdminApi {
      * Constructor.
      *
      * @param service a service that would allow to get the default radius
-     * @param deliveryService service that would allow to get the deliveries to create analytics
+     * @param analyticsAggregator keeps the running totals the analytics are answered from
      */
-    public AdminController(RadiusVendorPairService service, DeliveryService deliveryService,
+    public AdminController(RadiusVendorPairService service, AnalyticsAggregator analyticsAggregator,
                            AuthorisationService authService) {
         this.defaultRadiusService = service;
-        this.deliveryService = deliveryService;
+        this.analyticsAggregator = analyticsAggregator;
         this.authorisationService = authService;
     }
 
@@ -59,43 +54,7 @@ public class AdminController implements AdminApi {
         if (!authorisationService.isAdmin(userId)) {
             return new ResponseEntity<>(HttpStatus.FORBIDDEN);
         }
-        List<Delivery> deliveryList = deliveryService.getAllDeliveredDeliveries();
-        long completedDelivery = deliveryList.stream().count();
-
-        double averageDeliveryTimes = (double) deliveryList.stream()
-                .filter(x -> x.getTimes().getActualPickupTime() != null)
-                .filter(x -> x.getTimes().getActualDeliveryTime() != null)
-                .filter(x -> x.getTimes().getEstimatedDeliveryTime() != null)
-                .filter(x -> x.getTimes().getEstimatedPickupTime() != null)
-                .map(Delivery::getTimes)
-                .map(x -> Duration.between(x.getActualPickupTime(), x.getActualDeliveryTime())
-                        .toMinutes())
-                .collect(Collectors.summingLong(Long::longValue)) / ((double) completedDelivery);
-
-        double driverEfficiency = (double) deliveryList.stream()
-                .filter(x -> x.getTimes().getActualPickupTime() != null)
-                .filter(x -> x.getTimes().getActualDeliveryTime() != null)
-                .filter(x -> x.getTimes().getEstimatedDeliveryTime() != null)
-                .filter(x -> x.getTimes().getEstimatedPickupTime() != null)
-                .map(Delivery::getTimes)
-                .map(x -> ((double) Duration.between(x.getEstimatedPickupTime(), x.getEstimatedDeliveryTime()).toMinutes())
-                        / Duration.between(x.getActualPickupTime(), x.getActualDeliveryTime()).toMinutes())
-                .map(value -> Math.min(value, 1.0))
-                .collect(Collectors.summingDouble(Double::doubleValue)) * 100 / (double) completedDelivery;
-
-        List<String> issueList = deliveryList.stream()
-                .map(Delivery::getTimes)
-                .flatMap(times -> times.getDelays().stream())
-                .map(Delay::getDescription)
-                .collect(Collectors.toList());
-
-        Analytics analytics = new Analytics()
-                .avgDeliveryTime(Long.valueOf(Math.round(averageDeliveryTimes)).intValue())
-                .completedDeliveries(Long.valueOf(completedDelivery).intValue())
-                .driverEfficiency((Long.valueOf(Math.round(driverEfficiency)).intValue()))
-                .issues(issueList);
-
-        return ResponseEntity.ok(analytics);
+        return ResponseEntity.ok(analyticsAggregator.getAnalytics());
     }
 
     /**
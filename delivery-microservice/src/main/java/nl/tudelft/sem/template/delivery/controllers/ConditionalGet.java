@@ -0,0 +1,113 @@
+package nl.tudelft.sem.template.delivery.controllers;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.function.Supplier;
+
+/**
+ * Answers GET requests carrying an If-None-Match header with 304 Not Modified when the client's copy is current,
+ * before the body is built or serialized. Requests are counted per endpoint as http.conditional.get with outcome
+ * hit (answered with 304) or miss, so the hit rate is hit / (hit + miss).
+ */
+@Component
+public class ConditionalGet {
+    private final MeterRegistry meterRegistry;
+
+    public ConditionalGet(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Builds the response of a GET request.
+     *
+     * @param endpoint name of the endpoint, used as metric tag
+     * @param ifNoneMatch the If-None-Match header, may be null
+     * @param etag the strong ETag of the current representation, null if there is none
+     * @param body builds the body, only called if the client's copy is not current
+     * @param <T> type of the body
+     * @return 304 with the ETag, or 200 with the ETag and the body
+     */
+    public <T> ResponseEntity<T> respond(String endpoint, String ifNoneMatch, String etag, Supplier<T> body) {
+        if (etag == null) {
+            return ResponseEntity.ok(body.get());
+        }
+        if (matches(ifNoneMatch, etag)) {
+            counter(endpoint, "hit").increment();
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        counter(endpoint, "miss").increment();
+        return ResponseEntity.ok().eTag(etag).body(body.get());
+    }
+
+    private Counter counter(String endpoint, String outcome) {
+        return Counter.builder("http.conditional.get")
+                .description("GET requests answered with 304 Not Modified (hit) or with the full body (miss)")
+                .tag("endpoint", endpoint)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Checks an If-None-Match header against an ETag, with the weak comparison RFC 7232 prescribes for it.
+     *
+     * @param ifNoneMatch the header, may be null
+     * @param etag the quoted ETag
+     * @return true if the header lists the ETag or is *
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Builds an ETag from an entity id and version.
+     *
+     * @param id the id of the entity
+     * @param version the version of the entity, may be null
+     * @return the quoted ETag, null if the entity has no version
+     */
+    public static String fromVersion(long id, Long version) {
+        return version == null ? null : "\"" + id + "-" + version + "\"";
+    }
+
+    /**
+     * Builds an ETag from the values a representation is made of, without serializing it.
+     *
+     * @param values the values, in the order they appear in the representation
+     * @return the quoted ETag
+     */
+    public static String fromContent(long... values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Long.BYTES);
+        for (long value : values) {
+            buffer.putLong(value);
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(buffer.array());
+            StringBuilder etag = new StringBuilder("\"");
+            for (int i = 0; i < 16; i++) {
+                etag.append(String.format("%02x", digest[i]));
+            }
+            return etag.append('"').toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
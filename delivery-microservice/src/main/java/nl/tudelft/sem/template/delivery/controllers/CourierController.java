@@ -1,30 +1,80 @@
 package nl.tudelft.sem.template.delivery.controllers;
 
 import delivery_microservice.api.CourierApi;
+import delivery_microservice.model.CourierLocationUpdate;
+import delivery_microservice.model.CourierLocationsResult;
+import delivery_microservice.model.CourierTrailPoint;
+import delivery_microservice.model.Delivery;
 import delivery_microservice.model.Location;
+import nl.tudelft.sem.template.delivery.exceptions.CourierLocationStoreFullException;
 import nl.tudelft.sem.template.delivery.exceptions.EntityNotFoundException;
 import nl.tudelft.sem.template.delivery.services.AuthorisationService;
 import nl.tudelft.sem.template.delivery.services.CourierLocationService;
+import nl.tudelft.sem.template.delivery.services.CourierPosition;
+import nl.tudelft.sem.template.delivery.services.CourierPositionListener;
+import nl.tudelft.sem.template.delivery.services.CourierTrackingBroker;
+import nl.tudelft.sem.template.delivery.services.CourierTrailStore;
+import nl.tudelft.sem.template.delivery.services.DeliveryService;
+import nl.tudelft.sem.template.delivery.services.EventStream;
+import orders_microservice.ApiException;
+import orders_microservice.api.OrderApi;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
 @RestController
 public class CourierController implements CourierApi {
+    static final int MAX_LOCATION_BATCH_SIZE = 5000;
 
     private final CourierLocationService gpsService;
 
     private final AuthorisationService authorisationService;
 
+    private final CourierTrailStore trailStore;
+
+    private final List<CourierPositionListener> positionListeners;
+
+    private final DeliveryService deliveryService;
+
+    private final CourierTrackingBroker trackingBroker;
+
+    private final OrderApi orderApi;
+
     /**
      * Constructor.
      *
      * @param gpsService the gps location service
      * @param authService the authorization service
+     * @param trailStore the recent positions of the couriers
+     * @param positionListeners receive the reported positions that were kept
+     * @param deliveryService finds the courier of a tracked delivery
+     * @param trackingBroker pushes courier positions to the customers tracking them
+     * @param orderApi finds the customer of a tracked delivery
      */
-    public CourierController(CourierLocationService gpsService, AuthorisationService authService) {
+    public CourierController(CourierLocationService gpsService, AuthorisationService authService,
+                             CourierTrailStore trailStore, List<CourierPositionListener> positionListeners,
+                             DeliveryService deliveryService, CourierTrackingBroker trackingBroker,
+                             OrderApi orderApi) {
         this.gpsService = gpsService;
         this.authorisationService = authService;
+        this.trailStore = trailStore;
+        this.positionListeners = positionListeners;
+        this.deliveryService = deliveryService;
+        this.trackingBroker = trackingBroker;
+        this.orderApi = orderApi;
     }
 
     /**
@@ -54,4 +104,178 @@ public class CourierController implements CourierApi {
         }
     }
 
+    /**
+     * POST /courier/locations : Report courier locations
+     * Records GPS positions of couriers. The caller is authorised once for the whole batch: a courier can only
+     * report their own position, an admin the positions of any courier.
+     *
+     * @param userId  (required)
+     * @param updates (required)
+     * @return OK (status code 200)
+     *         Bad Request (status code 400)
+     *         Forbidden (status code 403)
+     *         Service Unavailable (status code 503), when the location store has no room for a new courier
+     */
+    @Override
+    public ResponseEntity<CourierLocationsResult> updateCourierLocations(Long userId,
+                                                                         List<CourierLocationUpdate> updates) {
+        if (!authorisationService.isValid(userId) || updates == null || updates.isEmpty()
+                || updates.size() > MAX_LOCATION_BATCH_SIZE || !updates.stream().allMatch(this::isValidUpdate)) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        if (!authorisationService.isAdmin(userId)
+                && (!authorisationService.isCourier(userId)
+                    || !updates.stream().allMatch(x -> x.getCourierId().equals(userId)))) {
+            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+        }
+        int accepted = 0;
+        for (CourierLocationUpdate update : updates) {
+            CourierPosition position = new CourierPosition(update.getLatitude(), update.getLongitude(),
+                    update.getTimestamp().toInstant().toEpochMilli());
+            try {
+                if (!gpsService.updatePositionOfCourier(update.getCourierId(), position)) {
+                    continue;
+                }
+            } catch (CourierLocationStoreFullException e) {
+                // the positions before it are kept, resending them is harmless as they are no longer newer
+                return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+            }
+            accepted++;
+            for (CourierPositionListener listener : positionListeners) {
+                listener.onPosition(update.getCourierId(), position);
+            }
+        }
+        return ResponseEntity.ok(new CourierLocationsResult().accepted(accepted).stale(updates.size() - accepted));
+    }
+
+    /**
+     * GET /courier/{courierId}/trail : Get courier trail
+     * Get the recent positions of a courier, oldest first.
+     *
+     * @param userId    (required)
+     * @param courierId (required)
+     * @param since     only positions after this time (optional)
+     * @return OK (status code 200)
+     *         Bad Request (status code 400)
+     *         Forbidden (status code 403)
+     *         Not Found (status code 404)
+     */
+    @Override
+    public ResponseEntity<List<CourierTrailPoint>> getCourierTrail(Long userId, Long courierId,
+                                                                   OffsetDateTime since) {
+        if (!authorisationService.isValid(userId) || !authorisationService.isValid(courierId)
+                || !authorisationService.isCourier(courierId)) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        if (!authorisationService.isUser(userId)) {
+            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+        }
+        List<CourierPosition> trail = trailStore.getTrail(courierId,
+                since == null ? Long.MIN_VALUE : since.toInstant().toEpochMilli());
+        if (trail == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        return ResponseEntity.ok(trail.stream()
+                .map(x -> new CourierTrailPoint()
+                        .latitude(x.getLatitude())
+                        .longitude(x.getLongitude())
+                        .timestamp(OffsetDateTime.ofInstant(Instant.ofEpochMilli(x.getTimestamp()), ZoneOffset.UTC)))
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * GET /delivery/{deliveryId}/tracking with Accept text/event-stream : Track the courier of a delivery.
+     * Sends the last known position of the courier, then every new position as position events, at most one per
+     * tracking.minIntervalMs. Only the customer, vendor and courier of the delivery and admins may track it. The
+     * stream is completed when the delivery is given to another courier or delivered.
+     *
+     * @param userId     (required)
+     * @param deliveryId (required)
+     * @return OK (status code 200)
+     *         Bad Request (status code 400)
+     *         Forbidden (status code 403)
+     *         Not Found (status code 404), also when the delivery has no courier or was delivered
+     */
+    @GetMapping(value = "/delivery/{deliveryId}/tracking", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> trackDelivery(@RequestHeader(value = "userId") Long userId,
+                                                    @PathVariable("deliveryId") Long deliveryId) {
+        if (!authorisationService.isValid(userId) || !authorisationService.isValid(deliveryId)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+        if (!authorisationService.isUser(userId)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        Optional<Delivery> delivery = deliveryService.getDelivery(deliveryId);
+        if (delivery.isEmpty() || !isTrackable(delivery.get())) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        if (!mayTrack(userId, delivery.get())) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        long courierId = delivery.get().getCourierId();
+
+        SseEmitter emitter = new SseEmitter(DeliveryController.EVENT_STREAM_TIMEOUT_MS);
+        EventStream<CourierPosition>.Subscription subscription = trackingBroker.subscribe(deliveryId, courierId,
+                json -> {
+                    try {
+                        emitter.send(SseEmitter.event().name("position").data(json, MediaType.APPLICATION_JSON));
+                    } catch (IOException | IllegalStateException e) {
+                        emitter.completeWithError(e);
+                        throw e;
+                    }
+                }, emitter::complete);
+        emitter.onCompletion(subscription::cancel);
+        emitter.onTimeout(subscription::cancel);
+        emitter.onError(e -> subscription.cancel());
+
+        // read again after subscribing, so a change of courier committed in between is not missed
+        Optional<Delivery> current = deliveryService.getDelivery(deliveryId);
+        if (current.isEmpty() || !isTrackable(current.get()) || current.get().getCourierId() != courierId) {
+            subscription.cancel();
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+
+        // read after subscribing, so a position reported in between is not missed
+        try {
+            subscription.offer(gpsService.getPositionOfCourier(courierId));
+        } catch (EntityNotFoundException e) {
+            // the courier has not reported a position yet, the first one is sent when it arrives
+        }
+        return ResponseEntity.ok().contentType(MediaType.TEXT_EVENT_STREAM).body(emitter);
+    }
+
+    private static boolean isTrackable(Delivery delivery) {
+        return delivery.getCourierId() != null && !Boolean.TRUE.equals(delivery.getDelivered());
+    }
+
+    /**
+     * Checks if a user may follow the courier of a delivery: its customer, vendor or courier, or an admin.
+     *
+     * @param userId the user
+     * @param delivery the delivery
+     * @return true or false
+     */
+    private boolean mayTrack(Long userId, Delivery delivery) {
+        if (authorisationService.isAdmin(userId) || userId.equals(delivery.getVendorId())
+                || userId.equals(delivery.getCourierId())) {
+            return true;
+        }
+        if (delivery.getOrderId() == null || !authorisationService.isCustomer(userId)) {
+            return false;
+        }
+        try {
+            return orderApi.orderOrderIDGet(delivery.getOrderId()).stream()
+                    .anyMatch(x -> userId.equals(x.getCustomerID()));
+        } catch (ApiException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private boolean isValidUpdate(CourierLocationUpdate update) {
+        return update != null && authorisationService.isValid(update.getCourierId())
+                && update.getLatitude() != null && Math.abs(update.getLatitude()) <= 90
+                && update.getLongitude() != null && Math.abs(update.getLongitude()) <= 180
+                && update.getTimestamp() != null;
+    }
 }
@@ -1,39 +1,87 @@
 package nl.tudelft.sem.template.delivery.controllers;
 
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import delivery_microservice.api.DeliveryApi;
 import delivery_microservice.model.CreateDeliveryRequest;
 import delivery_microservice.model.Delivery;
 import delivery_microservice.model.Location;
 import delivery_microservice.model.UpdateDeliveryRequest;
+import nl.tudelft.sem.template.delivery.dtos.DeliveryField;
+import nl.tudelft.sem.template.delivery.dtos.DeliverySummary;
 import nl.tudelft.sem.template.delivery.dtos.UpdateDeliveryDto;
+import nl.tudelft.sem.template.delivery.exceptions.DeliveryConflictException;
+import nl.tudelft.sem.template.delivery.exceptions.EntityNotFoundException;
 import nl.tudelft.sem.template.delivery.services.AuthorisationService;
+import nl.tudelft.sem.template.delivery.services.DeliveryEventBroker;
 import nl.tudelft.sem.template.delivery.services.DeliveryService;
+import nl.tudelft.sem.template.delivery.services.EventStream;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @RestController
 public class DeliveryController implements DeliveryApi {
 
+    static final String NDJSON = "application/x-ndjson";
+
+    static final String NEXT_AFTER_HEADER = "X-Next-After";
+
+    static final int DEFAULT_PAGE_SIZE = 100;
+
+    static final int MAX_PAGE_SIZE = 1000;
+
+    static final int MAX_BATCH_SIZE = 1000;
+
+    static final int MAX_BULK_SIZE = 200;
+
+    static final long EVENT_STREAM_TIMEOUT_MS = 30 * 60 * 1000L;
+
     private final DeliveryService deliveryService;
 
     private final AuthorisationService authorisationService;
 
+    private final ObjectMapper objectMapper;
+
+    private final DeliveryEventBroker deliveryEventBroker;
+
+    private final ConditionalGet conditionalGet;
 
     /**
      * Constructor.
      *
      * @param deliveryService      The interface with the needed methods
      * @param authorisationService The verification of the user
+     * @param objectMapper         Serializes the deliveries of streamed responses
+     * @param deliveryEventBroker  Pushes delivery changes to event stream subscribers
+     * @param conditionalGet       Answers requests for an unchanged delivery with 304
      */
-    public DeliveryController(DeliveryService deliveryService, AuthorisationService authorisationService) {
+    public DeliveryController(DeliveryService deliveryService, AuthorisationService authorisationService,
+                              ObjectMapper objectMapper, DeliveryEventBroker deliveryEventBroker,
+                              ConditionalGet conditionalGet) {
         this.deliveryService = deliveryService;
         this.authorisationService = authorisationService;
+        this.objectMapper = objectMapper;
+        this.deliveryEventBroker = deliveryEventBroker;
+        this.conditionalGet = conditionalGet;
     }
 
     /**
@@ -119,19 +167,81 @@ public class DeliveryController implements DeliveryApi {
         return helperCreate(userId, request);
     }
 
+    /**
+     * POST /delivery/batch : Create deliveries.
+     * Creates a delivery for every provided order in one transaction. If one of the vendors is not a verified
+     * vendor no delivery is created.
+     *
+     * @param userId   (required)
+     * @param requests (required)
+     * @return OK (status code 200)
+     *          or Bad Request (status code 400)
+     *          or Forbidden (status code 403)
+     *          or Not Found (status code 404)
+     */
+    @Override
+    public ResponseEntity<List<Delivery>> createDeliveries(Long userId, List<CreateDeliveryRequest> requests) {
+        if (requests == null || requests.isEmpty() || requests.size() > MAX_BATCH_SIZE) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+        for (CreateDeliveryRequest request : requests) {
+            if (isInvalidId(request.getOrderId(), request.getVendorId())
+                    || isInvalidLocation(request.getDeliveryLocation())) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+            }
+        }
+        if (!authorisationService.isUser(userId)) {
+            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+        }
+        try {
+            return ResponseEntity.ok(deliveryService.createDeliveries(requests));
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * GET /delivery/bulk : Get deliveries.
+     * Fetches the deliveries with the provided ids with one authorisation check and one query.
+     * Ids of deliveries that do not exist are left out.
+     *
+     * @param userId (required)
+     * @param ids    (required)
+     * @return OK (status code 200)
+     *          or Bad Request (status code 400)
+     *          or Forbidden (status code 403)
+     */
+    @Override
+    public ResponseEntity<List<Delivery>> getDeliveriesById(Long userId, List<Long> ids) {
+        if (isInvalidId(userId) || ids == null || ids.isEmpty() || ids.size() > MAX_BULK_SIZE
+                || isInvalidId(ids.toArray(Long[]::new))) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+        if (!authorisationService.isUser(userId)) {
+            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+        }
+        return ResponseEntity.ok(deliveryService.getDeliveries(ids));
+    }
+
     /**
      * GET /delivery/{deliveryId} : Get delivery.
-     * Fetches delivery object based on delivery id
+     * Fetches delivery object based on delivery id. The ETag is derived from the version of the delivery, so a
+     * client whose copy is current gets 304 without the delivery being serialized.
      *
-     * @param userId     (required)
-     * @param deliveryId (required)
+     * @param userId      (required)
+     * @param deliveryId  (required)
+     * @param ifNoneMatch ETag of the copy of the client (optional)
      * @return OK (status code 200)
+     *          or Not Modified (status code 304)
      *          or Bad Request (status code 400)
      *          or Forbidden (status code 403)
      *          or Not Found (status code 404)
      */
     @Override
-    public ResponseEntity<Delivery> getDeliveryById(Long userId, Long deliveryId) {
+    public ResponseEntity<Delivery> getDeliveryById(Long userId, Long deliveryId, String ifNoneMatch) {
         {
             if (isInvalidId(userId, deliveryId)) {
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Delivery());
@@ -143,41 +253,143 @@ public class DeliveryController implements DeliveryApi {
             if (optionalDelivery.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new Delivery());
             }
-            return ResponseEntity.ok(optionalDelivery.get());
+            Delivery delivery = optionalDelivery.get();
+            return conditionalGet.respond("delivery", ifNoneMatch,
+                    ConditionalGet.fromVersion(deliveryId, delivery.getVersion()), () -> delivery);
         }
     }
 
+    /**
+     * GET /delivery/{deliveryId} with Accept text/event-stream : Subscribe to a delivery.
+     * Sends the delivery as it is now, then again every time it changes, as delivery events.
+     * A slow client skips intermediate states but always receives the latest one.
+     *
+     * @param userId     (required)
+     * @param deliveryId (required)
+     * @return OK (status code 200)
+     *          or Bad Request (status code 400)
+     *          or Forbidden (status code 403)
+     *          or Not Found (status code 404)
+     */
+    @GetMapping(value = "/delivery/{deliveryId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> subscribeDelivery(@RequestHeader(value = "userId") Long userId,
+                                                        @PathVariable("deliveryId") Long deliveryId) {
+        if (isInvalidId(userId, deliveryId)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+        if (!authorisationService.isUser(userId)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        SseEmitter emitter = new SseEmitter(EVENT_STREAM_TIMEOUT_MS);
+        EventStream<Delivery>.Subscription subscription = deliveryEventBroker.subscribe(deliveryId, json -> {
+            try {
+                emitter.send(SseEmitter.event().name("delivery").data(json, MediaType.APPLICATION_JSON));
+            } catch (IOException | IllegalStateException e) {
+                emitter.completeWithError(e);
+                throw e;
+            }
+        }, emitter::complete);
+        emitter.onCompletion(subscription::cancel);
+        emitter.onTimeout(subscription::cancel);
+        emitter.onError(e -> subscription.cancel());
+
+        // read after subscribing, so a change committed in between is not missed
+        Optional<Delivery> current = deliveryService.getDelivery(deliveryId);
+        if (current.isEmpty()) {
+            subscription.cancel();
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        subscription.offer(current.get());
+        return ResponseEntity.ok().contentType(MediaType.TEXT_EVENT_STREAM).body(emitter);
+    }
+
+    /**
+     * Verifies if the paging parameters are out of range.
+     *
+     * @param limit the requested page size, may be null
+     * @param after the cursor, may be null
+     * @return true or false
+     */
+    private boolean isInvalidPage(Integer limit, Long after) {
+        return (limit != null && (limit < 1 || limit > MAX_PAGE_SIZE)) || (after != null && after < 0);
+    }
+
+    /**
+     * Wraps a page of deliveries in a response. A full page carries the cursor for the next page.
+     *
+     * @param page the deliveries
+     * @param limit the page size that was requested
+     * @param firstPage whether this is the first page, an empty first page is reported as not found
+     * @return the response
+     */
+    private ResponseEntity<List<Delivery>> pageResponse(List<Delivery> page, int limit, boolean firstPage) {
+        return pageResponse(page, limit, firstPage, new Delivery(), Delivery::getDeliveryId);
+    }
+
+    private <T> ResponseEntity<List<T>> pageResponse(List<T> page, int limit, boolean firstPage, T notFound,
+                                                     Function<T, Long> deliveryId) {
+        if (page.isEmpty() && firstPage) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(List.of(notFound));
+        }
+        if (page.size() == limit) {
+            return ResponseEntity.ok()
+                    .header(NEXT_AFTER_HEADER, String.valueOf(deliveryId.apply(page.get(page.size() - 1))))
+                    .body(page);
+        }
+        return ResponseEntity.ok(page);
+    }
+
+    /**
+     * Parses the fields parameter. The delivery id is always selected, it is the cursor of the next page.
+     *
+     * @param fields names of the fields
+     * @return the fields, null if one of the names is not a selectable field
+     */
+    private Set<DeliveryField> parseFields(List<String> fields) {
+        Set<DeliveryField> selected = EnumSet.of(DeliveryField.DELIVERY_ID);
+        for (String name : fields) {
+            Optional<DeliveryField> field = DeliveryField.fromProperty(name.trim());
+            if (field.isEmpty()) {
+                return null;
+            }
+            selected.add(field.get());
+        }
+        return selected;
+    }
+
     /**
      * GET /delivery : Get delivery.
-     * Fetches delivery based on the order id
+     * Fetches delivery based on the order id. Deliveries of a vendor or courier are paged on delivery id.
      *
      * @param userId  (required)
-     * @param orderId (required)
+     * @param orderId (optional)
+     * @param vendorId (optional)
+     * @param courierId (optional)
+     * @param limit maximum page size (optional)
+     * @param after cursor of the previous page (optional)
      * @return OK (status code 200)
      *          or Bad Request (status code 400)
      *          or Forbidden (status code 403)
      *          or Not Found (status code 404)
      */
     @Override
-    public ResponseEntity<List<Delivery>> getDeliveryFromOrder(Long userId, Long orderId, Long vendorId, Long courierId) {
-        List<Delivery> delivery = new ArrayList<>();
-        if (isInvalidId(userId) || isInvalidIds(orderId, courierId, vendorId)) {
+    public ResponseEntity<List<Delivery>> getDeliveryFromOrder(Long userId, Long orderId, Long vendorId, Long courierId,
+                                                               Integer limit, Long after) {
+        if (isInvalidId(userId) || isInvalidIds(orderId, courierId, vendorId) || isInvalidPage(limit, after)) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(List.of(new Delivery()));
         }
         if (!authorisationService.isUser(userId)) {
             return new ResponseEntity<>(HttpStatus.FORBIDDEN);
         }
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        long cursor = after == null ? -1L : after;
         if (isInvalidIds(orderId, vendorId)) {
-            delivery = deliveryService.getDeliveryByCourierId(courierId);
-            if (delivery.isEmpty()) {
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(List.of(new Delivery()));
-            }
+            return pageResponse(deliveryService.getDeliveryByCourierId(courierId, cursor, pageSize),
+                    pageSize, after == null);
         }
         if (isInvalidIds(orderId, courierId)) {
-            delivery = deliveryService.getDeliveryByVendorId(vendorId);
-            if (delivery.isEmpty()) {
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(List.of(new Delivery()));
-            }
+            return pageResponse(deliveryService.getDeliveryByVendorId(vendorId, cursor, pageSize),
+                    pageSize, after == null);
         }
         if (isInvalidIds(vendorId, courierId)) {
             Optional<Delivery> byOrder = deliveryService.getDeliveryByOrderId(orderId);
@@ -186,7 +398,103 @@ public class DeliveryController implements DeliveryApi {
             }
             return ResponseEntity.ok(List.of(byOrder.get()));
         }
-        return ResponseEntity.ok(delivery);
+        return ResponseEntity.ok(new ArrayList<>());
+    }
+
+    /**
+     * GET /delivery?fields=... : Get the given fields of deliveries.
+     * Like {@link #getDeliveryFromOrder}, but only the listed fields are read from the database and serialized,
+     * for example fields=courierId,delivered. The delivery id is always included.
+     *
+     * @param userId    (required)
+     * @param orderId   (optional)
+     * @param vendorId  (optional)
+     * @param courierId (optional)
+     * @param limit     maximum page size (optional)
+     * @param after     cursor of the previous page (optional)
+     * @param fields    comma separated fields of the deliveries (required)
+     * @return OK (status code 200)
+     *          or Bad Request (status code 400)
+     *          or Forbidden (status code 403)
+     *          or Not Found (status code 404)
+     */
+    @GetMapping(value = "/delivery", params = "fields", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<DeliverySummary>> getDeliveryFields(
+            @RequestHeader(value = "userId") Long userId,
+            @RequestParam(value = "orderId", required = false) Long orderId,
+            @RequestParam(value = "vendorId", required = false) Long vendorId,
+            @RequestParam(value = "courierId", required = false) Long courierId,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "after", required = false) Long after,
+            @RequestParam(value = "fields") List<String> fields) {
+        Set<DeliveryField> selected = parseFields(fields);
+        if (selected == null || isInvalidId(userId) || isInvalidIds(orderId, courierId, vendorId)
+                || isInvalidPage(limit, after)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+        if (!authorisationService.isUser(userId)) {
+            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+        }
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        long cursor = after == null ? -1L : after;
+        if (isInvalidIds(orderId, vendorId)) {
+            return pageResponse(deliveryService.getDeliverySummariesByCourierId(courierId, cursor, pageSize, selected),
+                    pageSize, after == null, new DeliverySummary(), DeliverySummary::getDeliveryId);
+        }
+        if (isInvalidIds(orderId, courierId)) {
+            return pageResponse(deliveryService.getDeliverySummariesByVendorId(vendorId, cursor, pageSize, selected),
+                    pageSize, after == null, new DeliverySummary(), DeliverySummary::getDeliveryId);
+        }
+        if (isInvalidIds(vendorId, courierId)) {
+            return deliveryService.getDeliverySummaryByOrderId(orderId, selected)
+                    .map(x -> ResponseEntity.ok(List.of(x)))
+                    .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+        }
+        return ResponseEntity.ok(new ArrayList<>());
+    }
+
+    /**
+     * GET /delivery with Accept application/x-ndjson : Stream deliveries.
+     * Writes all deliveries of a vendor or a courier as newline delimited JSON while they are read from the
+     * database, so memory use does not depend on the number of deliveries. Exactly one of vendorId and
+     * courierId has to be provided.
+     *
+     * @param userId    (required)
+     * @param vendorId  (optional)
+     * @param courierId (optional)
+     * @return OK (status code 200)
+     *          or Bad Request (status code 400)
+     *          or Forbidden (status code 403)
+     */
+    @GetMapping(value = "/delivery", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamDeliveries(
+            @RequestHeader(value = "userId") Long userId,
+            @RequestParam(value = "vendorId", required = false) Long vendorId,
+            @RequestParam(value = "courierId", required = false) Long courierId) {
+        if (isInvalidId(userId) || isInvalidId(vendorId) == isInvalidId(courierId)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+        if (!authorisationService.isUser(userId)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        StreamingResponseBody body = out -> {
+            Consumer<Delivery> writer = delivery -> writeLine(out, delivery);
+            if (vendorId != null) {
+                deliveryService.forEachDeliveryByVendorId(vendorId, writer);
+            } else {
+                deliveryService.forEachDeliveryByCourierId(courierId, writer);
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
+    }
+
+    private void writeLine(OutputStream out, Delivery delivery) {
+        try {
+            out.write(objectMapper.writeValueAsBytes(delivery));
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     /**
@@ -214,6 +522,29 @@ public class DeliveryController implements DeliveryApi {
         return ResponseEntity.ok(unnassignedDelivery);
     }
 
+    /**
+     * POST /delivery/claim : Claims the next unassigned delivery.
+     * Assigns the oldest delivery without a courier to the calling courier
+     *
+     * @param userId (required)
+     * @return OK (status code 200)
+     *          or Bad Request (status code 400)
+     *          or Forbidden (status code 403)
+     *          or No unassigned delivery (status code 404)
+     */
+    @Override
+    public ResponseEntity<Delivery> claimDelivery(Long userId) {
+        if (isInvalidId(userId)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Delivery());
+        }
+        if (!authorisationService.isCourier(userId)) {
+            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+        }
+        return deliveryService.claimDelivery(userId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).body(new Delivery()));
+    }
+
     /**
      * Method used as a helper to decrease the cyclomatic complexity.
      *
@@ -234,6 +565,8 @@ public class DeliveryController implements DeliveryApi {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new Delivery());
             }
             return ResponseEntity.ok(updatedDelivery);
+        } catch (DeliveryConflictException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.badRequest().build();
@@ -252,6 +585,7 @@ public class DeliveryController implements DeliveryApi {
      *          or Bad Request (status code 400)
      *          or Forbidden (status code 403)
      *          or Not Found (status code 404)
+     *          or Conflict (status code 409)
      */
     @Override
     public ResponseEntity<Delivery> updateDelivery(Long userId, Long deliveryId,
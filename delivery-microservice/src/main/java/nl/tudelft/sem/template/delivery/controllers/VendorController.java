@@ -28,18 +28,22 @@ public class VendorController implements VendorApi {
 
     private final AuthorisationService authorisationService;
 
+    private final ConditionalGet conditionalGet;
+
     /**
      * Constructor.
      *
      * @param service              A RadiusVendorPairService
      * @param courierService       A CourierService
      * @param authorisationService An AuthorisationService
+     * @param conditionalGet       A ConditionalGet
      */
     public VendorController(RadiusVendorPairService service, CourierService courierService,
-                            AuthorisationService authorisationService) {
+                            AuthorisationService authorisationService, ConditionalGet conditionalGet) {
         this.radiusService = service;
         this.courierService = courierService;
         this.authorisationService = authorisationService;
+        this.conditionalGet = conditionalGet;
     }
 
     /**
@@ -74,47 +78,65 @@ public class VendorController implements VendorApi {
      * Gets all delivery radii that are set by the vendors.
      * This will only return a list of vendors that have a custom delivery radius.
      * So vendors that have not set a custom delivery radius, or set their radius to &#x60;0&#x60; will not be returned.
+     * The ETag is a hash of the vendor ids and radii, so a client whose copy is current gets 304.
      *
-     * @param userId (required)
+     * @param userId      (required)
+     * @param ifNoneMatch ETag of the copy of the client (optional)
      * @return OK (status code 200)
+     *     or Not Modified (status code 304)
      *     or Bad Request (status code 400)
      *     or Forbidden (status code 403)
      *     or Not Found (status code 404)
      */
     @Override
-    public ResponseEntity<List<GetDeliveryRadii200ResponseInner>> getDeliveryRadii(Long userId) {
+    public ResponseEntity<List<GetDeliveryRadii200ResponseInner>> getDeliveryRadii(Long userId, String ifNoneMatch) {
         if (!authorisationService.isUser(userId)) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
 
-        var list = radiusService.getAllRadiusVendorPairs().stream()
-            .map(e -> new GetDeliveryRadii200ResponseInner().vendorID(e.getVendorId()).radius(e.getRadius()))
-            .collect(Collectors.toList());
+        var pairs = radiusService.getAllRadiusVendorPairs();
+        long[] content = new long[pairs.size() * 2];
+        for (int i = 0; i < pairs.size(); i++) {
+            content[2 * i] = orMinValue(pairs.get(i).getVendorId());
+            content[2 * i + 1] = orMinValue(pairs.get(i).getRadius());
+        }
+
+        return conditionalGet.respond("delivery-radii", ifNoneMatch, ConditionalGet.fromContent(content),
+            () -> pairs.stream()
+                .map(e -> new GetDeliveryRadii200ResponseInner().vendorID(e.getVendorId()).radius(e.getRadius()))
+                .collect(Collectors.toList()));
+    }
 
-        return ResponseEntity.ok(list);
+    private static long orMinValue(Number value) {
+        return value == null ? Long.MIN_VALUE : value.longValue();
     }
 
     /**
      * GET /vendor/{vendorId}/delivery-radius : Get vendor delivery radius
-     * Get the delivery radius for the vendor. If the radius is set to 0 or not set, the default radius will be used
+     * Get the delivery radius for the vendor. If the radius is set to 0 or not set, the default radius will be used.
+     * The ETag is a hash of the radius, so a client whose copy is current gets 304.
      *
-     * @param userId   (required)
-     * @param vendorId (required)
+     * @param userId      (required)
+     * @param vendorId    (required)
+     * @param ifNoneMatch ETag of the copy of the client (optional)
      * @return OK (status code 200)
+     *     or Not Modified (status code 304)
      *     or Bad Request (status code 400)
      *     or Forbidden (status code 403)
      *     or Not Found (status code 404)
      */
     @Override
-    public ResponseEntity<GetVendorDeliveryRadius200Response> getVendorDeliveryRadius(Long userId, Long vendorId) {
+    public ResponseEntity<GetVendorDeliveryRadius200Response> getVendorDeliveryRadius(Long userId, Long vendorId,
+                                                                                      String ifNoneMatch) {
         if (!authorisationService.isUser(userId)) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
 
         var radius = radiusService.getRadiusVendorPair(vendorId);
 
-        return radius.map(radiusVendorPair -> ResponseEntity.ok(
-                new GetVendorDeliveryRadius200Response().radius(radiusVendorPair.getRadius())))
+        return radius.map(radiusVendorPair -> conditionalGet.respond("delivery-radius", ifNoneMatch,
+                ConditionalGet.fromContent(orMinValue(radiusVendorPair.getRadius())),
+                () -> new GetVendorDeliveryRadius200Response().radius(radiusVendorPair.getRadius())))
             .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).build());
 
     }
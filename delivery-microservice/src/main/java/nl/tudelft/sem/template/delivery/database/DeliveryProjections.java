@@ -0,0 +1,19 @@
+package nl.tudelft.sem.template.delivery.database;
+
+import nl.tudelft.sem.template.delivery.dtos.DeliveryField;
+import nl.tudelft.sem.template.delivery.dtos.DeliverySummary;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads only the given columns of deliveries, for requests with fields=. Unlike the entity queries these never
+ * touch the locations, times or delays of a delivery.
+ */
+public interface DeliveryProjections {
+    List<DeliverySummary> findSummariesByVendorId(long vendorId, long after, int limit, Set<DeliveryField> fields);
+
+    List<DeliverySummary> findSummariesByCourierId(long courierId, long after, int limit, Set<DeliveryField> fields);
+
+    List<DeliverySummary> findSummariesByOrderId(long orderId, Set<DeliveryField> fields);
+}
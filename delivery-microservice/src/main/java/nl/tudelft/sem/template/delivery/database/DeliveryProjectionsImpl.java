@@ -0,0 +1,66 @@
+package nl.tudelft.sem.template.delivery.database;
+
+import nl.tudelft.sem.template.delivery.dtos.DeliveryField;
+import nl.tudelft.sem.template.delivery.dtos.DeliverySummary;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Builds the select list of the query from the requested fields, so the database returns just those columns.
+ */
+public class DeliveryProjectionsImpl implements DeliveryProjections {
+    private final EntityManager entityManager;
+
+    public DeliveryProjectionsImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public List<DeliverySummary> findSummariesByVendorId(long vendorId, long after, int limit,
+                                                         Set<DeliveryField> fields) {
+        return find(fields, "d.vendorId = :id AND d.deliveryId > :after", vendorId, after, limit);
+    }
+
+    @Override
+    public List<DeliverySummary> findSummariesByCourierId(long courierId, long after, int limit,
+                                                          Set<DeliveryField> fields) {
+        return find(fields, "d.courierId = :id AND d.deliveryId > :after", courierId, after, limit);
+    }
+
+    @Override
+    public List<DeliverySummary> findSummariesByOrderId(long orderId, Set<DeliveryField> fields) {
+        return find(fields, "d.orderId = :id", orderId, null, 1);
+    }
+
+    private List<DeliverySummary> find(Set<DeliveryField> fields, String where, long id, Long after, int limit) {
+        if (fields.isEmpty()) {
+            throw new IllegalArgumentException("No fields to select");
+        }
+        List<DeliveryField> columns = new ArrayList<>(fields);
+        String select = columns.stream().map(x -> "d." + x.getProperty()).collect(Collectors.joining(", "));
+        TypedQuery<Tuple> query = entityManager.createQuery("SELECT " + select + " FROM Delivery d WHERE " + where
+                + " ORDER BY d.deliveryId", Tuple.class)
+                .setParameter("id", id)
+                .setMaxResults(limit);
+        if (after != null) {
+            query.setParameter("after", after);
+        }
+
+        List<Tuple> rows = query.getResultList();
+        List<DeliverySummary> summaries = new ArrayList<>(rows.size());
+        for (Tuple row : rows) {
+            DeliverySummary summary = new DeliverySummary();
+            for (int i = 0; i < columns.size(); i++) {
+                columns.get(i).set(summary, row.get(i));
+            }
+            summaries.add(summary);
+        }
+        return summaries;
+    }
+}
@@ -1,19 +1,108 @@
 package nl.tudelft.sem.template.delivery.database;
 
 import delivery_microservice.model.Delivery;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
+import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH;
 
 @Repository
-public interface DeliveryRepository extends JpaRepository<Delivery, Long> {
+public interface DeliveryRepository extends JpaRepository<Delivery, Long>, DeliveryProjections {
     Optional<Delivery> findDeliveryByOrderId(long id);
 
-    List<Delivery> findDeliveriesByCourierIdNull();
+    // Pages are selected as ids and then loaded together with their delays, because a fetch join cannot be
+    // limited in the database.
+    @Query("SELECT d.deliveryId FROM Delivery d WHERE d.vendorId = ?1 AND d.deliveryId > ?2 ORDER BY d.deliveryId")
+    List<Long> findDeliveryIdsByVendorId(long vendorId, long after, Pageable pageable);
+
+    @Query("SELECT d.deliveryId FROM Delivery d WHERE d.courierId = ?1 AND d.deliveryId > ?2 ORDER BY d.deliveryId")
+    List<Long> findDeliveryIdsByCourierId(long courierId, long after, Pageable pageable);
+
+    @Query("SELECT DISTINCT d FROM Delivery d LEFT JOIN FETCH d.times.delays WHERE d.deliveryId IN ?1 "
+            + "ORDER BY d.deliveryId")
+    @QueryHints(@QueryHint(name = HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    List<Delivery> findWithDelaysByDeliveryIdIn(Collection<Long> ids);
+
+    // Streams with a fetch join must be ordered by delivery id, the rows of one delivery are then merged into it.
+    @Query("SELECT d FROM Delivery d LEFT JOIN FETCH d.times.delays WHERE d.vendorId = ?1 ORDER BY d.deliveryId")
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    Stream<Delivery> streamDeliveriesByVendorId(long vendorId);
+
+    @Query("SELECT d FROM Delivery d LEFT JOIN FETCH d.times.delays WHERE d.courierId = ?1 ORDER BY d.deliveryId")
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    Stream<Delivery> streamDeliveriesByCourierId(long courierId);
+
+    @Query("SELECT d.deliveryId FROM Delivery d WHERE d.courierId IS NULL ORDER BY d.deliveryId")
+    List<Long> findUnassignedDeliveryIds();
 
-    @Query("SELECT d FROM Delivery d WHERE d.delivered = true")
+    /**
+     * Sets the courier of a delivery, but only if it has none yet.
+     *
+     * @param deliveryId the id of the delivery
+     * @param courierId the id of the courier
+     * @return 1 if the courier was set, 0 if the delivery already had a courier or does not exist
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE VERSIONED Delivery d SET d.courierId = ?2 WHERE d.deliveryId = ?1 AND d.courierId IS NULL")
+    int assignCourierIfUnassigned(long deliveryId, long courierId);
+
+    @Query("SELECT d FROM Delivery d WHERE d.courierId = ?1 AND (d.delivered IS NULL OR d.delivered = false) "
+            + "AND d.times.actualDeliveryTime IS NULL ORDER BY d.deliveryId")
+    List<Delivery> findActiveDeliveriesByCourierId(long courierId);
+
+    /**
+     * Sets the actual pickup time of a delivery, but only if it has none yet, still belongs to the courier and is
+     * not delivered.
+     *
+     * @param deliveryId the id of the delivery
+     * @param courierId the id of the courier that picked it up
+     * @param time the pickup time
+     * @return 1 if the time was set, 0 otherwise
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE VERSIONED Delivery d SET d.times.actualPickupTime = ?3 WHERE d.deliveryId = ?1 AND d.courierId = ?2 "
+            + "AND d.times.actualPickupTime IS NULL AND (d.delivered IS NULL OR d.delivered = false)")
+    int setActualPickupTimeIfUnset(long deliveryId, long courierId, OffsetDateTime time);
+
+    /**
+     * Sets the actual delivery time of a delivery, but only if it has none yet, still belongs to the courier and is
+     * not delivered.
+     *
+     * @param deliveryId the id of the delivery
+     * @param courierId the id of the courier that brought it
+     * @param time the delivery time
+     * @return 1 if the time was set, 0 otherwise
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE VERSIONED Delivery d SET d.times.actualDeliveryTime = ?3 WHERE d.deliveryId = ?1 "
+            + "AND d.courierId = ?2 AND d.times.actualDeliveryTime IS NULL AND (d.delivered IS NULL OR d.delivered = false)")
+    int setActualDeliveryTimeIfUnset(long deliveryId, long courierId, OffsetDateTime time);
+
+    @Query("SELECT d.deliveryId FROM Delivery d WHERE d.delivered = true AND d.times.actualDeliveryTime < ?1 "
+            + "ORDER BY d.deliveryId")
+    List<Long> findArchivableDeliveryIds(OffsetDateTime deliveredBefore, Pageable pageable);
+
+    @Query("SELECT DISTINCT d FROM Delivery d LEFT JOIN FETCH d.times.delays WHERE d.delivered = true")
+    @QueryHints(@QueryHint(name = HINT_PASS_DISTINCT_THROUGH, value = "false"))
     List<Delivery> findDeliveredDeliveries();
+
+    @Query("SELECT d FROM Delivery d LEFT JOIN FETCH d.times.delays WHERE d.delivered = true ORDER BY d.deliveryId")
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    Stream<Delivery> streamDeliveredDeliveries();
 }
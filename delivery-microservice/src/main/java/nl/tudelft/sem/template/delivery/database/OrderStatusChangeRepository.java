@@ -0,0 +1,38 @@
+package nl.tudelft.sem.template.delivery.database;
+
+import delivery_microservice.model.OrderStatusChange;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+@Repository
+public interface OrderStatusChangeRepository extends JpaRepository<OrderStatusChange, Long> {
+    /**
+     * Gets the oldest status changes that are due to be sent. Changes that were given up have no next attempt and
+     * are never due.
+     *
+     * @param now the current time
+     * @param page the number of changes to get
+     * @return the changes, oldest first
+     */
+    @Query("SELECT c FROM OrderStatusChange c WHERE c.nextAttemptAt <= ?1 ORDER BY c.id")
+    List<OrderStatusChange> findDue(OffsetDateTime now, Pageable page);
+
+    /**
+     * Removes the changes of an order up to and including a change that was sent or superseded.
+     *
+     * @param orderId the id of the order
+     * @param lastId the id of the newest change to remove
+     * @return the number of removed changes
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM OrderStatusChange c WHERE c.orderId = ?1 AND c.id <= ?2")
+    int deleteSentChanges(long orderId, long lastId);
+}
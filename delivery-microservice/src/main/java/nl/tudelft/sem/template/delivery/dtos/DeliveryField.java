@@ -0,0 +1,50 @@
+package nl.tudelft.sem.template.delivery.dtos;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+
+/**
+ * The columns of a delivery that can be selected with fields=. Locations and times are left out, they span
+ * several columns and the delays table.
+ */
+public enum DeliveryField {
+    DELIVERY_ID("deliveryId", (x, value) -> x.setDeliveryId((Long) value)),
+    ORDER_ID("orderId", (x, value) -> x.setOrderId((Long) value)),
+    VENDOR_ID("vendorId", (x, value) -> x.setVendorId((Long) value)),
+    COURIER_ID("courierId", (x, value) -> x.setCourierId((Long) value)),
+    RATING("rating", (x, value) -> x.setRating((Integer) value)),
+    DELIVERED("delivered", (x, value) -> x.setDelivered((Boolean) value)),
+    VERSION("version", (x, value) -> x.setVersion((Long) value));
+
+    private final String property;
+    private final BiConsumer<DeliverySummary, Object> setter;
+
+    DeliveryField(String property, BiConsumer<DeliverySummary, Object> setter) {
+        this.property = property;
+        this.setter = setter;
+    }
+
+    /**
+     * Name of the field in the JSON and of the property of the Delivery entity.
+     *
+     * @return the name
+     */
+    public String getProperty() {
+        return property;
+    }
+
+    public void set(DeliverySummary summary, Object value) {
+        setter.accept(summary, value);
+    }
+
+    /**
+     * Finds a field by its JSON name.
+     *
+     * @param property the name
+     * @return the field, empty if there is no selectable field with that name
+     */
+    public static Optional<DeliveryField> fromProperty(String property) {
+        return Arrays.stream(values()).filter(x -> x.property.equals(property)).findFirst();
+    }
+}
@@ -0,0 +1,20 @@
+package nl.tudelft.sem.template.delivery.dtos;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+/**
+ * The columns of a delivery that were asked for with fields=. Fields that were not asked for stay null and are
+ * left out of the JSON.
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class DeliverySummary {
+    private Long deliveryId;
+    private Long orderId;
+    private Long vendorId;
+    private Long courierId;
+    private Integer rating;
+    private Boolean delivered;
+    private Long version;
+}
@@ -0,0 +1,8 @@
+package nl.tudelft.sem.template.delivery.exceptions;
+
+public class CourierLocationStoreFullException extends IllegalStateException {
+    public CourierLocationStoreFullException(long courierId, int capacity) {
+        super("Courier location store is full, no slot for courier " + courierId
+                + ": courier.locations.capacity " + capacity + " is too small");
+    }
+}
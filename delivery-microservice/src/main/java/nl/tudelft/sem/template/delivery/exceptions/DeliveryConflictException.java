@@ -0,0 +1,7 @@
+package nl.tudelft.sem.template.delivery.exceptions;
+
+public class DeliveryConflictException extends Exception {
+    public DeliveryConflictException(long deliveryId, String field) {
+        super("Field " + field + " of delivery " + deliveryId + " was changed by a concurrent update");
+    }
+}
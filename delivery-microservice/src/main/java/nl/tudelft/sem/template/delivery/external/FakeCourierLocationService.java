@@ -4,14 +4,22 @@ import delivery_microservice.model.Location;
 import delivery_microservice.model.PrivateCourier;
 import nl.tudelft.sem.template.delivery.exceptions.EntityNotFoundException;
 import nl.tudelft.sem.template.delivery.services.CourierLocationService;
+import nl.tudelft.sem.template.delivery.services.CourierPosition;
 import nl.tudelft.sem.template.delivery.services.ImmutableLocation;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 public class FakeCourierLocationService implements CourierLocationService {
-    private final HashMap<Long, ImmutableLocation> locationByCourier = new HashMap<>();
+    private final ConcurrentMap<Long, ImmutableLocation> locationByCourier = new ConcurrentHashMap<>();
+    /**
+     * One slot per courier, created on the first report. Later reports of the courier replace the position with a
+     * compare-and-set, so concurrent reports never block each other and the newest one always wins.
+     */
+    private final ConcurrentMap<Long, AtomicReference<CourierPosition>> positionByCourier = new ConcurrentHashMap<>();
 
     public FakeCourierLocationService(FakeCourierLocationData fakeData) {
         locationByCourier.putAll(fakeData);
@@ -35,10 +43,37 @@ public class FakeCourierLocationService implements CourierLocationService {
 
     @Override
     public Location getLocationOfCourier(long courierId) throws EntityNotFoundException {
-        if (!locationByCourier.containsKey(courierId)) {
+        ImmutableLocation location = locationByCourier.get(courierId);
+        if (location == null) {
             throw new EntityNotFoundException(PrivateCourier.class, courierId);
         }
 
-        return locationByCourier.get(courierId).createMutableLocation();
+        return location.createMutableLocation();
+    }
+
+    @Override
+    public boolean updatePositionOfCourier(long courierId, CourierPosition position) {
+        AtomicReference<CourierPosition> slot = positionByCourier.get(courierId);
+        if (slot == null) {
+            slot = positionByCourier.computeIfAbsent(courierId, x -> new AtomicReference<>());
+        }
+        CourierPosition current;
+        do {
+            current = slot.get();
+            if (!position.isNewerThan(current)) {
+                return false;
+            }
+        } while (!slot.compareAndSet(current, position));
+        return true;
+    }
+
+    @Override
+    public CourierPosition getPositionOfCourier(long courierId) throws EntityNotFoundException {
+        AtomicReference<CourierPosition> slot = positionByCourier.get(courierId);
+        CourierPosition position = slot == null ? null : slot.get();
+        if (position == null) {
+            throw new EntityNotFoundException(PrivateCourier.class, courierId);
+        }
+        return position;
     }
 }
@@ -0,0 +1,285 @@
+package nl.tudelft.sem.template.delivery.services;
+
+import delivery_microservice.model.Analytics;
+import delivery_microservice.model.Delay;
+import delivery_microservice.model.Delivery;
+import delivery_microservice.model.Times;
+import nl.tudelft.sem.template.delivery.database.DeliveryRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Running totals over all delivered deliveries, from which the admin analytics are answered without reading the
+ * deliveries. Updates report what a delivery contributed before and after the change; the totals are rebuilt
+ * from the database and the archive at startup and every analytics.rebuildMs milliseconds to correct any drift.
+ * The totals remember the version each delivery is counted at, so a change is applied only to the version it was
+ * made to: changes reported while a rebuild reads the deliveries are replayed onto the rebuilt totals, and a change
+ * the rebuild already read is skipped, also when it is reported after the rebuilt totals were swapped in.
+ * Efficiencies are summed in millionths so the sums stay exact however often contributions are added and removed.
+ */
+@Service
+public class AnalyticsAggregator {
+    private static final long EFFICIENCY_SCALE = 1_000_000;
+
+    private final DeliveryRepository deliveryRepository;
+    private final EntityManager entityManager;
+    private final DeliveryArchive deliveryArchive;
+
+    private final Object rebuildLock = new Object();
+
+    private Totals totals = new Totals();
+    // the version each delivery is counted at in the totals
+    private Map<Long, Long> counted = new HashMap<>();
+    // the changes reported while a rebuild is reading, null if no rebuild is running
+    private List<Change> changesDuringRebuild;
+
+    /**
+     * Constructor.
+     *
+     * @param deliveryRepository source of the delivered deliveries on a rebuild
+     * @param entityManager detaches deliveries once they are counted
+     * @param deliveryArchive source of the archived deliveries on a rebuild
+     */
+    public AnalyticsAggregator(DeliveryRepository deliveryRepository, EntityManager entityManager,
+                               DeliveryArchive deliveryArchive) {
+        this.deliveryRepository = deliveryRepository;
+        this.entityManager = entityManager;
+        this.deliveryArchive = deliveryArchive;
+    }
+
+    /**
+     * Gets the analytics of all delivered deliveries.
+     *
+     * @return the analytics
+     */
+    public synchronized Analytics getAnalytics() {
+        double averageDeliveryTime = totals.deliveryMinutes / (double) totals.completed;
+        double driverEfficiency = totals.efficiency * 100 / (double) EFFICIENCY_SCALE / totals.completed;
+
+        List<String> issues = new ArrayList<>();
+        totals.issues.forEach((description, count) ->
+                issues.addAll(Collections.nCopies(count.intValue(), description)));
+
+        return new Analytics()
+                .avgDeliveryTime(Long.valueOf(Math.round(averageDeliveryTime)).intValue())
+                .completedDeliveries(Long.valueOf(totals.completed).intValue())
+                .driverEfficiency(Long.valueOf(Math.round(driverEfficiency)).intValue())
+                .issues(issues);
+    }
+
+    /**
+     * Replaces what a delivery contributed to the totals, unless the totals do not hold it as it was before the
+     * change because a rebuild already read it after the change.
+     *
+     * @param before the contribution before the change, null if it was not delivered
+     * @param after the contribution after the change, null if it is not delivered
+     */
+    public synchronized void replace(Contribution before, Contribution after) {
+        Change change = new Change(before, after);
+        change.replay(totals, counted);
+        if (changesDuringRebuild != null) {
+            changesDuringRebuild.add(change);
+        }
+    }
+
+    /**
+     * Recomputes the totals from the delivered deliveries in the database and in the archive.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${analytics.rebuildMs:3600000}",
+            fixedDelayString = "${analytics.rebuildMs:3600000}")
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        try (Stream<Delivery> deliveries = deliveryRepository.streamDeliveredDeliveries();
+             Stream<Delivery> archived = deliveryArchive.stream()) {
+            replaceTotals(Stream.concat(deliveries.map(this::contributionAndDetach),
+                    archived.map(Contribution::of)));
+        }
+    }
+
+    /**
+     * Recomputes the totals from the given delivered deliveries.
+     *
+     * @param deliveries every delivered delivery
+     */
+    public void rebuild(Stream<Delivery> deliveries) {
+        replaceTotals(deliveries.map(Contribution::of));
+    }
+
+    private Contribution contributionAndDetach(Delivery delivery) {
+        // still in the table after its archival failed, it is counted from the archive
+        Contribution contribution = deliveryArchive.contains(delivery.getDeliveryId())
+                ? null : Contribution.of(delivery);
+        entityManager.detach(delivery);
+        return contribution;
+    }
+
+    private void replaceTotals(Stream<Contribution> contributions) {
+        synchronized (rebuildLock) {
+            synchronized (this) {
+                changesDuringRebuild = new ArrayList<>();
+            }
+            try {
+                Totals rebuilt = new Totals();
+                // the version the rebuild read each delivery at, to tell which changes it has already seen
+                Map<Long, Long> rebuiltCounted = new HashMap<>();
+                contributions.forEach(contribution -> {
+                    rebuilt.add(contribution);
+                    if (contribution != null && contribution.deliveryId != null) {
+                        rebuiltCounted.put(contribution.deliveryId, contribution.version);
+                    }
+                });
+                synchronized (this) {
+                    changesDuringRebuild.forEach(change -> change.replay(rebuilt, rebuiltCounted));
+                    totals = rebuilt;
+                    counted = rebuiltCounted;
+                }
+            } finally {
+                synchronized (this) {
+                    changesDuringRebuild = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * What one delivered delivery adds to the totals. Taken as a snapshot because the delivery entity is changed
+     * in place by an update.
+     */
+    public static final class Contribution {
+        private final Long deliveryId;
+        private final Long version;
+        private final long minutes;
+        // in millionths
+        private final long efficiency;
+        private final List<String> issues;
+
+        private Contribution(Delivery delivery, long minutes, long efficiency, List<String> issues) {
+            this.deliveryId = delivery.getDeliveryId();
+            this.version = delivery.getVersion();
+            this.minutes = minutes;
+            this.efficiency = efficiency;
+            this.issues = issues;
+        }
+
+        /**
+         * Takes the contribution of a delivery. Minutes and efficiency only count when all four times are known and
+         * the delivery took time.
+         *
+         * @param delivery the delivery
+         * @return the contribution, or null if the delivery is not delivered
+         */
+        public static Contribution of(Delivery delivery) {
+            if (!Boolean.TRUE.equals(delivery.getDelivered())) {
+                return null;
+            }
+            Times times = delivery.getTimes();
+            if (times == null) {
+                return new Contribution(delivery, 0, 0, List.of());
+            }
+
+            List<String> issues = new ArrayList<>();
+            if (times.getDelays() != null) {
+                for (Delay delay : times.getDelays()) {
+                    issues.add(delay.getDescription());
+                }
+            }
+
+            if (times.getActualPickupTime() == null || times.getActualDeliveryTime() == null
+                    || times.getEstimatedPickupTime() == null || times.getEstimatedDeliveryTime() == null) {
+                return new Contribution(delivery, 0, 0, issues);
+            }
+            long actual = Duration.between(times.getActualPickupTime(), times.getActualDeliveryTime()).toMinutes();
+            if (actual <= 0) {
+                return new Contribution(delivery, 0, 0, issues);
+            }
+            long estimated = Duration.between(times.getEstimatedPickupTime(), times.getEstimatedDeliveryTime())
+                    .toMinutes();
+            long efficiency = Math.round(Math.max(0, Math.min((double) estimated / actual, 1.0)) * EFFICIENCY_SCALE);
+            return new Contribution(delivery, actual, efficiency, issues);
+        }
+    }
+
+    private static final class Change {
+        private final Contribution before;
+        private final Contribution after;
+
+        private Change(Contribution before, Contribution after) {
+            this.before = before;
+            this.after = after;
+        }
+
+        /**
+         * Applies the change to totals if they hold the delivery as it was before the change: not at all if it was
+         * not delivered, otherwise at the version before the change. A change the totals already hold is skipped,
+         * and later changes of the same delivery chain on from the ones that were applied.
+         *
+         * @param totals the totals
+         * @param counted the version each delivery is counted at in the totals
+         */
+        void replay(Totals totals, Map<Long, Long> counted) {
+            Long deliveryId = before != null ? before.deliveryId : after == null ? null : after.deliveryId;
+            if (deliveryId != null) {
+                boolean countedBefore = before == null
+                        ? !counted.containsKey(deliveryId)
+                        : counted.containsKey(deliveryId) && Objects.equals(counted.get(deliveryId), before.version);
+                if (!countedBefore) {
+                    return;
+                }
+                if (after == null) {
+                    counted.remove(deliveryId);
+                } else {
+                    counted.put(deliveryId, after.version);
+                }
+            }
+            totals.remove(before);
+            totals.add(after);
+        }
+    }
+
+    private static final class Totals {
+        private long completed;
+        private long deliveryMinutes;
+        // in millionths
+        private long efficiency;
+        private final Map<String, Long> issues = new LinkedHashMap<>();
+
+        void add(Contribution contribution) {
+            if (contribution == null) {
+                return;
+            }
+            completed++;
+            deliveryMinutes += contribution.minutes;
+            efficiency += contribution.efficiency;
+            for (String issue : contribution.issues) {
+                issues.merge(issue, 1L, Long::sum);
+            }
+        }
+
+        void remove(Contribution contribution) {
+            if (contribution == null) {
+                return;
+            }
+            completed--;
+            deliveryMinutes -= contribution.minutes;
+            efficiency -= contribution.efficiency;
+            for (String issue : contribution.issues) {
+                issues.computeIfPresent(issue, (description, count) -> count == 1 ? null : count - 1);
+            }
+        }
+    }
+}
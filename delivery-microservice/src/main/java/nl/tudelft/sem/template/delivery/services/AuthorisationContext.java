@@ -0,0 +1,59 @@
+package nl.tudelft.sem.template.delivery.services;
+
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import users_microservice.model.UsersGetUserTypeIdGet200Response.UserTypeEnum;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * User types resolved while handling the current HTTP request. All authorisation checks of one request share the
+ * same context, so a controller that checks the same id several times only resolves it once.
+ */
+public class AuthorisationContext {
+    private static final String ATTRIBUTE = AuthorisationContext.class.getName();
+
+    private final Map<Long, Optional<UserTypeEnum>> userTypes = new HashMap<>();
+
+    /**
+     * Gets the context of the request bound to the current thread, creating it on first use.
+     *
+     * @return the context, or null when the current thread is not handling a request
+     */
+    public static AuthorisationContext current() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return null;
+        }
+
+        var context = (AuthorisationContext) attributes.getAttribute(ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (context == null) {
+            context = new AuthorisationContext();
+            attributes.setAttribute(ATTRIBUTE, context, RequestAttributes.SCOPE_REQUEST);
+        }
+        return context;
+    }
+
+    /**
+     * Gets the type of a user, calling the resolver only the first time the id is seen in this request.
+     * A failed resolution (null) is remembered as an unknown user for the rest of the request.
+     *
+     * @param userId Long user id
+     * @param resolver resolves the type of a user, may return null if that failed
+     * @return the user type, empty if the user is unknown
+     */
+    public Optional<UserTypeEnum> resolve(Long userId, Function<Long, Optional<UserTypeEnum>> resolver) {
+        Optional<UserTypeEnum> type = userTypes.get(userId);
+        if (type == null) {
+            type = resolver.apply(userId);
+            if (type == null) {
+                type = Optional.empty();
+            }
+            userTypes.put(userId, type);
+        }
+        return type;
+    }
+}
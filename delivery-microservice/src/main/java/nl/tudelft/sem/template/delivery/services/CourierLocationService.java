@@ -12,4 +12,63 @@ public interface CourierLocationService {
      * @throws EntityNotFoundException When the courier does not exist or their location could not be retrieved
      */
     Location getLocationOfCourier(long courierId) throws EntityNotFoundException;
+
+    /**
+     * Records a GPS position reported by a courier. The position is only kept if it is newer than the last known
+     * position of the courier, so positions that arrive out of order are ignored. Safe to call from many threads.
+     *
+     * @param courierId The id of the courier
+     * @param position The reported position
+     * @return true if the position is now the last known position of the courier, false if it was not newer
+     */
+    boolean updatePositionOfCourier(long courierId, CourierPosition position);
+
+    /**
+     * Fetch the last known GPS position of a courier.
+     *
+     * @param courierId The id of the courier
+     * @return The last position the courier reported
+     * @throws EntityNotFoundException When the courier never reported a position
+     */
+    CourierPosition getPositionOfCourier(long courierId) throws EntityNotFoundException;
+
+    /**
+     * Records a GPS position reported by a courier, like {@link #updatePositionOfCourier(long, CourierPosition)},
+     * for callers that hold the position as primitives.
+     *
+     * @param courierId The id of the courier
+     * @param latitude The latitude of the position
+     * @param longitude The longitude of the position
+     * @param timestamp The time of the position, in milliseconds since the epoch
+     * @return true if the position is now the last known position of the courier, false if it was not newer
+     */
+    default boolean updatePositionOfCourier(long courierId, double latitude, double longitude, long timestamp) {
+        return updatePositionOfCourier(courierId, new CourierPosition(latitude, longitude, timestamp));
+    }
+
+    /**
+     * Hands the last known GPS position of a courier to a reader. Implementations that do not keep positions as
+     * objects can do this without allocating.
+     *
+     * @param courierId The id of the courier
+     * @param reader Receives the position
+     * @return true if the courier reported a position, false if the reader was not called
+     */
+    default boolean readPositionOfCourier(long courierId, PositionReader reader) {
+        try {
+            CourierPosition position = getPositionOfCourier(courierId);
+            reader.read(position.getLatitude(), position.getLongitude(), position.getTimestamp());
+            return true;
+        } catch (EntityNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Receives a position as primitives.
+     */
+    @FunctionalInterface
+    interface PositionReader {
+        void read(double latitude, double longitude, long timestamp);
+    }
 }
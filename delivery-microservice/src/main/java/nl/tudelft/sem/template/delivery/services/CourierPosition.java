@@ -0,0 +1,28 @@
+package nl.tudelft.sem.template.delivery.services;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * GPS position of a courier at a point in time.
+ */
+@EqualsAndHashCode
+@RequiredArgsConstructor
+@Getter
+public class CourierPosition {
+    private final double latitude;
+    private final double longitude;
+    /**
+     * Time of the GPS fix, in milliseconds since the epoch.
+     */
+    private final long timestamp;
+
+    public Coordinate getCoordinate() {
+        return new Coordinate(latitude, longitude);
+    }
+
+    public boolean isNewerThan(CourierPosition other) {
+        return other == null || timestamp > other.timestamp;
+    }
+}
@@ -0,0 +1,15 @@
+package nl.tudelft.sem.template.delivery.services;
+
+/**
+ * Receives the courier positions reported to POST /courier/locations, after they became the last known position of
+ * their courier. Called on the request thread, so implementations must be quick and safe to call concurrently.
+ */
+public interface CourierPositionListener {
+    /**
+     * Called for every position that is newer than the last known position of its courier.
+     *
+     * @param courierId The id of the courier
+     * @param position The new position
+     */
+    void onPosition(long courierId, CourierPosition position);
+}
@@ -0,0 +1,147 @@
+package nl.tudelft.sem.template.delivery.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import delivery_microservice.model.CourierTrailPoint;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Pushes the positions of a courier to the customers tracking one of their deliveries. Every position is serialized
+ * once, however many watchers the courier has, and sent by a pool of tracking.threads threads. A watcher gets at
+ * most one position every tracking.minIntervalMs milliseconds: positions reported in between replace the unsent one,
+ * so a watcher always receives the latest position without being flooded by a courier that reports often. Tracking
+ * ends when the delivery changes courier or is delivered, so a courier is never followed for a delivery they no
+ * longer bring, and for a watcher that takes longer than tracking.sendTimeoutMs milliseconds to take one position.
+ */
+@Service
+public class CourierTrackingBroker implements CourierPositionListener {
+    private final EventStream<CourierPosition> stream;
+    private final ConcurrentMap<Long, Set<EventStream<CourierPosition>.Subscription>> byCourier =
+            new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, Set<EventStream<CourierPosition>.Subscription>> byDelivery =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param objectMapper serializes the positions
+     * @param environment reads the tracking.* settings
+     * @param meterRegistry registers the tracking.events counters
+     */
+    public CourierTrackingBroker(ObjectMapper objectMapper, Environment environment, MeterRegistry meterRegistry) {
+        this(objectMapper, executor(environment.getProperty("tracking.threads", Integer.class, 4)),
+                System::currentTimeMillis, environment.getProperty("tracking.minIntervalMs", Long.class, 2000L),
+                environment.getProperty("tracking.sendTimeoutMs", Long.class, 5000L), meterRegistry);
+    }
+
+    CourierTrackingBroker(ObjectMapper objectMapper, EventStream.Scheduler scheduler, LongSupplier clock,
+                          long minIntervalMs, long sendTimeoutMs, MeterRegistry meterRegistry) {
+        this.stream = new EventStream<>(position -> new EventStream.Event(position.getTimestamp(),
+                objectMapper.writeValueAsString(new CourierTrailPoint()
+                        .latitude(position.getLatitude())
+                        .longitude(position.getLongitude())
+                        .timestamp(OffsetDateTime.ofInstant(Instant.ofEpochMilli(position.getTimestamp()),
+                                ZoneOffset.UTC)))),
+                scheduler, clock, minIntervalMs, sendTimeoutMs, meterRegistry, "tracking.events",
+                "Courier positions sent to watchers, replaced by a newer one before they were sent, failed or timed out");
+        Gauge.builder("tracking.subscribers", byDelivery, x -> x.values().stream().mapToInt(Set::size).sum())
+                .description("Open courier tracking subscriptions")
+                .register(meterRegistry);
+    }
+
+    private static EventStream.Scheduler executor(int threads) {
+        ScheduledExecutorService executor = Executors.newScheduledThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "courier-tracking");
+            thread.setDaemon(true);
+            return thread;
+        });
+        return new EventStream.Scheduler() {
+            @Override
+            public void schedule(Runnable task, long delayMs) {
+                executor.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+            }
+
+            @Override
+            public void shutdown() {
+                executor.shutdownNow();
+            }
+        };
+    }
+
+    /**
+     * Stops the sending threads when the application shuts down.
+     */
+    @PreDestroy
+    public void shutdown() {
+        stream.shutdown();
+    }
+
+    /**
+     * Subscribes to the positions of the courier of a delivery. The caller must have checked that the user may
+     * track the delivery; nothing is checked per position.
+     *
+     * @param deliveryId the id of the delivery
+     * @param courierId the id of the courier of the delivery
+     * @param sink receives the positions as JSON
+     * @param onEnd run when tracking ends because the delivery changed courier or was delivered, or because the
+     *              client took too long to take a position
+     * @return the subscription, to be cancelled when the client goes away
+     */
+    public EventStream<CourierPosition>.Subscription subscribe(long deliveryId, long courierId, EventStream.Sink sink,
+                                                               Runnable onEnd) {
+        EventStream<CourierPosition>.Subscription subscription = stream.subscribe(sink, onEnd, x -> {
+            remove(byCourier, courierId, x);
+            remove(byDelivery, deliveryId, x);
+        });
+        byDelivery.computeIfAbsent(deliveryId, x -> ConcurrentHashMap.newKeySet()).add(subscription);
+        byCourier.computeIfAbsent(courierId, x -> ConcurrentHashMap.newKeySet()).add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Ends the tracking of a delivery, because it was given to another courier or delivered.
+     *
+     * @param deliveryId the id of the delivery
+     */
+    public void endTracking(long deliveryId) {
+        Set<EventStream<CourierPosition>.Subscription> watchers = byDelivery.get(deliveryId);
+        if (watchers != null) {
+            new ArrayList<>(watchers).forEach(x -> x.end());
+        }
+    }
+
+    @Override
+    public void onPosition(long courierId, CourierPosition position) {
+        Set<EventStream<CourierPosition>.Subscription> watchers = byCourier.get(courierId);
+        if (watchers == null || watchers.isEmpty()) {
+            return;
+        }
+        EventStream.Event event = stream.serialize(position);
+        if (event != null) {
+            watchers.forEach(x -> x.offer(event));
+        }
+    }
+
+    private static void remove(ConcurrentMap<Long, Set<EventStream<CourierPosition>.Subscription>> index, long id,
+                               EventStream<CourierPosition>.Subscription subscription) {
+        index.computeIfPresent(id, (key, subscriptions) -> {
+            subscriptions.remove(subscription);
+            return subscriptions.isEmpty() ? null : subscriptions;
+        });
+    }
+}
@@ -0,0 +1,202 @@
+package nl.tudelft.sem.template.delivery.services;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps the last trail.capacity positions of every courier, in a fixed-size ring buffer per courier. Only the oldest
+ * position is stored in full; every later position is stored as its difference to the one before, packed in one
+ * long: latitude and longitude in 16 bits each, in units of 0.00001 degree (about a meter), and the time in 32 bits
+ * of milliseconds. That is 8 bytes per position instead of the 24 of two doubles and a long. The trail of a courier
+ * that has not reported for trail.idleMs milliseconds is dropped.
+ *
+ * <p>With the default capacity of 120 positions, ten minutes at one report every five seconds, a courier takes
+ * about 1.05 KB with compressed references: 968 bytes for the array of 119 deltas, 64 for the trail itself and 48
+ * for its map entry and boxed key. 50000 active couriers take about 54 MB, against about 264 MB for the same
+ * positions as arrays of CourierPosition objects. The estimate is published as the courier.trails.memory gauge.
+ */
+@Service
+public class CourierTrailStore implements CourierPositionListener {
+    static final double SCALE = 100_000;
+    // the trail object, the map node and the boxed key
+    static final long BYTES_PER_TRAIL = 64 + 32 + 16;
+    static final long ARRAY_HEADER_BYTES = 16;
+
+    private final int capacity;
+    private final LongSupplier clock;
+    private final long idleMs;
+    private final ConcurrentMap<Long, Trail> trails = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param environment reads the trail.capacity and trail.idleMs settings
+     * @param meterRegistry registers the courier.trails gauges
+     */
+    public CourierTrailStore(Environment environment, MeterRegistry meterRegistry) {
+        this(environment.getProperty("trail.capacity", Integer.class, 120), System::currentTimeMillis,
+                environment.getProperty("trail.idleMs", Long.class, 600_000L));
+        Gauge.builder("courier.trails", trails, ConcurrentMap::size)
+                .description("Couriers with a trail")
+                .register(meterRegistry);
+        Gauge.builder("courier.trails.memory", this, CourierTrailStore::estimatedBytes)
+                .description("Estimated heap used by the courier trails")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    CourierTrailStore(int capacity, LongSupplier clock, long idleMs) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("trail.capacity must be at least 2");
+        }
+        this.capacity = capacity;
+        this.clock = clock;
+        this.idleMs = idleMs;
+    }
+
+    @Override
+    public void onPosition(long courierId, CourierPosition position) {
+        Trail trail = trails.get(courierId);
+        if (trail == null) {
+            trail = trails.computeIfAbsent(courierId, x -> new Trail(capacity));
+        }
+        trail.add(position, clock.getAsLong());
+    }
+
+    /**
+     * Drops the trails of couriers that stopped reporting.
+     */
+    @Scheduled(fixedDelayString = "${trail.idleMs:600000}")
+    public void evictIdle() {
+        long now = clock.getAsLong();
+        trails.values().removeIf(x -> now - x.addedAt >= idleMs);
+    }
+
+    int size() {
+        return trails.size();
+    }
+
+    /**
+     * Fetch the recent positions of a courier, with the coordinates rounded to five decimals.
+     *
+     * @param courierId The id of the courier
+     * @param since Only positions after this time, in milliseconds since the epoch, are returned
+     * @return The positions, oldest first, or null if the courier has no trail
+     */
+    public List<CourierPosition> getTrail(long courierId, long since) {
+        Trail trail = trails.get(courierId);
+        return trail == null ? null : trail.since(since);
+    }
+
+    /**
+     * Estimates the heap used by the trails, see the class comment.
+     *
+     * @return The estimate in bytes
+     */
+    public long estimatedBytes() {
+        return trails.size() * (BYTES_PER_TRAIL + ARRAY_HEADER_BYTES + (capacity - 1L) * Long.BYTES);
+    }
+
+    static int toFixed(double degrees) {
+        return (int) Math.round(degrees * SCALE);
+    }
+
+    /**
+     * The ring buffer of one courier. The oldest position is kept in full in the first fields, the buffer holds the
+     * differences of the size - 1 positions after it, starting at index head.
+     */
+    private static final class Trail {
+        private final long[] deltas;
+        private int head;
+        private int size;
+        private int firstLatitude;
+        private int firstLongitude;
+        private long firstTime;
+        private int lastLatitude;
+        private int lastLongitude;
+        private long lastTime;
+        // when the last position was added, on the clock of the store
+        private volatile long addedAt;
+
+        private Trail(int capacity) {
+            deltas = new long[capacity - 1];
+        }
+
+        private synchronized void add(CourierPosition position, long now) {
+            addedAt = now;
+            int latitude = toFixed(position.getLatitude());
+            int longitude = toFixed(position.getLongitude());
+            long time = position.getTimestamp();
+            if (size > 0 && time <= lastTime) {
+                return;
+            }
+            if (size == 0 || !fits(latitude - lastLatitude, longitude - lastLongitude, time - lastTime)) {
+                // the first position, or a jump too large for a delta after a gap in the reports: start over
+                size = 1;
+                head = 0;
+                firstLatitude = latitude;
+                firstLongitude = longitude;
+                firstTime = time;
+            } else {
+                if (size - 1 == deltas.length) {
+                    dropFirst();
+                }
+                deltas[(head + size - 1) % deltas.length] = pack(latitude - lastLatitude,
+                        longitude - lastLongitude, time - lastTime);
+                size++;
+            }
+            lastLatitude = latitude;
+            lastLongitude = longitude;
+            lastTime = time;
+        }
+
+        private void dropFirst() {
+            long delta = deltas[head];
+            firstLatitude += (short) (delta >>> 48);
+            firstLongitude += (short) (delta >>> 32);
+            firstTime += (int) delta;
+            head = (head + 1) % deltas.length;
+            size--;
+        }
+
+        private synchronized List<CourierPosition> since(long since) {
+            if (lastTime <= since) {
+                return Collections.emptyList();
+            }
+            List<CourierPosition> positions = new ArrayList<>(size);
+            int latitude = firstLatitude;
+            int longitude = firstLongitude;
+            long time = firstTime;
+            for (int i = 0; i < size; i++) {
+                if (i > 0) {
+                    long delta = deltas[(head + i - 1) % deltas.length];
+                    latitude += (short) (delta >>> 48);
+                    longitude += (short) (delta >>> 32);
+                    time += (int) delta;
+                }
+                if (time > since) {
+                    positions.add(new CourierPosition(latitude / SCALE, longitude / SCALE, time));
+                }
+            }
+            return positions;
+        }
+
+        private static boolean fits(int latitude, int longitude, long time) {
+            return latitude == (short) latitude && longitude == (short) longitude && time == (int) time;
+        }
+
+        private static long pack(int latitude, int longitude, long time) {
+            return (latitude & 0xFFFFL) << 48 | (longitude & 0xFFFFL) << 32 | (time & 0xFFFFFFFFL);
+        }
+    }
+}
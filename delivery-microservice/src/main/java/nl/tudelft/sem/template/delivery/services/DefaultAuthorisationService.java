@@ -1,17 +1,76 @@
 package nl.tudelft.sem.template.delivery.services;
 
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Service;
 import users_microservice.ApiException;
 import users_microservice.api.UserApi;
 import users_microservice.model.UsersGetUserTypeIdGet200Response.UserTypeEnum;
 
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
 @Service
 public class DefaultAuthorisationService implements AuthorisationService {
 
     UserApi userApi;
 
-    public DefaultAuthorisationService(UserApi userApi) {
+    /**
+     * User types by user id. An empty Optional marks an id the users service does not know. A lookup is in the cache
+     * while it waits on the users service, so concurrent lookups of the same id join it instead of sending their
+     * own request. When caching is disabled an answer expires as soon as it arrives.
+     */
+    private final AsyncCache<Long, Optional<UserTypeEnum>> userTypes;
+    private final Counter remoteLookups;
+    private final Counter coalescedLookups;
+
+    /**
+     * Constructor.
+     *
+     * @param userApi the users service
+     * @param environment reads the authorisation.cache.* settings
+     * @param meterRegistry receives the hit and miss counts of the cache and the lookup counts
+     */
+    public DefaultAuthorisationService(UserApi userApi, Environment environment, MeterRegistry meterRegistry) {
         this.userApi = userApi;
+        this.userTypes = createCache(environment, meterRegistry);
+        this.remoteLookups = lookupCounter(meterRegistry, "remote");
+        this.coalescedLookups = lookupCounter(meterRegistry, "coalesced");
+    }
+
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("authorisation.userType.lookups")
+                .description("User type lookups sent to the users service or joined to a pending one")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static AsyncCache<Long, Optional<UserTypeEnum>> createCache(Environment environment,
+                                                                        MeterRegistry meterRegistry) {
+        if (!environment.getProperty("authorisation.cache.enabled", Boolean.class, true)) {
+            // only keeps the lookups that are still waiting on the users service
+            return Caffeine.newBuilder()
+                    .expireAfter(new UserTypeExpiry(0, 0))
+                    .buildAsync();
+        }
+        long ttl = TimeUnit.SECONDS.toNanos(
+                environment.getProperty("authorisation.cache.ttlSeconds", Long.class, 60L));
+        long negativeTtl = TimeUnit.SECONDS.toNanos(
+                environment.getProperty("authorisation.cache.negativeTtlSeconds", Long.class, 10L));
+
+        AsyncCache<Long, Optional<UserTypeEnum>> cache = Caffeine.newBuilder()
+                .maximumSize(environment.getProperty("authorisation.cache.maximumSize", Long.class, 10_000L))
+                .expireAfter(new UserTypeExpiry(ttl, negativeTtl))
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), "userTypes");
+        return cache;
     }
 
     /**
@@ -66,7 +125,7 @@ public class DefaultAuthorisationService implements AuthorisationService {
      */
     @Override
     public boolean isUser(Long userId) {
-        return isCustomer(userId) || isVendor(userId) || isCourier(userId) || isAdmin(userId);
+        return isValid(userId) && getUserType(userId) != null;
     }
 
     public boolean isValid(Long userId) {
@@ -81,12 +140,95 @@ public class DefaultAuthorisationService implements AuthorisationService {
         return (type == userType || type == UserTypeEnum.ADMIN);
     }
 
-    private UserTypeEnum getUserType(Long userId) {
+    /**
+     * Gets the type of a user, at most once per request and through the cache if it is enabled.
+     *
+     * @param userId Long user id
+     * @return the user type, or null if the user is unknown or the lookup failed
+     */
+    UserTypeEnum getUserType(Long userId) {
+        AuthorisationContext context = AuthorisationContext.current();
+        Optional<UserTypeEnum> type = context == null
+                ? resolveUserType(userId)
+                : context.resolve(userId, this::resolveUserType);
+        return type == null ? null : type.orElse(null);
+    }
+
+    /**
+     * Gets the type of a user from the cache, or asks the users service for it. The call to the users service is made
+     * by the caller that put the lookup in the cache, outside any lock of the cache; every concurrent caller joins
+     * that lookup.
+     *
+     * @param userId Long user id
+     * @return the user type, empty for unknown users or null if the lookup failed
+     */
+    private Optional<UserTypeEnum> resolveUserType(Long userId) {
+        var lookup = new CompletableFuture<Optional<UserTypeEnum>>();
+        var type = userTypes.get(userId, (id, executor) -> lookup);
+        if (type != lookup) {
+            if (!type.isDone()) {
+                coalescedLookups.increment();
+            }
+            return type.join();
+        }
+
+        try {
+            remoteLookups.increment();
+            // a null answer is removed from the cache, so the lookup is retried on the next request
+            lookup.complete(fetchUserType(userId));
+        } catch (RuntimeException e) {
+            lookup.completeExceptionally(e);
+            throw e;
+        }
+        return lookup.join();
+    }
+
+    /**
+     * Calls the users service for the type of a user. An id the users service rejects or does not know is returned
+     * as an empty Optional so it can be cached. Any other failure returns null, which the cache does not store,
+     * so the lookup is retried on the next request.
+     *
+     * @param userId Long user id
+     * @return the user type, empty for unknown users or null if the lookup failed
+     */
+    private Optional<UserTypeEnum> fetchUserType(Long userId) {
         try {
-            return userApi.usersGetUserTypeIdGet(userId).getUserType();
+            return Optional.ofNullable(userApi.usersGetUserTypeIdGet(userId).getUserType());
         } catch (ApiException e) {
+            if (e.getCode() == 400 || e.getCode() == 404) {
+                return Optional.empty();
+            }
             return null;
         }
     }
 
+    /**
+     * Keeps known users for the regular time to live and unknown users for the (shorter) negative one.
+     */
+    private static class UserTypeExpiry implements Expiry<Long, Optional<UserTypeEnum>> {
+        private final long ttlNanos;
+        private final long negativeTtlNanos;
+
+        UserTypeExpiry(long ttlNanos, long negativeTtlNanos) {
+            this.ttlNanos = ttlNanos;
+            this.negativeTtlNanos = negativeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterCreate(Long key, Optional<UserTypeEnum> value, long currentTime) {
+            return value.isPresent() ? ttlNanos : negativeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(Long key, Optional<UserTypeEnum> value, long currentTime,
+                                      long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(Long key, Optional<UserTypeEnum> value, long currentTime,
+                                    long currentDuration) {
+            return currentDuration;
+        }
+    }
 }
@@ -2,10 +2,21 @@ package nl.tudelft.sem.template.delivery.services;
 
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.persistence.EntityManager;
 
+import delivery_microservice.model.CreateDeliveryRequest;
 import delivery_microservice.model.Delivery;
 import delivery_microservice.model.Delay;
 import delivery_microservice.model.Locations;
@@ -13,43 +24,95 @@ import delivery_microservice.model.Times;
 import delivery_microservice.model.Location;
 import nl.tudelft.sem.template.delivery.database.DelayRepository;
 import nl.tudelft.sem.template.delivery.database.DeliveryRepository;
+import nl.tudelft.sem.template.delivery.dtos.DeliveryField;
+import nl.tudelft.sem.template.delivery.dtos.DeliverySummary;
 import nl.tudelft.sem.template.delivery.dtos.UpdateDeliveryDto;
+import nl.tudelft.sem.template.delivery.exceptions.DeliveryConflictException;
 import nl.tudelft.sem.template.delivery.exceptions.EntityNotFoundException;
-import orders_microservice.ApiException;
-import orders_microservice.api.OrderApi;
-import orders_microservice.model.Order;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
-import users_microservice.api.VendorApi;
+import org.springframework.transaction.annotation.Transactional;
 import users_microservice.model.Vendor;
 
 @Service
 public class DefaultDeliveryService implements DeliveryService {
+    static final int MAX_UPDATE_ATTEMPTS = 3;
+
     private final DeliveryRepository deliveryRepository;
     private final DelayRepository delayRepository;
-    private final OrderApi orderApi;
-    private final VendorApi vendorApi;
+    private final VendorDirectory vendorDirectory;
+    private final EntityManager entityManager;
+    private final AnalyticsAggregator analyticsAggregator;
+    private final DispatchQueue dispatchQueue;
+    private final OrderStatusOutbox orderStatusOutbox;
+    private final DeliveryEventBroker deliveryEventBroker;
+    private final DeliveryArchive deliveryArchive;
+    private final CourierTrackingBroker courierTrackingBroker;
 
     /**
      * Testing constructor to inject mocks.
      *
      * @param deliveryRepository passes repo mock
-     * @param orderApi passes orderapi mock
-     * @param vendorApi passes vendorapi mock
+     * @param vendorDirectory passes vendor directory mock
+     * @param entityManager passes entity manager mock
+     * @param analyticsAggregator receives the changes of delivered deliveries
+     * @param dispatchQueue keeps the deliveries without a courier
+     * @param orderStatusOutbox saves deliveries together with the status changes of their orders
+     * @param deliveryEventBroker pushes changed deliveries to their subscribers
+     * @param deliveryArchive holds the deliveries moved out of the table
+     * @param courierTrackingBroker ends the tracking of deliveries that changed courier or were delivered
      */
     public DefaultDeliveryService(DeliveryRepository deliveryRepository,
-            DelayRepository delayRepository, OrderApi orderApi, VendorApi vendorApi) {
+            DelayRepository delayRepository, VendorDirectory vendorDirectory,
+            EntityManager entityManager, AnalyticsAggregator analyticsAggregator, DispatchQueue dispatchQueue,
+            OrderStatusOutbox orderStatusOutbox, DeliveryEventBroker deliveryEventBroker,
+            DeliveryArchive deliveryArchive, CourierTrackingBroker courierTrackingBroker) {
         this.deliveryRepository = deliveryRepository;
         this.delayRepository = delayRepository;
-        this.orderApi = orderApi;
-        this.vendorApi = vendorApi;
+        this.vendorDirectory = vendorDirectory;
+        this.entityManager = entityManager;
+        this.analyticsAggregator = analyticsAggregator;
+        this.dispatchQueue = dispatchQueue;
+        this.orderStatusOutbox = orderStatusOutbox;
+        this.deliveryEventBroker = deliveryEventBroker;
+        this.deliveryArchive = deliveryArchive;
+        this.courierTrackingBroker = courierTrackingBroker;
     }
 
     public boolean exists(long id) {
         return deliveryRepository.existsById(id);
     }
 
+    /**
+     * Gets a delivery by id, from the archive if it was archived.
+     *
+     * @param id long, id of delivery
+     * @return the delivery, empty if there is none
+     */
     public Optional<Delivery> getDelivery(long id) {
-        return deliveryRepository.findById(id);
+        return deliveryRepository.findById(id).or(() -> deliveryArchive.find(id));
+    }
+
+    /**
+     * Gets the deliveries with the given ids, with their delays, in one query. Ids that are not in the table are
+     * looked up in the archive.
+     *
+     * @param ids ids of deliveries, duplicates are loaded once
+     * @return the deliveries that exist, ordered by delivery id
+     */
+    public List<Delivery> getDeliveries(Collection<Long> ids) {
+        List<Long> distinct = ids.stream().distinct().collect(Collectors.toList());
+        List<Delivery> deliveries = loadWithDelays(distinct);
+        if (deliveries.size() == distinct.size()) {
+            return deliveries;
+        }
+        Set<Long> found = deliveries.stream().map(Delivery::getDeliveryId).collect(Collectors.toSet());
+        List<Delivery> withArchived = new ArrayList<>(deliveries);
+        withArchived.addAll(deliveryArchive.findAll(
+                distinct.stream().filter(x -> !found.contains(x)).collect(Collectors.toList())));
+        withArchived.sort(Comparator.comparing(Delivery::getDeliveryId));
+        return withArchived;
     }
 
 
@@ -65,28 +128,107 @@ public class DefaultDeliveryService implements DeliveryService {
 
 
     /**
-     * Gets a delivery by vendor id.
+     * Gets a page of deliveries by vendor id, ordered by delivery id.
      *
      * @param id long, id of vendor
-     * @return Delivery with order id equal to provided id
+     * @param after only deliveries with a greater delivery id are returned
+     * @param limit the maximum number of deliveries to return
+     * @return Deliveries with vendor id equal to provided id
      */
-    public List<Delivery> getDeliveryByVendorId(long id) {
-        return deliveryRepository.findAll().stream()
-                .filter(x -> x.getVendorId() == id)
-                .collect(Collectors.toList());
+    public List<Delivery> getDeliveryByVendorId(long id, long after, int limit) {
+        return loadWithDelays(deliveryRepository.findDeliveryIdsByVendorId(id, after, PageRequest.of(0, limit)));
     }
 
 
     /**
-     * Gets a delivery by courier id.
+     * Gets a page of deliveries by courier id, ordered by delivery id.
+     *
+     * @param id long, id of courier
+     * @param after only deliveries with a greater delivery id are returned
+     * @param limit the maximum number of deliveries to return
+     * @return Deliveries with courier id equal to provided id
+     */
+    public List<Delivery> getDeliveryByCourierId(long id, long after, int limit) {
+        return loadWithDelays(deliveryRepository.findDeliveryIdsByCourierId(id, after, PageRequest.of(0, limit)));
+    }
+
+    /**
+     * Gets the requested columns of the delivery of an order.
+     *
+     * @param id long, id of order
+     * @param fields the columns to read
+     * @return the columns of the delivery, empty if the order has no delivery
+     */
+    public Optional<DeliverySummary> getDeliverySummaryByOrderId(long id, Set<DeliveryField> fields) {
+        return deliveryRepository.findSummariesByOrderId(id, fields).stream().findFirst();
+    }
+
+    /**
+     * Gets the requested columns of a page of deliveries by vendor id, ordered by delivery id.
      *
      * @param id long, id of vendor
-     * @return Delivery with order id equal to provided id
+     * @param after only deliveries with a greater delivery id are returned
+     * @param limit the maximum number of deliveries to return
+     * @param fields the columns to read
+     * @return the columns of the deliveries
      */
-    public List<Delivery> getDeliveryByCourierId(long id) {
-        return deliveryRepository.findAll().stream()
-                .filter(x -> x.getCourierId() == id)
-                .collect(Collectors.toList());
+    public List<DeliverySummary> getDeliverySummariesByVendorId(long id, long after, int limit,
+                                                                Set<DeliveryField> fields) {
+        return deliveryRepository.findSummariesByVendorId(id, after, limit, fields);
+    }
+
+    /**
+     * Gets the requested columns of a page of deliveries by courier id, ordered by delivery id.
+     *
+     * @param id long, id of courier
+     * @param after only deliveries with a greater delivery id are returned
+     * @param limit the maximum number of deliveries to return
+     * @param fields the columns to read
+     * @return the columns of the deliveries
+     */
+    public List<DeliverySummary> getDeliverySummariesByCourierId(long id, long after, int limit,
+                                                                 Set<DeliveryField> fields) {
+        return deliveryRepository.findSummariesByCourierId(id, after, limit, fields);
+    }
+
+    private List<Delivery> loadWithDelays(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        return deliveryRepository.findWithDelaysByDeliveryIdIn(ids);
+    }
+
+    /**
+     * Hands every delivery of a vendor to the consumer while the rows are read from the database.
+     * Each delivery is detached once consumed so the persistence context does not grow with the result.
+     *
+     * @param id long, id of vendor
+     * @param consumer receives the deliveries in delivery id order
+     */
+    @Transactional(readOnly = true)
+    public void forEachDeliveryByVendorId(long id, Consumer<Delivery> consumer) {
+        try (Stream<Delivery> deliveries = deliveryRepository.streamDeliveriesByVendorId(id)) {
+            deliveries.forEach(x -> consumeAndDetach(x, consumer));
+        }
+    }
+
+    /**
+     * Hands every delivery of a courier to the consumer while the rows are read from the database.
+     * Each delivery is detached once consumed so the persistence context does not grow with the result.
+     *
+     * @param id long, id of courier
+     * @param consumer receives the deliveries in delivery id order
+     */
+    @Transactional(readOnly = true)
+    public void forEachDeliveryByCourierId(long id, Consumer<Delivery> consumer) {
+        try (Stream<Delivery> deliveries = deliveryRepository.streamDeliveriesByCourierId(id)) {
+            deliveries.forEach(x -> consumeAndDetach(x, consumer));
+        }
+    }
+
+    private void consumeAndDetach(Delivery delivery, Consumer<Delivery> consumer) {
+        consumer.accept(delivery);
+        entityManager.detach(delivery);
     }
 
     /**
@@ -101,9 +243,51 @@ public class DefaultDeliveryService implements DeliveryService {
     public Delivery createDelivery(long orderId, long vendorId, Location customerLocation,
                                    OffsetDateTime estimatedPickUpTime) throws users_microservice.ApiException,
             EntityNotFoundException {
+        Delivery delivery = newDelivery(orderId, findVendor(vendorId), customerLocation, estimatedPickUpTime);
+
+        Delivery saved = deliveryRepository.save(delivery);
+        dispatchQueue.offer(saved.getDeliveryId());
+        return saved;
+    }
+
+    /**
+     * Creates a delivery for every request. Every vendor is looked up once, and if one of them is not a verified
+     * vendor no delivery is created. The deliveries are inserted in one transaction; their ids come from a pooled
+     * sequence, so Hibernate sends the inserts as JDBC batches.
+     *
+     * @param requests the orders to create deliveries for
+     * @return the new deliveries, in the order of the requests
+     * @throws EntityNotFoundException if one of the vendors is not a verified vendor
+     */
+    public List<Delivery> createDeliveries(List<CreateDeliveryRequest> requests)
+            throws users_microservice.ApiException, EntityNotFoundException {
+        Map<Long, Vendor> vendors = new HashMap<>();
+        List<Delivery> deliveries = new ArrayList<>(requests.size());
+        for (CreateDeliveryRequest request : requests) {
+            Vendor vendor = vendors.get(request.getVendorId());
+            if (vendor == null) {
+                vendor = findVendor(request.getVendorId());
+                vendors.put(request.getVendorId(), vendor);
+            }
+            deliveries.add(newDelivery(request.getOrderId(), vendor, request.getDeliveryLocation(),
+                    request.getEstimatedPickupTime()));
+        }
+
+        List<Delivery> saved = deliveryRepository.saveAll(deliveries);
+        saved.forEach(x -> dispatchQueue.offer(x.getDeliveryId()));
+        return saved;
+    }
+
+    private Vendor findVendor(long vendorId) throws users_microservice.ApiException, EntityNotFoundException {
+        return vendorDirectory.getVendor(vendorId)
+                .orElseThrow(() -> new EntityNotFoundException(Vendor.class, vendorId));
+    }
+
+    private static Delivery newDelivery(long orderId, Vendor vendor, Location customerLocation,
+                                        OffsetDateTime estimatedPickUpTime) {
         Delivery delivery = new Delivery();
         delivery.setOrderId(orderId);
-        delivery.setVendorId(vendorId);
+        delivery.setVendorId(vendor.getId());
 
         delivery.setDelivered(false);
 
@@ -118,16 +302,6 @@ public class DefaultDeliveryService implements DeliveryService {
 
         delivery.setTimes(times);
 
-        List<Vendor> vendors = vendorApi.vendorsVerifiedGet().stream()
-                .filter(x -> x.getId() == vendorId)
-                .collect(Collectors.toList());
-
-        if (vendors.size() == 0) {
-            throw new EntityNotFoundException(Vendor.class, vendorId);
-        }
-
-        Vendor vendor = vendors.get(0);
-
         Locations locations = new Locations()
                 .vendorCountry(vendor.getLocation().getCountry())
                 .vendorCity(vendor.getLocation().getCity())
@@ -139,21 +313,73 @@ public class DefaultDeliveryService implements DeliveryService {
                 .customerPostalCode(customerLocation.getPostalCode());
 
         delivery.setLocations(locations);
-
-        return deliveryRepository.save(delivery);
+        return delivery;
     }
 
     /**
-     * Updates a delivery.
+     * Updates a delivery. Only the fields set in the dto are changed. If another update saved the delivery in the
+     * meantime, the delivery is read again and the fields are applied to the new version, up to
+     * {@value #MAX_UPDATE_ATTEMPTS} times. The update fails with a conflict if the other update changed one of the
+     * same fields to a different value, or if it keeps losing the race. A status change is stored in the outbox
+     * together with the delivery and sent to the orders service in the background. Once saved, the delivery is
+     * pushed to its subscribers, and its tracking ends if it changed courier or was delivered.
      *
      * @param dto transfers data to the controller
      * @return the updated delivery
      * @throws EntityNotFoundException if something is wrong
+     * @throws DeliveryConflictException if a concurrent update changed the same fields
      */
-    public Delivery updateDelivery(Long userId, UpdateDeliveryDto dto) throws EntityNotFoundException, ApiException {
-        Delivery delivery = deliveryRepository.findById(dto.getDeliveryId())
-                .orElseThrow(() -> new EntityNotFoundException(Delivery.class, dto.getDeliveryId()));
+    public Delivery updateDelivery(Long userId, UpdateDeliveryDto dto)
+            throws EntityNotFoundException, DeliveryConflictException {
+        Delivery delivery = findDelivery(dto.getDeliveryId());
+        Delivery read = copyUpdatableFields(delivery);
+
+        if (dto.getTimes() != null) {
+            dto.getTimes().setDelays(delayRepository.saveAll(dto.getTimes().getDelays()));
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            var contributionBefore = AnalyticsAggregator.Contribution.of(delivery);
+            Long courierBefore = delivery.getCourierId();
+            applyUpdate(delivery, dto);
+            try {
+                Delivery saved = orderStatusOutbox.save(delivery, userId, dto.getStatus());
+                if (dto.getCourierId() != null) {
+                    // only once the courier is saved, so a failed update leaves the delivery claimable
+                    dispatchQueue.remove(dto.getDeliveryId());
+                }
+                analyticsAggregator.replace(contributionBefore, AnalyticsAggregator.Contribution.of(saved));
+                deliveryEventBroker.publish(saved);
+                if (!Objects.equals(courierBefore, saved.getCourierId())
+                        || Boolean.TRUE.equals(saved.getDelivered())) {
+                    courierTrackingBroker.endTracking(dto.getDeliveryId());
+                }
+                return saved;
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt == MAX_UPDATE_ATTEMPTS) {
+                    throw new DeliveryConflictException(dto.getDeliveryId(), "version");
+                }
+                entityManager.detach(delivery);
+                delivery = findDelivery(dto.getDeliveryId());
+                checkNoConflict(read, delivery, dto);
+            }
+        }
+    }
+
+    private Delivery findDelivery(long deliveryId) throws EntityNotFoundException {
+        return deliveryRepository.findById(deliveryId)
+                .orElseThrow(() -> new EntityNotFoundException(Delivery.class, deliveryId));
+    }
 
+    private static Delivery copyUpdatableFields(Delivery delivery) {
+        return new Delivery()
+                .courierId(delivery.getCourierId())
+                .rating(delivery.getRating())
+                .times(delivery.getTimes())
+                .delivered(delivery.getDelivered());
+    }
+
+    private void applyUpdate(Delivery delivery, UpdateDeliveryDto dto) {
         if (dto.getCourierId() != null) {
             delivery.setCourierId(dto.getCourierId());
         }
@@ -163,23 +389,49 @@ public class DefaultDeliveryService implements DeliveryService {
         }
 
         if (dto.getTimes() != null) {
-            dto.getTimes().setDelays(delayRepository.saveAll(dto.getTimes().getDelays()));
             delivery.setTimes(dto.getTimes());
         }
 
-        if (dto.getStatus() != null) {
-            Order order = orderApi.orderOrderIDGet(delivery.getOrderId()).get(0);
+        if (dto.getDelivered() != null) {
+            delivery.setDelivered(dto.getDelivered());
+        }
+    }
 
-            order.setStatus(Enum.valueOf(Order.StatusEnum.class, dto.getStatus().name()));
+    /**
+     * Checks that a concurrent update left the fields of the dto alone, or set them to the same values.
+     *
+     * @param read the fields as they were when the update started
+     * @param current the delivery as saved by the concurrent update
+     * @param dto the update
+     * @throws DeliveryConflictException naming the first field both updates changed
+     */
+    private static void checkNoConflict(Delivery read, Delivery current, UpdateDeliveryDto dto)
+            throws DeliveryConflictException {
+        checkField("courierId", dto.getCourierId(), read.getCourierId(), current.getCourierId(), dto);
+        checkField("rating", dto.getRating(), read.getRating(), current.getRating(), dto);
+        checkField("times", timesValue(dto.getTimes()), timesValue(read.getTimes()), timesValue(current.getTimes()),
+                dto);
+        checkField("delivered", dto.getDelivered(), read.getDelivered(), current.getDelivered(), dto);
+    }
 
-            orderApi.orderPut(userId, order);
+    /**
+     * Gets the values of times in a form that compares by value. Delays loaded by Hibernate are held in a bag,
+     * which only equals itself.
+     */
+    private static List<Object> timesValue(Times times) {
+        if (times == null) {
+            return null;
         }
+        return Arrays.asList(times.getEstimatedPickupTime(), times.getEstimatedDeliveryTime(),
+                times.getActualPickupTime(), times.getActualDeliveryTime(),
+                times.getDelays() == null ? null : new ArrayList<>(times.getDelays()));
+    }
 
-        if (dto.getDelivered() != null) {
-            delivery.setDelivered(dto.getDelivered());
+    private static void checkField(String field, Object updated, Object read, Object current, UpdateDeliveryDto dto)
+            throws DeliveryConflictException {
+        if (updated != null && !Objects.equals(read, current) && !Objects.equals(updated, current)) {
+            throw new DeliveryConflictException(dto.getDeliveryId(), field);
         }
-
-        return deliveryRepository.save(delivery);
     }
 
     /**
@@ -188,10 +440,86 @@ public class DefaultDeliveryService implements DeliveryService {
      * @return List of DeliveryIds with unassigned vendors
      */
     public List<Long> getUnassigned() {
-        var unassignedDeliveries = deliveryRepository.findDeliveriesByCourierIdNull();
-        return unassignedDeliveries.stream()
-            .map(Delivery::getDeliveryId)
-            .collect(Collectors.toList());
+        return dispatchQueue.snapshot();
+    }
+
+    /**
+     * Assigns the oldest delivery without a courier to a courier. The queue hands every id to one caller only and
+     * the courier is only set if the delivery still has none, so a delivery assigned in the meantime through an
+     * update is skipped instead of being assigned twice.
+     *
+     * @param courierId the id of the courier
+     * @return the claimed delivery, empty if no delivery is waiting
+     */
+    public Optional<Delivery> claimDelivery(long courierId) {
+        Long deliveryId;
+        while ((deliveryId = dispatchQueue.poll()) != null) {
+            int assigned;
+            try {
+                assigned = deliveryRepository.assignCourierIfUnassigned(deliveryId, courierId);
+            } catch (RuntimeException e) {
+                dispatchQueue.offer(deliveryId);
+                throw e;
+            }
+            if (assigned == 1) {
+                courierTrackingBroker.endTracking(deliveryId);
+                Optional<Delivery> claimed = deliveryRepository.findById(deliveryId);
+                claimed.ifPresent(deliveryEventBroker::publish);
+                return claimed;
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Gets the deliveries a courier still has to bring: not delivered and without an actual delivery time.
+     *
+     * @param courierId long, id of courier
+     * @return the deliveries, without their delays
+     */
+    public List<Delivery> getActiveDeliveriesByCourierId(long courierId) {
+        return deliveryRepository.findActiveDeliveriesByCourierId(courierId);
+    }
+
+    /**
+     * Records when the courier picked up a delivery, unless a pickup time was recorded already, the delivery was
+     * handed to another courier or it was delivered. The delivery is pushed to its subscribers if it changed.
+     *
+     * @param deliveryId long, id of delivery
+     * @param courierId long, id of the courier that picked it up
+     * @param time the pickup time
+     * @return true if the time was recorded
+     */
+    public boolean recordActualPickupTime(long deliveryId, long courierId, OffsetDateTime time) {
+        return publishIfChanged(deliveryId, deliveryRepository.setActualPickupTimeIfUnset(deliveryId, courierId, time));
+    }
+
+    /**
+     * Records when the courier arrived at the customer, unless a delivery time was recorded already, the delivery
+     * was handed to another courier or it was delivered. The delivery is pushed to its subscribers if it changed,
+     * and its tracking ends.
+     *
+     * @param deliveryId long, id of delivery
+     * @param courierId long, id of the courier that brought it
+     * @param time the delivery time
+     * @return true if the time was recorded
+     */
+    public boolean recordActualDeliveryTime(long deliveryId, long courierId, OffsetDateTime time) {
+        boolean recorded = publishIfChanged(deliveryId,
+                deliveryRepository.setActualDeliveryTimeIfUnset(deliveryId, courierId, time));
+        if (recorded) {
+            courierTrackingBroker.endTracking(deliveryId);
+        }
+        return recorded;
+    }
+
+    private boolean publishIfChanged(long deliveryId, int updated) {
+        if (updated == 0) {
+            return false;
+        }
+        // called outside any transaction, so the delays are fetched with the delivery for the serialization
+        deliveryRepository.findWithDelaysByDeliveryIdIn(List.of(deliveryId)).forEach(deliveryEventBroker::publish);
+        return true;
     }
 
     public List<Delivery> getAllDeliveredDeliveries() {
@@ -0,0 +1,279 @@
+package nl.tudelft.sem.template.delivery.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import delivery_microservice.model.Delivery;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Append-only store of archived deliveries in the archive.dir directory. Every archival run adds one segment, a
+ * gzip compressed file whose first line is the sorted list of the delivery ids it holds, followed by the
+ * deliveries as one JSON document per line in the same order. Segments are never changed once written. Only the
+ * id lists are kept in memory, eight bytes per archived delivery; a lookup by id decompresses the one segment that
+ * holds the delivery up to its line, and parses only that line.
+ */
+@Service
+public class DeliveryArchive {
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".ndjson.gz";
+
+    private final ObjectMapper objectMapper;
+    private final Path directory;
+    // oldest first
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+
+    /**
+     * Constructor.
+     *
+     * @param objectMapper serializes the deliveries
+     * @param environment reads the archive.dir setting
+     */
+    public DeliveryArchive(ObjectMapper objectMapper, Environment environment) {
+        this(objectMapper, Paths.get(environment.getProperty("archive.dir", "./delivery-microservice/archive")));
+    }
+
+    DeliveryArchive(ObjectMapper objectMapper, Path directory) {
+        this.objectMapper = objectMapper;
+        this.directory = directory;
+    }
+
+    /**
+     * Reads the id lists of the segments, and removes segments of runs that did not finish.
+     *
+     * @throws IOException if the directory cannot be read
+     */
+    @PostConstruct
+    public void load() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.sorted().collect(Collectors.toList());
+        }
+        segments.clear();
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(".tmp")) {
+                Files.delete(file);
+            } else if (name.startsWith(PREFIX) && name.endsWith(SUFFIX)) {
+                try (BufferedReader reader = open(file)) {
+                    segments.add(new Segment(file, objectMapper.readValue(reader.readLine(), long[].class)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Number of archived deliveries.
+     *
+     * @return the number
+     */
+    public long size() {
+        return segments.stream().mapToLong(x -> x.ids.length).sum();
+    }
+
+    public boolean contains(long deliveryId) {
+        return segments.stream().anyMatch(x -> x.indexOf(deliveryId) >= 0);
+    }
+
+    /**
+     * Reads an archived delivery. If a delivery was archived more than once the newest copy is returned.
+     *
+     * @param deliveryId the id of the delivery
+     * @return the delivery, empty if it is not archived
+     */
+    public Optional<Delivery> find(long deliveryId) {
+        return findAll(List.of(deliveryId)).stream().findFirst();
+    }
+
+    /**
+     * Reads archived deliveries. Every segment is read at most once, up to the last line of a delivery it holds, and
+     * only the lines of those deliveries are parsed. If a delivery was archived more than once the newest copy is
+     * returned.
+     *
+     * @param deliveryIds the ids of the deliveries
+     * @return the deliveries that are archived, in no particular order
+     */
+    public List<Delivery> findAll(Collection<Long> deliveryIds) {
+        Set<Long> missing = new HashSet<>(deliveryIds);
+        List<Delivery> found = new ArrayList<>();
+        for (int i = segments.size() - 1; i >= 0 && !missing.isEmpty(); i--) {
+            Segment segment = segments.get(i);
+            // line of the delivery in the segment to its id, in the order they are read
+            TreeMap<Integer, Long> lines = new TreeMap<>();
+            for (Long deliveryId : missing) {
+                int index = segment.indexOf(deliveryId);
+                if (index >= 0) {
+                    lines.put(index, deliveryId);
+                }
+            }
+            if (!lines.isEmpty()) {
+                found.addAll(read(segment, lines.keySet()));
+                missing.removeAll(lines.values());
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Reads all archived deliveries, one segment at a time. The stream must be closed.
+     *
+     * @return the deliveries, oldest segment first
+     */
+    public Stream<Delivery> stream() {
+        return new ArrayList<>(segments).stream().flatMap(this::read);
+    }
+
+    /**
+     * Writes deliveries to a new segment, which is only visible once it is published.
+     *
+     * @param deliveries the deliveries, with their delays
+     * @return the segment to publish or discard
+     * @throws IOException if the segment cannot be written
+     */
+    public PendingSegment write(List<Delivery> deliveries) throws IOException {
+        List<Delivery> sorted = new ArrayList<>(deliveries);
+        sorted.sort(Comparator.comparing(Delivery::getDeliveryId));
+        long[] ids = sorted.stream().mapToLong(Delivery::getDeliveryId).toArray();
+
+        Path file = directory.resolve(String.format("%s%010d%s", PREFIX, nextSegmentNumber(), SUFFIX));
+        Path temporary = directory.resolve(file.getFileName() + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(temporary)), StandardCharsets.UTF_8))) {
+            writer.write(objectMapper.writeValueAsString(ids));
+            writer.write('\n');
+            for (Delivery delivery : sorted) {
+                writer.write(objectMapper.writeValueAsString(delivery));
+                writer.write('\n');
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        return new PendingSegment(new Segment(file, ids), temporary);
+    }
+
+    private long nextSegmentNumber() {
+        if (segments.isEmpty()) {
+            return 1;
+        }
+        String last = segments.get(segments.size() - 1).file.getFileName().toString();
+        return Long.parseLong(last.substring(PREFIX.length(), last.length() - SUFFIX.length())) + 1;
+    }
+
+    private BufferedReader open(Path file) throws IOException {
+        return new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8));
+    }
+
+    private List<Delivery> read(Segment segment, Collection<Integer> sortedIndexes) {
+        List<Delivery> deliveries = new ArrayList<>(sortedIndexes.size());
+        try (BufferedReader reader = open(segment.file)) {
+            // the id list
+            reader.readLine();
+            int line = 0;
+            for (int index : sortedIndexes) {
+                for (; line < index; line++) {
+                    reader.readLine();
+                }
+                deliveries.add(parse(reader.readLine()));
+                line++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return deliveries;
+    }
+
+    private Stream<Delivery> read(Segment segment) {
+        try {
+            BufferedReader reader = open(segment.file);
+            return reader.lines().skip(1).map(this::parse).onClose(() -> {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Delivery parse(String json) {
+        try {
+            return objectMapper.readValue(json, Delivery.class);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final class Segment {
+        private final Path file;
+        private final long[] ids;
+
+        private Segment(Path file, long[] ids) {
+            this.file = file;
+            this.ids = ids;
+        }
+
+        private int indexOf(long deliveryId) {
+            return Arrays.binarySearch(ids, deliveryId);
+        }
+    }
+
+    /**
+     * A written segment that is not visible yet.
+     */
+    public final class PendingSegment {
+        private final Segment segment;
+        private final Path temporary;
+
+        private PendingSegment(Segment segment, Path temporary) {
+            this.segment = segment;
+            this.temporary = temporary;
+        }
+
+        /**
+         * Makes the segment visible, atomically.
+         *
+         * @throws IOException if the segment cannot be moved in place
+         */
+        public void publish() throws IOException {
+            Files.move(temporary, segment.file, StandardCopyOption.ATOMIC_MOVE);
+            segments.add(segment);
+        }
+
+        public void discard() throws IOException {
+            Files.deleteIfExists(temporary);
+        }
+    }
+}
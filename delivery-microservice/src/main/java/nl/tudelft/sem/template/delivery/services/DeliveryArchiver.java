@@ -0,0 +1,116 @@
+package nl.tudelft.sem.template.delivery.services;
+
+import delivery_microservice.model.Delay;
+import delivery_microservice.model.Delivery;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import nl.tudelft.sem.template.delivery.database.DelayRepository;
+import nl.tudelft.sem.template.delivery.database.DeliveryRepository;
+import org.springframework.core.env.Environment;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Moves delivered deliveries whose actual delivery time is more than archive.afterDays days ago out of the
+ * deliveries table into the {@link DeliveryArchive}, at most archive.batchSize every archive.runMs milliseconds,
+ * so the table the hot paths scan only holds recent deliveries. The segment is written before the rows are
+ * deleted and only published once the delete went through, so a failed run leaves the deliveries in the table.
+ * Archived deliveries can still be read by id and count towards the analytics, but can no longer be changed.
+ */
+@Service
+public class DeliveryArchiver {
+    private final DeliveryRepository deliveryRepository;
+    private final DelayRepository delayRepository;
+    private final DeliveryArchive deliveryArchive;
+    private final Duration age;
+    private final int batchSize;
+
+    private final Counter archivedDeliveries;
+
+    /**
+     * Constructor.
+     *
+     * @param deliveryRepository the deliveries
+     * @param delayRepository the delays of the deliveries
+     * @param deliveryArchive receives the archived deliveries
+     * @param environment reads the archive.* settings
+     * @param meterRegistry registers the deliveries.archived counter
+     */
+    public DeliveryArchiver(DeliveryRepository deliveryRepository, DelayRepository delayRepository,
+                            DeliveryArchive deliveryArchive, Environment environment, MeterRegistry meterRegistry) {
+        this.deliveryRepository = deliveryRepository;
+        this.delayRepository = delayRepository;
+        this.deliveryArchive = deliveryArchive;
+        this.age = Duration.ofDays(environment.getProperty("archive.afterDays", Long.class, 30L));
+        this.batchSize = environment.getProperty("archive.batchSize", Integer.class, 1000);
+        this.archivedDeliveries = Counter.builder("deliveries.archived")
+                .description("Deliveries moved from the deliveries table to the archive")
+                .register(meterRegistry);
+        Gauge.builder("deliveries.archive.size", deliveryArchive, DeliveryArchive::size)
+                .description("Deliveries in the archive")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Archives the oldest batch of deliveries that are old enough.
+     *
+     * @return the number of deliveries removed from the table
+     */
+    @Scheduled(initialDelayString = "${archive.runMs:60000}", fixedDelayString = "${archive.runMs:60000}")
+    @Transactional
+    public int archive() {
+        List<Long> ids = deliveryRepository.findArchivableDeliveryIds(OffsetDateTime.now().minus(age),
+                PageRequest.of(0, batchSize));
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        List<Delivery> deliveries = deliveryRepository.findWithDelaysByDeliveryIdIn(ids);
+        // left in the table by a run whose transaction failed after its segment was published
+        List<Delivery> notArchived = deliveries.stream()
+                .filter(x -> !deliveryArchive.contains(x.getDeliveryId()))
+                .collect(Collectors.toList());
+
+        try {
+            DeliveryArchive.PendingSegment segment = notArchived.isEmpty() ? null : deliveryArchive.write(notArchived);
+            try {
+                delete(deliveries);
+            } catch (RuntimeException e) {
+                if (segment != null) {
+                    segment.discard();
+                }
+                throw e;
+            }
+            if (segment != null) {
+                segment.publish();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        archivedDeliveries.increment(deliveries.size());
+        return deliveries.size();
+    }
+
+    private void delete(List<Delivery> deliveries) {
+        List<Delay> delays = new ArrayList<>();
+        for (Delivery delivery : deliveries) {
+            if (delivery.getTimes() != null && delivery.getTimes().getDelays() != null) {
+                delays.addAll(delivery.getTimes().getDelays());
+            }
+        }
+        deliveryRepository.deleteAll(deliveries);
+        delayRepository.deleteAll(delays);
+        // fails here, before the segment is published, if a delivery was changed in the meantime
+        deliveryRepository.flush();
+    }
+}
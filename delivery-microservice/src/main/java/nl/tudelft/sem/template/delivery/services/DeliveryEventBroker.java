@@ -0,0 +1,111 @@
+package nl.tudelft.sem.template.delivery.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import delivery_microservice.model.Delivery;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Pushes the new state of a delivery to everyone subscribed to it. Every change is serialized once, however many
+ * subscribers there are, and sent by a pool of deliveries.events.threads threads, so a slow client never holds up
+ * the update that caused the change. A subscriber keeps at most one unsent state: a newer state replaces it, and
+ * states older than the last one sent are skipped, so a slow client gets fewer events but always the latest one.
+ * A client that takes longer than deliveries.events.sendTimeoutMs milliseconds to take one event is dropped, so it
+ * cannot keep a sending thread from the other clients.
+ */
+@Service
+public class DeliveryEventBroker {
+    private final EventStream<Delivery> stream;
+    private final Executor executor;
+    private final ConcurrentMap<Long, Set<EventStream<Delivery>.Subscription>> subscriptions =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param objectMapper serializes the deliveries
+     * @param environment reads the deliveries.events.* settings
+     * @param meterRegistry registers the deliveries.events counters
+     */
+    public DeliveryEventBroker(ObjectMapper objectMapper, Environment environment, MeterRegistry meterRegistry) {
+        this(objectMapper, Executors.newFixedThreadPool(
+                environment.getProperty("deliveries.events.threads", Integer.class, 8), runnable -> {
+                    Thread thread = new Thread(runnable, "delivery-events");
+                    thread.setDaemon(true);
+                    return thread;
+                }), environment.getProperty("deliveries.events.sendTimeoutMs", Long.class, 5000L), meterRegistry);
+    }
+
+    DeliveryEventBroker(ObjectMapper objectMapper, Executor executor, long sendTimeoutMs,
+                        MeterRegistry meterRegistry) {
+        this.executor = executor;
+        this.stream = new EventStream<>(delivery -> new EventStream.Event(
+                delivery.getVersion() == null ? EventStream.Event.UNORDERED : delivery.getVersion(),
+                objectMapper.writeValueAsString(delivery)),
+                (task, delayMs) -> executor.execute(task), System::currentTimeMillis, 0, sendTimeoutMs, meterRegistry,
+                "deliveries.events",
+                "Delivery events sent, replaced by a newer one before they were sent, failed or timed out");
+        Gauge.builder("deliveries.events.subscribers", subscriptions,
+                x -> x.values().stream().mapToInt(Set::size).sum())
+                .description("Open delivery event subscriptions")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Stops the sending threads when the application shuts down.
+     */
+    @PreDestroy
+    public void shutdown() {
+        stream.shutdown();
+        if (executor instanceof ExecutorService) {
+            ((ExecutorService) executor).shutdownNow();
+        }
+    }
+
+    /**
+     * Subscribes to the changes of a delivery.
+     *
+     * @param deliveryId the id of the delivery
+     * @param sink receives the delivery as JSON
+     * @param onEnd run when the client is dropped because it took too long to take an event
+     * @return the subscription, to be cancelled when the client goes away
+     */
+    public EventStream<Delivery>.Subscription subscribe(long deliveryId, EventStream.Sink sink, Runnable onEnd) {
+        EventStream<Delivery>.Subscription subscription = stream.subscribe(sink, onEnd, x -> remove(deliveryId, x));
+        subscriptions.computeIfAbsent(deliveryId, x -> ConcurrentHashMap.newKeySet()).add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Sends the new state of a delivery to its subscribers. Must be called after the change was committed.
+     *
+     * @param delivery the delivery as saved
+     */
+    public void publish(Delivery delivery) {
+        Set<EventStream<Delivery>.Subscription> subscribers = subscriptions.get(delivery.getDeliveryId());
+        if (subscribers == null || subscribers.isEmpty()) {
+            return;
+        }
+        EventStream.Event event = stream.serialize(delivery);
+        if (event != null) {
+            subscribers.forEach(x -> x.offer(event));
+        }
+    }
+
+    private void remove(long deliveryId, EventStream<Delivery>.Subscription subscription) {
+        subscriptions.computeIfPresent(deliveryId, (id, subscribers) -> {
+            subscribers.remove(subscription);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+}
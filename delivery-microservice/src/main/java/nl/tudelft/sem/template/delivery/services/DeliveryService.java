@@ -1,32 +1,62 @@
 package nl.tudelft.sem.template.delivery.services;
 
+import delivery_microservice.model.CreateDeliveryRequest;
 import delivery_microservice.model.Delivery;
 import delivery_microservice.model.Location;
+import nl.tudelft.sem.template.delivery.dtos.DeliveryField;
+import nl.tudelft.sem.template.delivery.dtos.DeliverySummary;
 import nl.tudelft.sem.template.delivery.dtos.UpdateDeliveryDto;
+import nl.tudelft.sem.template.delivery.exceptions.DeliveryConflictException;
 import nl.tudelft.sem.template.delivery.exceptions.EntityNotFoundException;
-import orders_microservice.ApiException;
 
 import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public interface DeliveryService {
     boolean exists(long id);
 
     Optional<Delivery> getDelivery(long id);
 
+    List<Delivery> getDeliveries(Collection<Long> ids);
+
     Optional<Delivery> getDeliveryByOrderId(long id);
 
-    List<Delivery> getDeliveryByVendorId(long id);
+    List<Delivery> getDeliveryByVendorId(long id, long after, int limit);
+
+    List<Delivery> getDeliveryByCourierId(long id, long after, int limit);
+
+    Optional<DeliverySummary> getDeliverySummaryByOrderId(long id, Set<DeliveryField> fields);
+
+    List<DeliverySummary> getDeliverySummariesByVendorId(long id, long after, int limit, Set<DeliveryField> fields);
+
+    List<DeliverySummary> getDeliverySummariesByCourierId(long id, long after, int limit, Set<DeliveryField> fields);
+
+    void forEachDeliveryByVendorId(long id, Consumer<Delivery> consumer);
 
-    List<Delivery> getDeliveryByCourierId(long id);
+    void forEachDeliveryByCourierId(long id, Consumer<Delivery> consumer);
 
     Delivery createDelivery(long orderId, long vendorId, Location customerLocation, OffsetDateTime estimatedPickUpTime)
             throws users_microservice.ApiException, EntityNotFoundException;
 
-    Delivery updateDelivery(Long userId, UpdateDeliveryDto dto) throws EntityNotFoundException, ApiException;
+    List<Delivery> createDeliveries(List<CreateDeliveryRequest> requests)
+            throws users_microservice.ApiException, EntityNotFoundException;
+
+    Delivery updateDelivery(Long userId, UpdateDeliveryDto dto)
+            throws EntityNotFoundException, DeliveryConflictException;
 
     List<Long> getUnassigned();
 
+    Optional<Delivery> claimDelivery(long courierId);
+
+    List<Delivery> getActiveDeliveriesByCourierId(long courierId);
+
+    boolean recordActualPickupTime(long deliveryId, long courierId, OffsetDateTime time);
+
+    boolean recordActualDeliveryTime(long deliveryId, long courierId, OffsetDateTime time);
+
     List<Delivery> getAllDeliveredDeliveries();
 }
\ No newline at end of file
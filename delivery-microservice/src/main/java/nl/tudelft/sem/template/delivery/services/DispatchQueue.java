@@ -0,0 +1,98 @@
+package nl.tudelft.sem.template.delivery.services;
+
+import nl.tudelft.sem.template.delivery.database.DeliveryRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Ids of the deliveries without a courier, oldest first, so that listing and claiming unassigned deliveries does
+ * not query the database. Filled from the database at startup and kept up to date by the delivery service.
+ * The ids are kept in insertion order in one set, so removing a delivery that got a courier takes constant time and
+ * leaves nothing behind.
+ */
+@Service
+public class DispatchQueue {
+    private final DeliveryRepository deliveryRepository;
+
+    // guarded by itself
+    private final LinkedHashSet<Long> waiting = new LinkedHashSet<>();
+
+    public DispatchQueue(DeliveryRepository deliveryRepository) {
+        this.deliveryRepository = deliveryRepository;
+    }
+
+    /**
+     * Fills the queue with the unassigned deliveries in the database.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        deliveryRepository.findUnassignedDeliveryIds().forEach(this::offer);
+    }
+
+    /**
+     * Adds a delivery that has no courier.
+     *
+     * @param deliveryId the id of the delivery
+     */
+    public void offer(long deliveryId) {
+        synchronized (waiting) {
+            waiting.add(deliveryId);
+        }
+    }
+
+    /**
+     * Removes a delivery that got a courier some other way than through {@link #poll()}.
+     *
+     * @param deliveryId the id of the delivery
+     */
+    public void remove(long deliveryId) {
+        synchronized (waiting) {
+            waiting.remove(deliveryId);
+        }
+    }
+
+    /**
+     * Takes the oldest waiting delivery. Every id is handed out by at most one call.
+     *
+     * @return the id of the delivery, or null if no delivery is waiting
+     */
+    public Long poll() {
+        synchronized (waiting) {
+            Iterator<Long> oldest = waiting.iterator();
+            if (!oldest.hasNext()) {
+                return null;
+            }
+            Long deliveryId = oldest.next();
+            oldest.remove();
+            return deliveryId;
+        }
+    }
+
+    /**
+     * Lists the waiting deliveries, oldest first.
+     *
+     * @return the ids of the deliveries
+     */
+    public List<Long> snapshot() {
+        synchronized (waiting) {
+            return new ArrayList<>(waiting);
+        }
+    }
+
+    /**
+     * Counts the waiting deliveries.
+     *
+     * @return the number of deliveries
+     */
+    public int size() {
+        synchronized (waiting) {
+            return waiting.size();
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package nl.tudelft.sem.template.delivery.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Sends events to clients that subscribed to them, for the brokers that push over server-sent events. A client keeps
+ * at most one unsent event: a newer event replaces it, and events older than the last one sent are skipped, so a
+ * slow client gets fewer events but always the latest one. The events of one client are sent one at a time by the
+ * scheduler of the broker, at most one every minIntervalMs milliseconds. A send that takes longer than sendTimeoutMs
+ * milliseconds ends the subscription and interrupts the sending thread, so a client that stopped reading does not
+ * keep a thread of the broker from the other clients.
+ *
+ * @param <T> the values the events are made of
+ */
+public class EventStream<T> {
+    private final Serializer<T> serializer;
+    private final Scheduler scheduler;
+    private final LongSupplier clock;
+    private final long minIntervalMs;
+    private final long sendTimeoutMs;
+    private final ScheduledExecutorService watchdog;
+
+    private final Counter sentEvents;
+    private final Counter conflatedEvents;
+    private final Counter failedEvents;
+    private final Counter timedOutEvents;
+
+    /**
+     * Constructor.
+     *
+     * @param serializer turns a value into an event
+     * @param scheduler sends the events
+     * @param clock the current time in milliseconds
+     * @param minIntervalMs the minimum time between two events sent to one client, 0 for none
+     * @param sendTimeoutMs the longest time sending one event may take, 0 for no limit
+     * @param meterRegistry registers the event counters
+     * @param metricName name of the event counters, tagged with outcome sent, conflated, failed or timedOut
+     * @param description description of the event counters
+     */
+    EventStream(Serializer<T> serializer, Scheduler scheduler, LongSupplier clock, long minIntervalMs,
+                long sendTimeoutMs, MeterRegistry meterRegistry, String metricName, String description) {
+        this.serializer = serializer;
+        this.scheduler = scheduler;
+        this.clock = clock;
+        this.minIntervalMs = minIntervalMs;
+        this.sendTimeoutMs = sendTimeoutMs;
+        this.watchdog = sendTimeoutMs == 0 ? null : Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, metricName + "-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sentEvents = eventCounter(meterRegistry, metricName, description, "sent");
+        this.conflatedEvents = eventCounter(meterRegistry, metricName, description, "conflated");
+        this.failedEvents = eventCounter(meterRegistry, metricName, description, "failed");
+        this.timedOutEvents = eventCounter(meterRegistry, metricName, description, "timedOut");
+    }
+
+    private static Counter eventCounter(MeterRegistry meterRegistry, String name, String description,
+                                        String outcome) {
+        return Counter.builder(name)
+                .description(description)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Stops the sending threads.
+     */
+    void shutdown() {
+        scheduler.shutdown();
+        if (watchdog != null) {
+            watchdog.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates a subscription. The broker keeps track of it and offers it the events.
+     *
+     * @param sink receives the events
+     * @param onEnd run when the subscription is ended by the broker or because a send timed out, not when it is
+     *              cancelled; should close the connection of the client
+     * @param onCancel run when the subscription is cancelled, removes it from the broker
+     * @return the subscription
+     */
+    Subscription subscribe(Sink sink, Runnable onEnd, Consumer<Subscription> onCancel) {
+        return new Subscription(sink, onEnd, onCancel);
+    }
+
+    /**
+     * Serializes a value once, for all subscriptions it is offered to.
+     *
+     * @param value the value
+     * @return the event, null if the value could not be serialized
+     */
+    Event serialize(T value) {
+        try {
+            return serializer.serialize(value);
+        } catch (JsonProcessingException e) {
+            e.printStackTrace();
+            failedEvents.increment();
+            return null;
+        }
+    }
+
+    /**
+     * Receives the events of one subscription, one at a time.
+     */
+    @FunctionalInterface
+    public interface Sink {
+        void send(String json) throws IOException;
+    }
+
+    /**
+     * Turns a value into an event.
+     *
+     * @param <T> the type of the value
+     */
+    @FunctionalInterface
+    interface Serializer<T> {
+        Event serialize(T value) throws JsonProcessingException;
+    }
+
+    /**
+     * Runs the sending of events, now or after a delay.
+     */
+    interface Scheduler {
+        void schedule(Runnable task, long delayMs);
+
+        default void shutdown() {
+        }
+    }
+
+    /**
+     * A serialized value. Events are ordered by version or timestamp; an event without one is always sent.
+     */
+    static final class Event {
+        static final long UNORDERED = Long.MIN_VALUE;
+
+        private final long order;
+        private final String json;
+
+        Event(long order, String json) {
+            this.order = order;
+            this.json = json;
+        }
+
+        private static Event newer(Event current, Event offered) {
+            return current == null || offered.order > current.order ? offered : current;
+        }
+    }
+
+    /**
+     * One client listening to one stream of events.
+     */
+    public final class Subscription {
+        private final Sink sink;
+        private final Runnable onEnd;
+        private final Consumer<Subscription> onCancel;
+        private final AtomicReference<Event> pending = new AtomicReference<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean cancelled;
+        // 0, not Long.MIN_VALUE: nextSendAt - now must not overflow
+        private volatile long nextSendAt;
+        // only touched by the scheduled task
+        private long lastOrder = Long.MIN_VALUE;
+        // the thread sending an event, guarded by this
+        private Thread sender;
+
+        private Subscription(Sink sink, Runnable onEnd, Consumer<Subscription> onCancel) {
+            this.sink = sink;
+            this.onEnd = onEnd;
+            this.onCancel = onCancel;
+        }
+
+        /**
+         * Sends a value to this subscriber only, unless a newer one was already sent. Used for the state at the
+         * time of subscribing.
+         *
+         * @param value the value
+         */
+        public void offer(T value) {
+            Event event = serialize(value);
+            if (event != null) {
+                offer(event);
+            }
+        }
+
+        void offer(Event event) {
+            if (pending.getAndAccumulate(event, Event::newer) != null) {
+                conflatedEvents.increment();
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (!cancelled && scheduled.compareAndSet(false, true)) {
+                scheduler.schedule(this::send, minIntervalMs == 0 ? 0 : Math.max(0, nextSendAt - clock.getAsLong()));
+            }
+        }
+
+        private void send() {
+            try {
+                Event event = pending.getAndSet(null);
+                if (!cancelled && event != null && (event.order > lastOrder || event.order == Event.UNORDERED)) {
+                    lastOrder = event.order;
+                    sendBeforeDeadline(event.json);
+                    sentEvents.increment();
+                    if (minIntervalMs > 0) {
+                        nextSendAt = clock.getAsLong() + minIntervalMs;
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                if (!cancelled) {
+                    failedEvents.increment();
+                }
+                cancel();
+            } finally {
+                scheduled.set(false);
+            }
+            // an event offered while sending
+            if (pending.get() != null) {
+                schedule();
+            }
+        }
+
+        private void sendBeforeDeadline(String json) throws IOException {
+            if (watchdog == null) {
+                sink.send(json);
+                return;
+            }
+            Thread current = Thread.currentThread();
+            synchronized (this) {
+                sender = current;
+            }
+            ScheduledFuture<?> deadline = watchdog.schedule(() -> timeOut(current), sendTimeoutMs,
+                    TimeUnit.MILLISECONDS);
+            try {
+                sink.send(json);
+            } finally {
+                deadline.cancel(false);
+                boolean timedOut;
+                synchronized (this) {
+                    timedOut = sender == null;
+                    sender = null;
+                }
+                if (timedOut) {
+                    // the interrupt was meant for this send only, not for the next task of the thread
+                    Thread.interrupted();
+                }
+            }
+        }
+
+        private void timeOut(Thread slowSender) {
+            synchronized (this) {
+                if (sender != slowSender) {
+                    return;
+                }
+                sender = null;
+                cancelled = true;
+                slowSender.interrupt();
+            }
+            timedOutEvents.increment();
+            cancel();
+            onEnd.run();
+        }
+
+        /**
+         * Stops the events. Safe to call more than once.
+         */
+        public void cancel() {
+            cancelled = true;
+            pending.set(null);
+            onCancel.accept(this);
+        }
+
+        /**
+         * Stops the events and tells the client there are no more, for a broker that ends a subscription.
+         */
+        void end() {
+            if (!cancelled) {
+                cancel();
+                onEnd.run();
+            }
+        }
+    }
+}
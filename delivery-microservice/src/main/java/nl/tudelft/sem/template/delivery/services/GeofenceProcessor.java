@@ -0,0 +1,241 @@
+package nl.tudelft.sem.template.delivery.services;
+
+import delivery_microservice.model.Delivery;
+import delivery_microservice.model.Location;
+import delivery_microservice.model.Locations;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import nl.tudelft.sem.template.delivery.exceptions.LocationNotFoundException;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * Records the actual pickup and delivery times of deliveries from the positions their couriers report. A courier
+ * within geofence.radiusMeters of the vendor has picked the delivery up; after that, a courier within the radius of
+ * the customer has delivered it. Only the first arrival is recorded, and times that were already set are left alone.
+ *
+ * <p>The active deliveries of a courier, with their vendor and customer geocoded, are kept in memory and read again
+ * at most once every geofence.refreshMs, so a position is checked without touching the database. Reading the
+ * deliveries and recording the times happen on one background thread, never on the thread that reported the
+ * position.
+ */
+@Service
+public class GeofenceProcessor implements CourierPositionListener {
+    static final double EARTH_RADIUS_METERS = 6_371_009;
+
+    private final DeliveryService deliveryService;
+    private final GeocodingService geocodingService;
+    private final Executor executor;
+    private final LongSupplier clock;
+    private final double radiusMeters;
+    private final long refreshMs;
+    private final ConcurrentMap<Long, Fences> fencesByCourier = new ConcurrentHashMap<>();
+
+    private final Counter pickups;
+    private final Counter arrivals;
+    private final Counter refreshes;
+
+    /**
+     * Constructor.
+     *
+     * @param deliveryService reads the active deliveries and records the times
+     * @param geocodingService finds the coordinates of the vendors and customers
+     * @param environment reads the geofence.* settings
+     * @param meterRegistry registers the geofence counters
+     */
+    public GeofenceProcessor(DeliveryService deliveryService, GeocodingService geocodingService,
+                             Environment environment, MeterRegistry meterRegistry) {
+        this(deliveryService, geocodingService, Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "geofence");
+            thread.setDaemon(true);
+            return thread;
+        }), System::currentTimeMillis, environment.getProperty("geofence.radiusMeters", Double.class, 50.0),
+                environment.getProperty("geofence.refreshMs", Long.class, 30_000L), meterRegistry);
+    }
+
+    GeofenceProcessor(DeliveryService deliveryService, GeocodingService geocodingService, Executor executor,
+                      LongSupplier clock, double radiusMeters, long refreshMs, MeterRegistry meterRegistry) {
+        this.deliveryService = deliveryService;
+        this.geocodingService = geocodingService;
+        this.executor = executor;
+        this.clock = clock;
+        this.radiusMeters = radiusMeters;
+        this.refreshMs = refreshMs;
+        this.pickups = arrivalCounter(meterRegistry, "vendor");
+        this.arrivals = arrivalCounter(meterRegistry, "customer");
+        this.refreshes = Counter.builder("geofence.refreshes")
+                .description("Times the active deliveries of a courier were read from the database")
+                .register(meterRegistry);
+    }
+
+    private static Counter arrivalCounter(MeterRegistry meterRegistry, String stop) {
+        return Counter.builder("geofence.arrivals")
+                .description("Pickup (vendor) and delivery (customer) times recorded from courier positions")
+                .tag("stop", stop)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Stops the background thread when the application shuts down.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (executor instanceof ExecutorService) {
+            ((ExecutorService) executor).shutdownNow();
+        }
+    }
+
+    @Override
+    public void onPosition(long courierId, CourierPosition position) {
+        Fences fences = fencesByCourier.get(courierId);
+        if (fences == null) {
+            fences = fencesByCourier.computeIfAbsent(courierId, x -> new Fences());
+        }
+        if (clock.getAsLong() - fences.loadedAt >= refreshMs && fences.loading.compareAndSet(false, true)) {
+            Fences stale = fences;
+            executor.execute(() -> load(courierId, stale, position));
+            return;
+        }
+        check(courierId, fences.deliveries, position);
+    }
+
+    /**
+     * Forgets the deliveries of couriers that stopped reporting, they are read again when the courier reports.
+     */
+    @Scheduled(fixedDelayString = "${geofence.refreshMs:30000}")
+    public void evictIdle() {
+        long now = clock.getAsLong();
+        fencesByCourier.values().removeIf(x -> !x.loading.get() && now - x.loadedAt >= 2 * refreshMs);
+    }
+
+    int size() {
+        return fencesByCourier.size();
+    }
+
+    private void load(long courierId, Fences fences, CourierPosition position) {
+        try {
+            List<Fence> deliveries = new ArrayList<>();
+            for (Delivery delivery : deliveryService.getActiveDeliveriesByCourierId(courierId)) {
+                deliveries.add(fence(delivery));
+            }
+            fences.deliveries = deliveries;
+            refreshes.increment();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            // also after a failure, so a broken database is not asked again for every position
+            fences.loadedAt = clock.getAsLong();
+            fences.loading.set(false);
+        }
+        check(courierId, fences.deliveries, position);
+    }
+
+    private Fence fence(Delivery delivery) {
+        Locations locations = delivery.getLocations();
+        Fence fence = new Fence(delivery.getDeliveryId());
+        if (locations != null) {
+            fence.vendor = geocode(new Location()
+                    .country(locations.getVendorCountry())
+                    .city(locations.getVendorCity())
+                    .address(locations.getVendorAddress())
+                    .postalCode(locations.getVendorPostalCode()));
+            fence.customer = geocode(new Location()
+                    .country(locations.getCustomerCountry())
+                    .city(locations.getCustomerCity())
+                    .address(locations.getCustomerAddress())
+                    .postalCode(locations.getCustomerPostalCode()));
+        }
+        if (delivery.getTimes() != null && delivery.getTimes().getActualPickupTime() != null) {
+            fence.pickedUp.set(true);
+        }
+        return fence;
+    }
+
+    private Coordinate geocode(Location location) {
+        try {
+            return geocodingService.getCoordinatesFromLocation(location);
+        } catch (LocationNotFoundException e) {
+            return null;
+        }
+    }
+
+    private void check(long courierId, List<Fence> deliveries, CourierPosition position) {
+        for (Fence fence : deliveries) {
+            if (!fence.pickedUp.get()) {
+                if (isWithin(position, fence.vendor) && fence.pickedUp.compareAndSet(false, true)) {
+                    executor.execute(() -> record(fence, courierId, position, false));
+                }
+            } else if (!fence.delivered.get() && isWithin(position, fence.customer)
+                    && fence.delivered.compareAndSet(false, true)) {
+                executor.execute(() -> record(fence, courierId, position, true));
+            }
+        }
+    }
+
+    private void record(Fence fence, long courierId, CourierPosition position, boolean atCustomer) {
+        OffsetDateTime time = OffsetDateTime.ofInstant(Instant.ofEpochMilli(position.getTimestamp()), ZoneOffset.UTC);
+        try {
+            if (atCustomer) {
+                if (deliveryService.recordActualDeliveryTime(fence.deliveryId, courierId, time)) {
+                    arrivals.increment();
+                }
+            } else if (deliveryService.recordActualPickupTime(fence.deliveryId, courierId, time)) {
+                pickups.increment();
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            // try again on the next position inside the fence
+            (atCustomer ? fence.delivered : fence.pickedUp).set(false);
+        }
+    }
+
+    /**
+     * Checks whether a position is within the radius of a coordinate. Over the few hundred meters that matter here
+     * the earth is flat enough to use Pythagoras on the equirectangular projection.
+     */
+    private boolean isWithin(CourierPosition position, Coordinate coordinate) {
+        if (coordinate == null) {
+            return false;
+        }
+        double latitude = Math.toRadians(coordinate.getLatitude());
+        double x = Math.toRadians(position.getLongitude() - coordinate.getLongitude()) * Math.cos(latitude);
+        double y = Math.toRadians(position.getLatitude()) - latitude;
+        return EARTH_RADIUS_METERS * Math.sqrt(x * x + y * y) <= radiusMeters;
+    }
+
+    /**
+     * The active deliveries of one courier.
+     */
+    private static final class Fences {
+        private final AtomicBoolean loading = new AtomicBoolean();
+        private volatile long loadedAt = Long.MIN_VALUE / 2;
+        private volatile List<Fence> deliveries = List.of();
+    }
+
+    private static final class Fence {
+        private final long deliveryId;
+        private final AtomicBoolean pickedUp = new AtomicBoolean();
+        private final AtomicBoolean delivered = new AtomicBoolean();
+        private Coordinate vendor;
+        private Coordinate customer;
+
+        private Fence(long deliveryId) {
+            this.deliveryId = deliveryId;
+        }
+    }
+}
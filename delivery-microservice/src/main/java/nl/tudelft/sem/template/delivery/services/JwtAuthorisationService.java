@@ -0,0 +1,140 @@
+package nl.tudelft.sem.template.delivery.services;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import users_microservice.model.UsersGetUserTypeIdGet200Response.UserTypeEnum;
+
+import javax.servlet.http.HttpServletRequest;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Authorisation based on a signed token (HS256 with jwt.secret) that the caller sends as
+ * {@code Authorization: Bearer <token>}. The token carries the user id as subject and the user type in the
+ * {@value #ROLE_CLAIM} claim, so checks on the caller are answered without asking the users service.
+ * Checks on other ids, such as whether a courier id belongs to a courier, cannot be answered from the caller's
+ * token and go to the {@link DefaultAuthorisationService}.
+ * Enabled with {@code authorisation.mode=jwt}.
+ */
+@Service
+@Primary
+@ConditionalOnProperty(name = "authorisation.mode", havingValue = "jwt")
+public class JwtAuthorisationService implements AuthorisationService {
+    public static final String ROLE_CLAIM = "role";
+
+    private static final String ATTRIBUTE = JwtAuthorisationService.class.getName() + ".principal";
+    private static final String BEARER = "Bearer ";
+    private static final JwtPrincipal NO_PRINCIPAL = new JwtPrincipal(-1L, null);
+
+    private final byte[] secret;
+    private final DefaultAuthorisationService remoteAuthorisationService;
+
+    /**
+     * Constructor.
+     *
+     * @param environment reads the jwt.secret the tokens are signed with
+     * @param remoteAuthorisationService answers checks on ids other than the caller
+     */
+    public JwtAuthorisationService(Environment environment, DefaultAuthorisationService remoteAuthorisationService) {
+        this.secret = environment.getRequiredProperty("jwt.secret").getBytes(StandardCharsets.UTF_8);
+        this.remoteAuthorisationService = remoteAuthorisationService;
+    }
+
+    @Override
+    public boolean isCustomer(Long userId) {
+        return isUserType(userId, UserTypeEnum.CUSTOMER);
+    }
+
+    @Override
+    public boolean isVendor(Long userId) {
+        return isUserType(userId, UserTypeEnum.VENDOR);
+    }
+
+    @Override
+    public boolean isCourier(Long userId) {
+        return isUserType(userId, UserTypeEnum.COURIER);
+    }
+
+    @Override
+    public boolean isAdmin(Long userId) {
+        return isUserType(userId, UserTypeEnum.ADMIN);
+    }
+
+    @Override
+    public boolean isUser(Long userId) {
+        return isValid(userId) && getUserType(userId) != null;
+    }
+
+    @Override
+    public boolean isValid(Long userId) {
+        return userId != null && userId >= 0;
+    }
+
+    /**
+     * Gets the caller of a request from its bearer token. The token is verified once per request, the result
+     * is kept as a request attribute.
+     *
+     * @param request the request
+     * @return the verified caller, or null if the token is missing, malformed, expired or wrongly signed
+     */
+    public JwtPrincipal getPrincipal(HttpServletRequest request) {
+        var principal = (JwtPrincipal) request.getAttribute(ATTRIBUTE);
+        if (principal == null) {
+            principal = parse(request.getHeader(HttpHeaders.AUTHORIZATION));
+            request.setAttribute(ATTRIBUTE, principal);
+        }
+        return principal == NO_PRINCIPAL ? null : principal;
+    }
+
+    private boolean isUserType(Long userId, UserTypeEnum userType) {
+        if (!isValid(userId)) {
+            return false;
+        }
+        var type = getUserType(userId);
+        return (type == userType || type == UserTypeEnum.ADMIN);
+    }
+
+    private UserTypeEnum getUserType(Long userId) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes instanceof ServletRequestAttributes) {
+            JwtPrincipal principal = getPrincipal(((ServletRequestAttributes) attributes).getRequest());
+            if (principal != null && principal.getUserId() == userId) {
+                return principal.getUserType();
+            }
+        }
+        return remoteAuthorisationService.getUserType(userId);
+    }
+
+    private JwtPrincipal parse(String authorization) {
+        if (authorization == null || !authorization.startsWith(BEARER)) {
+            return NO_PRINCIPAL;
+        }
+        try {
+            Claims claims = Jwts.parser()
+                    .setSigningKey(secret)
+                    .parseClaimsJws(authorization.substring(BEARER.length()))
+                    .getBody();
+            return new JwtPrincipal(Long.parseLong(claims.getSubject()),
+                    UserTypeEnum.fromValue(claims.get(ROLE_CLAIM, String.class)));
+        } catch (JwtException | IllegalArgumentException e) {
+            return NO_PRINCIPAL;
+        }
+    }
+
+    @RequiredArgsConstructor
+    @Getter
+    public static class JwtPrincipal {
+        private final long userId;
+        private final UserTypeEnum userType;
+    }
+}
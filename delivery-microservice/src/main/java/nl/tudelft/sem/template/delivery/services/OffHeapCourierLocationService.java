@@ -0,0 +1,222 @@
+package nl.tudelft.sem.template.delivery.services;
+
+import delivery_microservice.model.Location;
+import delivery_microservice.model.PrivateCourier;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import nl.tudelft.sem.template.delivery.exceptions.CourierLocationStoreFullException;
+import nl.tudelft.sem.template.delivery.exceptions.EntityNotFoundException;
+import nl.tudelft.sem.template.delivery.external.FakeCourierLocationService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the last known position of every courier outside the Java heap, in one direct buffer laid out as an
+ * open-addressing hash table with linear probing. A slot is five longs: the courier id plus one (zero marks a free
+ * slot), a sequence number, the latitude and longitude as double bits, and the timestamp. That is 40 bytes per slot
+ * and nothing for the garbage collector to trace, where a position in a map on the heap takes a map node, a boxed
+ * key, an atomic reference and a position object.
+ *
+ * <p>Reading and writing a position allocates nothing and takes no lock. Writers of one slot take turns through its
+ * sequence number, which is odd while a writer is busy; readers retry when the sequence number changed while they
+ * read (a seqlock). Slots are never freed, so the table holds courier.locations.capacity couriers and refuses new
+ * couriers when it is three quarters full, to keep the probe sequences short. A refused courier is counted as
+ * courier.locations.rejected and its report answered with Service Unavailable. The addresses of couriers still come
+ * from the GPS service. Enabled with {@code courier.locations.store=offheap}.
+ */
+@Service
+@Primary
+@ConditionalOnProperty(name = "courier.locations.store", havingValue = "offheap")
+public class OffHeapCourierLocationService implements CourierLocationService {
+    static final int SLOT_BYTES = 5 * Long.BYTES;
+    // the largest power of two whose table still fits in one buffer
+    static final int MAX_CAPACITY = 1 << 25;
+    private static final int KEY = 0;
+    private static final int SEQUENCE = Long.BYTES;
+    private static final int LATITUDE = 2 * Long.BYTES;
+    private static final int LONGITUDE = 3 * Long.BYTES;
+    private static final int TIMESTAMP = 4 * Long.BYTES;
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class,
+            ByteOrder.nativeOrder());
+
+    private final FakeCourierLocationService addressService;
+    private final ByteBuffer table;
+    private final int mask;
+    private final int maxCouriers;
+    private final Counter rejectedCouriers;
+    private final AtomicBoolean reportedFull = new AtomicBoolean();
+    // only used to refuse new couriers, so an occasional lost increment under contention is harmless
+    private volatile int couriers;
+
+    /**
+     * Constructor.
+     *
+     * @param addressService looks up the addresses of couriers
+     * @param environment reads the courier.locations.capacity setting
+     * @param meterRegistry registers the courier.locations.rejected counter
+     */
+    public OffHeapCourierLocationService(FakeCourierLocationService addressService, Environment environment,
+                                         MeterRegistry meterRegistry) {
+        this(addressService, environment.getProperty("courier.locations.capacity", Integer.class, 131_072),
+                meterRegistry);
+    }
+
+    OffHeapCourierLocationService(FakeCourierLocationService addressService, int capacity,
+                                  MeterRegistry meterRegistry) {
+        if (capacity < 2 || capacity > MAX_CAPACITY || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("courier.locations.capacity must be a power of two of at most 2^25");
+        }
+        this.addressService = addressService;
+        // atomic access to a long needs an address that is a multiple of eight
+        this.table = ByteBuffer.allocateDirect(capacity * SLOT_BYTES + Long.BYTES).alignedSlice(Long.BYTES);
+        this.mask = capacity - 1;
+        this.maxCouriers = capacity / 4 * 3;
+        this.rejectedCouriers = Counter.builder("courier.locations.rejected")
+                .description("Position reports refused because the courier location store is full")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Location getLocationOfCourier(long courierId) throws EntityNotFoundException {
+        return addressService.getLocationOfCourier(courierId);
+    }
+
+    @Override
+    public boolean updatePositionOfCourier(long courierId, CourierPosition position) {
+        return updatePositionOfCourier(courierId, position.getLatitude(), position.getLongitude(),
+                position.getTimestamp());
+    }
+
+    @Override
+    public boolean updatePositionOfCourier(long courierId, double latitude, double longitude, long timestamp) {
+        if (courierId < 0) {
+            throw new IllegalArgumentException("Courier ids are not negative");
+        }
+        int slot = claimSlot(courierId);
+        while (true) {
+            long sequence = (long) LONGS.getVolatile(table, slot + SEQUENCE);
+            if ((sequence & 1) == 1) {
+                Thread.onSpinWait();
+                continue;
+            }
+            if (!LONGS.compareAndSet(table, slot + SEQUENCE, sequence, sequence + 1)) {
+                continue;
+            }
+            // sequence 0: the slot never held a position
+            boolean newer = sequence == 0 || timestamp > (long) LONGS.get(table, slot + TIMESTAMP);
+            if (newer) {
+                LONGS.set(table, slot + LATITUDE, Double.doubleToRawLongBits(latitude));
+                LONGS.set(table, slot + LONGITUDE, Double.doubleToRawLongBits(longitude));
+                LONGS.set(table, slot + TIMESTAMP, timestamp);
+            }
+            LONGS.setRelease(table, slot + SEQUENCE, sequence + 2);
+            return newer;
+        }
+    }
+
+    @Override
+    public CourierPosition getPositionOfCourier(long courierId) throws EntityNotFoundException {
+        CourierPosition[] position = new CourierPosition[1];
+        if (!readPositionOfCourier(courierId, (latitude, longitude, timestamp) ->
+                position[0] = new CourierPosition(latitude, longitude, timestamp))) {
+            throw new EntityNotFoundException(PrivateCourier.class, courierId);
+        }
+        return position[0];
+    }
+
+    @Override
+    public boolean readPositionOfCourier(long courierId, PositionReader reader) {
+        int slot = courierId < 0 ? -1 : findSlot(courierId);
+        if (slot < 0) {
+            return false;
+        }
+        while (true) {
+            long sequence = (long) LONGS.getAcquire(table, slot + SEQUENCE);
+            if (sequence == 0) {
+                return false;
+            }
+            if ((sequence & 1) == 1) {
+                Thread.onSpinWait();
+                continue;
+            }
+            long latitude = (long) LONGS.get(table, slot + LATITUDE);
+            long longitude = (long) LONGS.get(table, slot + LONGITUDE);
+            long timestamp = (long) LONGS.get(table, slot + TIMESTAMP);
+            VarHandle.loadLoadFence();
+            if ((long) LONGS.getVolatile(table, slot + SEQUENCE) == sequence) {
+                reader.read(Double.longBitsToDouble(latitude), Double.longBitsToDouble(longitude), timestamp);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Number of couriers with a slot, for tests and the benchmark.
+     *
+     * @return the number
+     */
+    int size() {
+        return couriers;
+    }
+
+    private int findSlot(long courierId) {
+        long key = courierId + 1;
+        for (int index = hash(courierId), probes = 0; probes <= mask; index = (index + 1) & mask, probes++) {
+            long current = (long) LONGS.getVolatile(table, index * SLOT_BYTES + KEY);
+            if (current == key) {
+                return index * SLOT_BYTES;
+            }
+            if (current == 0) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private int claimSlot(long courierId) {
+        long key = courierId + 1;
+        for (int index = hash(courierId), probes = 0; probes <= mask; index = (index + 1) & mask, probes++) {
+            int slot = index * SLOT_BYTES;
+            long current = (long) LONGS.getVolatile(table, slot + KEY);
+            if (current == key) {
+                return slot;
+            }
+            if (current == 0) {
+                if (couriers >= maxCouriers) {
+                    throw full(courierId);
+                }
+                if (LONGS.compareAndSet(table, slot + KEY, 0L, key)) {
+                    couriers++;
+                    return slot;
+                }
+                if ((long) LONGS.getVolatile(table, slot + KEY) == key) {
+                    return slot;
+                }
+            }
+        }
+        throw full(courierId);
+    }
+
+    private CourierLocationStoreFullException full(long courierId) {
+        rejectedCouriers.increment();
+        CourierLocationStoreFullException e = new CourierLocationStoreFullException(courierId, mask + 1);
+        // once, the counter tells how often it happens
+        if (reportedFull.compareAndSet(false, true)) {
+            e.printStackTrace();
+        }
+        return e;
+    }
+
+    private int hash(long courierId) {
+        long hash = courierId * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,165 @@
+package nl.tudelft.sem.template.delivery.services;
+
+import delivery_microservice.model.Delivery;
+import delivery_microservice.model.OrderStatusChange;
+import delivery_microservice.model.UpdateDeliveryRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import nl.tudelft.sem.template.delivery.database.DeliveryRepository;
+import nl.tudelft.sem.template.delivery.database.OrderStatusChangeRepository;
+import orders_microservice.ApiException;
+import orders_microservice.api.OrderApi;
+import orders_microservice.model.Order;
+import org.springframework.core.env.Environment;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outbox of order status changes. A status change is stored in the same transaction as the delivery update that
+ * caused it, so the update does not wait for the orders service and no change is lost if that service is down.
+ * Every orders.outbox.dispatchMs milliseconds the oldest due changes, at most orders.outbox.batchSize, are sent.
+ * Only the newest change of an order is sent, the older ones are superseded. A change that fails is retried after
+ * orders.outbox.retryBaseMs milliseconds, doubled on every failure up to orders.outbox.retryMaxMs. After
+ * orders.outbox.maxAttempts failures a change is given up: it stays in the table without a next attempt, for
+ * inspection, until a newer change of the order is sent.
+ */
+@Service
+public class OrderStatusOutbox {
+    private final DeliveryRepository deliveryRepository;
+    private final OrderStatusChangeRepository orderStatusChangeRepository;
+    private final OrderApi orderApi;
+    private final int batchSize;
+    private final long retryBaseMs;
+    private final long retryMaxMs;
+    private final int maxAttempts;
+
+    private final Counter sentChanges;
+    private final Counter coalescedChanges;
+    private final Counter failedChanges;
+    private final Counter abandonedChanges;
+
+    /**
+     * Constructor.
+     *
+     * @param deliveryRepository the deliveries
+     * @param orderStatusChangeRepository the changes waiting to be sent
+     * @param orderApi the orders service
+     * @param environment reads the orders.outbox.* settings
+     * @param meterRegistry registers the orders.outbox.changes counters
+     */
+    public OrderStatusOutbox(DeliveryRepository deliveryRepository,
+                             OrderStatusChangeRepository orderStatusChangeRepository, OrderApi orderApi,
+                             Environment environment, MeterRegistry meterRegistry) {
+        this.deliveryRepository = deliveryRepository;
+        this.orderStatusChangeRepository = orderStatusChangeRepository;
+        this.orderApi = orderApi;
+        this.batchSize = environment.getProperty("orders.outbox.batchSize", Integer.class, 100);
+        this.retryBaseMs = environment.getProperty("orders.outbox.retryBaseMs", Long.class, 1_000L);
+        this.retryMaxMs = environment.getProperty("orders.outbox.retryMaxMs", Long.class, 300_000L);
+        this.maxAttempts = environment.getProperty("orders.outbox.maxAttempts", Integer.class, 20);
+        this.sentChanges = changeCounter(meterRegistry, "sent");
+        this.coalescedChanges = changeCounter(meterRegistry, "coalesced");
+        this.failedChanges = changeCounter(meterRegistry, "failed");
+        this.abandonedChanges = changeCounter(meterRegistry, "abandoned");
+    }
+
+    private static Counter changeCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("orders.outbox.changes")
+                .description("Order status changes sent to the orders service, superseded by a newer one, failed "
+                        + "or given up after too many failures")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Saves a delivery and, if the status is set, the status change of its order in one transaction.
+     *
+     * @param delivery the delivery
+     * @param userId the user changing the status
+     * @param status the new status of the order, null to leave it
+     * @return the saved delivery
+     */
+    @Transactional
+    public Delivery save(Delivery delivery, Long userId, UpdateDeliveryRequest.StatusEnum status) {
+        Delivery saved = deliveryRepository.save(delivery);
+        if (status != null) {
+            orderStatusChangeRepository.save(new OrderStatusChange()
+                    .orderId(saved.getOrderId())
+                    .userId(userId)
+                    .status(status.name())
+                    .attempts(0)
+                    .nextAttemptAt(OffsetDateTime.now()));
+        }
+        return saved;
+    }
+
+    /**
+     * Sends the due status changes to the orders service, the newest per order.
+     */
+    @Scheduled(fixedDelayString = "${orders.outbox.dispatchMs:500}")
+    public void dispatch() {
+        OffsetDateTime now = OffsetDateTime.now();
+        Map<Long, OrderStatusChange> newest = new LinkedHashMap<>();
+        for (OrderStatusChange change : orderStatusChangeRepository.findDue(now, PageRequest.of(0, batchSize))) {
+            if (newest.put(change.getOrderId(), change) != null) {
+                coalescedChanges.increment();
+            }
+        }
+
+        List<OrderStatusChange> failed = new ArrayList<>();
+        for (OrderStatusChange change : newest.values()) {
+            try {
+                send(change);
+                // also removes older changes of the order that are waiting for a retry
+                orderStatusChangeRepository.deleteSentChanges(change.getOrderId(), change.getId());
+                sentChanges.increment();
+            } catch (ApiException | RuntimeException e) {
+                // a change that cannot be sent must not hold up the changes after it
+                failed.add(change);
+                failedChanges.increment();
+                recordFailure(change, now, e);
+            }
+        }
+        orderStatusChangeRepository.saveAll(failed);
+    }
+
+    private void recordFailure(OrderStatusChange change, OffsetDateTime now, Exception cause) {
+        change.setAttempts(change.getAttempts() + 1);
+        if (change.getAttempts() >= maxAttempts) {
+            cause.printStackTrace();
+            change.setNextAttemptAt(null);
+            abandonedChanges.increment();
+        } else {
+            change.setNextAttemptAt(now.plusNanos(retryDelayMs(change.getAttempts()) * 1_000_000L));
+        }
+        try {
+            orderStatusChangeRepository.deleteSentChanges(change.getOrderId(), change.getId() - 1);
+        } catch (RuntimeException e) {
+            // the older changes are removed once this one is sent
+            e.printStackTrace();
+        }
+    }
+
+    private void send(OrderStatusChange change) throws ApiException {
+        List<Order> orders = orderApi.orderOrderIDGet(change.getOrderId());
+        if (orders.isEmpty()) {
+            // the order is gone, there is nothing left to update
+            return;
+        }
+        Order order = orders.get(0);
+        order.setStatus(Enum.valueOf(Order.StatusEnum.class, change.getStatus()));
+        orderApi.orderPut(change.getUserId(), order);
+    }
+
+    long retryDelayMs(int attempts) {
+        return Math.min(retryBaseMs << Math.min(attempts - 1, 30), retryMaxMs);
+    }
+}
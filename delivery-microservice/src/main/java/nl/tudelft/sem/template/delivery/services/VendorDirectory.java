@@ -0,0 +1,84 @@
+package nl.tudelft.sem.template.delivery.services;
+
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import users_microservice.ApiException;
+import users_microservice.api.VendorApi;
+import users_microservice.model.Vendor;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * In-memory copy of the verified vendors of the users service, indexed by vendor id.
+ * The copy is replaced in the background every vendors.directory.refreshMs milliseconds. A vendor that is not in
+ * the copy triggers a refresh, at most once every vendors.directory.minMissRefreshMs milliseconds, so vendors
+ * verified since the last refresh are found while lookups of unknown ids do not reach the users service each time.
+ */
+@Service
+public class VendorDirectory {
+    private final VendorApi vendorApi;
+    private final long minMissRefreshMs;
+
+    private volatile Map<Long, Vendor> vendors = Map.of();
+    private volatile long lastRefresh;
+
+    /**
+     * Constructor.
+     *
+     * @param vendorApi the users service
+     * @param environment reads the vendors.directory.* settings
+     */
+    public VendorDirectory(VendorApi vendorApi, Environment environment) {
+        this.vendorApi = vendorApi;
+        this.minMissRefreshMs = environment.getProperty("vendors.directory.minMissRefreshMs", Long.class, 5_000L);
+    }
+
+    /**
+     * Gets a verified vendor, refreshing the directory first if the vendor is not in it.
+     *
+     * @param vendorId the id of the vendor
+     * @return the vendor, empty if it is not a verified vendor
+     * @throws ApiException if the directory had to be refreshed and the users service failed
+     */
+    public Optional<Vendor> getVendor(long vendorId) throws ApiException {
+        Vendor vendor = vendors.get(vendorId);
+        if (vendor == null) {
+            vendor = refreshOnMiss(vendorId);
+        }
+        return Optional.ofNullable(vendor);
+    }
+
+    /**
+     * Replaces the directory with the current list of verified vendors. A failed refresh keeps the old directory.
+     */
+    @Scheduled(fixedDelayString = "${vendors.directory.refreshMs:60000}")
+    public void scheduledRefresh() {
+        try {
+            refresh();
+        } catch (ApiException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private synchronized Vendor refreshOnMiss(long vendorId) throws ApiException {
+        // another thread may have refreshed while this one waited for the lock
+        Vendor vendor = vendors.get(vendorId);
+        if (vendor == null && System.currentTimeMillis() - lastRefresh >= minMissRefreshMs) {
+            refresh();
+            vendor = vendors.get(vendorId);
+        }
+        return vendor;
+    }
+
+    private synchronized void refresh() throws ApiException {
+        Map<Long, Vendor> refreshed = new HashMap<>();
+        for (Vendor vendor : vendorApi.vendorsVerifiedGet()) {
+            refreshed.put(vendor.getId(), vendor);
+        }
+        vendors = refreshed;
+        lastRefresh = System.currentTimeMillis();
+    }
+}
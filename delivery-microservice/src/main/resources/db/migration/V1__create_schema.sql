@@ -0,0 +1,72 @@
+-- The schema of the entities in spec/openapi.yaml as Hibernate created it before migrations were introduced.
+-- Column names follow the Spring naming strategy: camelCase properties become snake_case columns and embedded
+-- Locations and Times add their columns to deliveries.
+
+CREATE SEQUENCE delivery_ids START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE deliveries (
+    delivery_id BIGINT NOT NULL,
+    order_id BIGINT,
+    vendor_id BIGINT,
+    courier_id BIGINT,
+    rating INTEGER,
+    vendor_country VARCHAR(255),
+    vendor_city VARCHAR(255),
+    vendor_address VARCHAR(255),
+    vendor_postal_code VARCHAR(255),
+    customer_country VARCHAR(255),
+    customer_city VARCHAR(255),
+    customer_address VARCHAR(255),
+    customer_postal_code VARCHAR(255),
+    estimated_pickup_time TIMESTAMP,
+    estimated_delivery_time TIMESTAMP,
+    actual_pickup_time TIMESTAMP,
+    actual_delivery_time TIMESTAMP,
+    delivered BOOLEAN,
+    version BIGINT,
+    PRIMARY KEY (delivery_id)
+);
+
+CREATE INDEX idx_deliveries_vendor_id ON deliveries (vendor_id, delivery_id);
+CREATE INDEX idx_deliveries_courier_id ON deliveries (courier_id, delivery_id);
+
+CREATE TABLE delays (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    description VARCHAR(255),
+    minutes_lost INTEGER,
+    requires_customer_service BOOLEAN,
+    PRIMARY KEY (id)
+);
+
+-- Times.delays, a one-to-many without a mapped-by side
+CREATE TABLE deliveries_delays (
+    delivery_delivery_id BIGINT NOT NULL,
+    delays_id BIGINT NOT NULL,
+    CONSTRAINT uk_deliveries_delays_delays_id UNIQUE (delays_id),
+    CONSTRAINT fk_deliveries_delays_delivery FOREIGN KEY (delivery_delivery_id) REFERENCES deliveries (delivery_id),
+    CONSTRAINT fk_deliveries_delays_delay FOREIGN KEY (delays_id) REFERENCES delays (id)
+);
+
+CREATE TABLE couriers (
+    courier_id BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    vendor_id BIGINT,
+    PRIMARY KEY (courier_id)
+);
+
+CREATE TABLE radii (
+    vendor_id BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    radius INTEGER,
+    PRIMARY KEY (vendor_id)
+);
+
+CREATE TABLE order_status_outbox (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    order_id BIGINT,
+    user_id BIGINT,
+    status VARCHAR(255),
+    attempts INTEGER,
+    next_attempt_at TIMESTAMP,
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_order_status_outbox_next_attempt ON order_status_outbox (next_attempt_at, id);
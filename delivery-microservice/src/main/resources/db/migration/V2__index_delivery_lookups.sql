@@ -0,0 +1,5 @@
+-- Lookup of the delivery of an order
+CREATE INDEX idx_deliveries_order_id ON deliveries (order_id);
+
+-- Delivered deliveries for the analytics, and the old ones among them for the archival job
+CREATE INDEX idx_deliveries_delivered ON deliveries (delivered, actual_delivery_time);
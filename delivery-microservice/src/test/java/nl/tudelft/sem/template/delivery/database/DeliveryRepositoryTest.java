@@ -0,0 +1,247 @@
+package nl.tudelft.sem.template.delivery.database;
+
+import delivery_microservice.model.Delay;
+import delivery_microservice.model.Delivery;
+import delivery_microservice.model.Times;
+import nl.tudelft.sem.template.delivery.dtos.DeliveryField;
+import nl.tudelft.sem.template.delivery.dtos.DeliverySummary;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that reading deliveries together with their delays takes the same number of SQL statements no matter how
+ * many deliveries there are, that new deliveries are inserted in JDBC batches, and that summaries read only the
+ * requested columns.
+ */
+@DataJpaTest(properties = {
+    "spring.jpa.properties.hibernate.generate_statistics=true",
+    "spring.jpa.properties.hibernate.jdbc.batch_size=50"
+})
+class DeliveryRepositoryTest {
+    private static final int DELAYS_PER_DELIVERY = 2;
+
+    @Autowired
+    private DeliveryRepository deliveryRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    private Statistics statistics;
+    private long nextOrderId;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+    }
+
+    private void seed(int count) {
+        for (int i = 0; i < count; i++) {
+            List<Delay> delays = new ArrayList<>();
+            for (int j = 0; j < DELAYS_PER_DELIVERY; j++) {
+                delays.add(entityManager.persist(new Delay().description("delay " + j)));
+            }
+            entityManager.persist(new Delivery()
+                    .orderId(nextOrderId++)
+                    .vendorId(1L)
+                    .courierId(2L)
+                    .delivered(true)
+                    .times(new Times().delays(delays)));
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    /**
+     * Runs a read, touches the delays of every delivery it returned and counts the statements that took.
+     */
+    private long statements(Supplier<List<Delivery>> read, int expectedDeliveries) {
+        entityManager.clear();
+        statistics.clear();
+
+        List<Delivery> deliveries = read.get();
+        int delays = deliveries.stream().mapToInt(x -> x.getTimes().getDelays().size()).sum();
+
+        assertEquals(expectedDeliveries, deliveries.size());
+        assertEquals(expectedDeliveries * DELAYS_PER_DELIVERY, delays);
+        return statistics.getPrepareStatementCount();
+    }
+
+    private void assertConstant(Supplier<List<Delivery>> read) {
+        seed(3);
+        long few = statements(read, 3);
+        seed(27);
+        long many = statements(read, 30);
+
+        assertEquals(few, many);
+    }
+
+    private static List<Delivery> collect(Stream<Delivery> deliveries) {
+        try (deliveries) {
+            return deliveries.collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    void vendorPageStatementsConstant() {
+        assertConstant(() -> deliveryRepository.findWithDelaysByDeliveryIdIn(
+                deliveryRepository.findDeliveryIdsByVendorId(1L, -1L, PageRequest.of(0, 100))));
+    }
+
+    @Test
+    void courierPageStatementsConstant() {
+        assertConstant(() -> deliveryRepository.findWithDelaysByDeliveryIdIn(
+                deliveryRepository.findDeliveryIdsByCourierId(2L, -1L, PageRequest.of(0, 100))));
+    }
+
+    @Test
+    void vendorStreamStatementsConstant() {
+        assertConstant(() -> collect(deliveryRepository.streamDeliveriesByVendorId(1L)));
+    }
+
+    @Test
+    void courierStreamStatementsConstant() {
+        assertConstant(() -> collect(deliveryRepository.streamDeliveriesByCourierId(2L)));
+    }
+
+    @Test
+    void deliveredStatementsConstant() {
+        assertConstant(() -> deliveryRepository.findDeliveredDeliveries());
+    }
+
+    @Test
+    void deliveredStreamStatementsConstant() {
+        assertConstant(() -> collect(deliveryRepository.streamDeliveredDeliveries()));
+    }
+
+    @Test
+    void insertsAreBatched() {
+        final int count = 120;
+        List<Delivery> deliveries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            deliveries.add(new Delivery().orderId(nextOrderId++).vendorId(1L).delivered(false));
+        }
+        statistics.clear();
+
+        deliveryRepository.saveAll(deliveries);
+        entityManager.flush();
+
+        // a few sequence calls for the id pools and one insert per batch of 50, instead of one insert per delivery
+        assertTrue(statistics.getPrepareStatementCount() < count / 10,
+                "statements: " + statistics.getPrepareStatementCount());
+        assertEquals(count, deliveryRepository.count());
+    }
+
+    @Test
+    void summariesSelectOnlyRequestedFields() {
+        seed(3);
+        statistics.clear();
+
+        List<DeliverySummary> summaries = deliveryRepository.findSummariesByVendorId(1L, -1L, 2,
+                EnumSet.of(DeliveryField.DELIVERY_ID, DeliveryField.COURIER_ID, DeliveryField.DELIVERED));
+
+        assertEquals(2, summaries.size());
+        assertTrue(summaries.get(0).getDeliveryId() < summaries.get(1).getDeliveryId());
+        assertEquals(2L, summaries.get(0).getCourierId());
+        assertEquals(true, summaries.get(0).getDelivered());
+        assertNull(summaries.get(0).getOrderId());
+        assertNull(summaries.get(0).getVendorId());
+        // no entities and so no delays are loaded
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+    }
+
+    @Test
+    void summaryByOrderId() {
+        seed(2);
+
+        List<DeliverySummary> summaries = deliveryRepository.findSummariesByOrderId(nextOrderId - 1,
+                EnumSet.of(DeliveryField.DELIVERY_ID, DeliveryField.ORDER_ID));
+
+        assertEquals(1, summaries.size());
+        assertEquals(nextOrderId - 1, summaries.get(0).getOrderId());
+        assertNull(summaries.get(0).getCourierId());
+    }
+
+    @Test
+    void archivableAreOldDeliveredOnes() {
+        OffsetDateTime now = OffsetDateTime.now();
+        long old = entityManager.persist(new Delivery().orderId(nextOrderId++).delivered(true)
+                .times(new Times().actualDeliveryTime(now.minusDays(40)))).getDeliveryId();
+        entityManager.persist(new Delivery().orderId(nextOrderId++).delivered(true)
+                .times(new Times().actualDeliveryTime(now.minusDays(1))));
+        entityManager.persist(new Delivery().orderId(nextOrderId++).delivered(false)
+                .times(new Times().actualDeliveryTime(now.minusDays(40))));
+        entityManager.persist(new Delivery().orderId(nextOrderId++).delivered(true));
+        entityManager.flush();
+
+        assertEquals(List.of(old), deliveryRepository.findArchivableDeliveryIds(now.minusDays(30),
+                PageRequest.of(0, 10)));
+    }
+
+    @Test
+    void activeDeliveriesAreTheUndeliveredOnesOfTheCourier() {
+        OffsetDateTime now = OffsetDateTime.now();
+        long assigned = entityManager.persist(new Delivery().orderId(nextOrderId++).courierId(7L).delivered(false)
+                .times(new Times())).getDeliveryId();
+        long pickedUp = entityManager.persist(new Delivery().orderId(nextOrderId++).courierId(7L)
+                .times(new Times().actualPickupTime(now))).getDeliveryId();
+        entityManager.persist(new Delivery().orderId(nextOrderId++).courierId(7L).delivered(true));
+        entityManager.persist(new Delivery().orderId(nextOrderId++).courierId(7L).delivered(false)
+                .times(new Times().actualDeliveryTime(now)));
+        entityManager.persist(new Delivery().orderId(nextOrderId++).courierId(8L).delivered(false));
+        entityManager.flush();
+
+        assertEquals(List.of(assigned, pickedUp), deliveryRepository.findActiveDeliveriesByCourierId(7L).stream()
+                .map(Delivery::getDeliveryId).collect(Collectors.toList()));
+    }
+
+    @Test
+    void arrivalTimesAreOnlySetOnce() {
+        OffsetDateTime first = OffsetDateTime.parse("2023-11-30T14:41:26Z");
+        Delivery delivery = entityManager.persist(new Delivery().orderId(nextOrderId++).courierId(7L)
+                .delivered(false).times(new Times()));
+        long id = delivery.getDeliveryId();
+        long version = delivery.getVersion();
+        entityManager.flush();
+
+        assertEquals(0, deliveryRepository.setActualPickupTimeIfUnset(id, 8L, first));
+        assertEquals(1, deliveryRepository.setActualPickupTimeIfUnset(id, 7L, first));
+        assertEquals(0, deliveryRepository.setActualPickupTimeIfUnset(id, 7L, first.plusMinutes(1)));
+        assertEquals(1, deliveryRepository.setActualDeliveryTimeIfUnset(id, 7L, first.plusMinutes(20)));
+        assertEquals(0, deliveryRepository.setActualDeliveryTimeIfUnset(id, 7L, first.plusMinutes(21)));
+
+        Delivery saved = deliveryRepository.findById(id).orElseThrow();
+        assertTrue(first.isEqual(saved.getTimes().getActualPickupTime()));
+        assertTrue(first.plusMinutes(20).isEqual(saved.getTimes().getActualDeliveryTime()));
+        assertEquals(version + 2, saved.getVersion());
+    }
+
+    @Test
+    void arrivalTimesAreNotSetOnDeliveredDeliveries() {
+        long id = entityManager.persist(new Delivery().orderId(nextOrderId++).courierId(7L).delivered(true)
+                .times(new Times())).getDeliveryId();
+        entityManager.flush();
+
+        assertEquals(0, deliveryRepository.setActualPickupTimeIfUnset(id, 7L, OffsetDateTime.now()));
+        assertEquals(0, deliveryRepository.setActualDeliveryTimeIfUnset(id, 7L, OffsetDateTime.now()));
+    }
+}
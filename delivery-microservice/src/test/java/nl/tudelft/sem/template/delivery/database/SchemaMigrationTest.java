@@ -0,0 +1,40 @@
+package nl.tudelft.sem.template.delivery.database;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Starts against the schema of the migrations with Hibernate validating it, so the context only loads if the
+ * migrations match the entities.
+ */
+@DataJpaTest(properties = "spring.jpa.hibernate.ddl-auto=validate")
+class SchemaMigrationTest {
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void migrationsAreApplied() {
+        List<String> versions = jdbcTemplate.queryForList(
+                "SELECT \"version\" FROM \"flyway_schema_history\" WHERE \"success\" ORDER BY \"installed_rank\"",
+                String.class);
+
+        assertEquals(List.of("1", "2"), versions);
+    }
+
+    @Test
+    void deliveryLookupsAreIndexed() {
+        List<String> indexes = jdbcTemplate.queryForList(
+                "SELECT LOWER(INDEX_NAME) FROM INFORMATION_SCHEMA.INDEXES WHERE TABLE_NAME = 'DELIVERIES'",
+                String.class);
+
+        assertTrue(indexes.containsAll(List.of("idx_deliveries_vendor_id", "idx_deliveries_courier_id",
+                "idx_deliveries_order_id", "idx_deliveries_delivered")), indexes.toString());
+    }
+}
@@ -0,0 +1,202 @@
+package nl.tudelft.sem.template.delivery.services;
+
+import delivery_microservice.model.Analytics;
+import delivery_microservice.model.Delay;
+import delivery_microservice.model.Delivery;
+import delivery_microservice.model.Times;
+import nl.tudelft.sem.template.delivery.database.DeliveryRepository;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.EntityManager;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AnalyticsAggregatorTest {
+    private static final OffsetDateTime START = OffsetDateTime.of(2023, 11, 24, 15, 0, 0, 0, ZoneOffset.UTC);
+
+    private final DeliveryRepository deliveryRepository = mock(DeliveryRepository.class);
+    private final EntityManager entityManager = mock(EntityManager.class);
+    private final DeliveryArchive deliveryArchive = mock(DeliveryArchive.class);
+    private final AnalyticsAggregator aggregator = new AnalyticsAggregator(deliveryRepository, entityManager,
+            deliveryArchive);
+
+    private static Delivery delivery(boolean delivered, long estimatedMinutes, long actualMinutes, String issue) {
+        return new Delivery()
+                .delivered(delivered)
+                .times(new Times()
+                        .estimatedPickupTime(START)
+                        .estimatedDeliveryTime(START.plusMinutes(estimatedMinutes))
+                        .actualPickupTime(START)
+                        .actualDeliveryTime(START.plusMinutes(actualMinutes))
+                        .delays(List.of(new Delay().description(issue))));
+    }
+
+    private static Analytics analytics(int completed, int average, int efficiency, List<String> issues) {
+        return new Analytics()
+                .completedDeliveries(completed)
+                .avgDeliveryTime(average)
+                .driverEfficiency(efficiency)
+                .issues(issues);
+    }
+
+    @Test
+    void emptyTotals() {
+        assertEquals(analytics(0, 0, 0, List.of()), aggregator.getAnalytics());
+    }
+
+    @Test
+    void notDeliveredContributesNothing() {
+        assertNull(AnalyticsAggregator.Contribution.of(delivery(false, 5, 10, "traffic")));
+    }
+
+    @Test
+    void deliveredIsAdded() {
+        Delivery delivery = delivery(false, 5, 10, "traffic");
+        var before = AnalyticsAggregator.Contribution.of(delivery);
+        delivery.setDelivered(true);
+
+        aggregator.replace(before, AnalyticsAggregator.Contribution.of(delivery));
+
+        assertEquals(analytics(1, 10, 50, List.of("traffic")), aggregator.getAnalytics());
+    }
+
+    @Test
+    void changedTimesReplaceContribution() {
+        Delivery first = delivery(true, 5, 10, "traffic");
+        Delivery second = delivery(true, 5, 8, "traffic");
+        aggregator.rebuild(Stream.of(first, second));
+
+        var before = AnalyticsAggregator.Contribution.of(second);
+        second.getTimes().actualDeliveryTime(START.plusMinutes(5)).delays(List.of(new Delay().description("cold")));
+        aggregator.replace(before, AnalyticsAggregator.Contribution.of(second));
+
+        assertEquals(analytics(2, 8, 75, List.of("traffic", "cold")), aggregator.getAnalytics());
+    }
+
+    @Test
+    void undeliveredIsRemoved() {
+        Delivery first = delivery(true, 5, 10, "traffic");
+        Delivery second = delivery(true, 5, 5, "traffic");
+        aggregator.rebuild(Stream.of(first, second));
+
+        var before = AnalyticsAggregator.Contribution.of(second);
+        second.setDelivered(false);
+        aggregator.replace(before, AnalyticsAggregator.Contribution.of(second));
+
+        assertEquals(analytics(1, 10, 50, List.of("traffic")), aggregator.getAnalytics());
+    }
+
+    @Test
+    void rebuildFromDatabaseDetachesDeliveries() {
+        Delivery first = delivery(true, 5, 10, "traffic").deliveryId(1L);
+        when(deliveryRepository.streamDeliveredDeliveries()).thenReturn(Stream.of(first));
+        aggregator.replace(null, AnalyticsAggregator.Contribution.of(delivery(true, 1, 1, "drift")));
+
+        aggregator.rebuild();
+
+        assertEquals(analytics(1, 10, 50, List.of("traffic")), aggregator.getAnalytics());
+        verify(entityManager).detach(first);
+    }
+
+    @Test
+    void rebuildCountsArchivedDeliveriesOnce() {
+        Delivery inTable = delivery(true, 5, 10, "traffic").deliveryId(1L);
+        Delivery archivedButInTable = delivery(true, 5, 5, "cold").deliveryId(2L);
+        Delivery archived = delivery(true, 5, 5, "rain").deliveryId(3L);
+        when(deliveryRepository.streamDeliveredDeliveries()).thenReturn(Stream.of(inTable, archivedButInTable));
+        when(deliveryArchive.contains(2L)).thenReturn(true);
+        when(deliveryArchive.stream()).thenReturn(Stream.of(archivedButInTable, archived));
+
+        aggregator.rebuild();
+
+        assertEquals(analytics(3, 7, 83, List.of("traffic", "cold", "rain")), aggregator.getAnalytics());
+    }
+
+    @Test
+    void changesDuringRebuildAreKeptOnce() {
+        Delivery passed = delivery(true, 5, 10, "traffic").deliveryId(1L).version(1L);
+        Delivery ahead = delivery(true, 5, 10, "traffic").deliveryId(2L).version(1L);
+        Delivery becomesDelivered = delivery(false, 5, 5, "cold").deliveryId(3L).version(1L);
+        aggregator.rebuild(Stream.of(passed, ahead));
+
+        // while the rebuild reads, the first delivery changes after it was read, the second before it is read and
+        // the third becomes delivered after the rebuild looked for it
+        Delivery passedChanged = delivery(true, 5, 5, "cold").deliveryId(1L).version(2L);
+        Delivery aheadChanged = delivery(true, 5, 5, "rain").deliveryId(2L).version(2L);
+        aggregator.rebuild(Stream.of(passed, aheadChanged).peek(read -> {
+            if (read == passed) {
+                aggregator.replace(AnalyticsAggregator.Contribution.of(passed),
+                        AnalyticsAggregator.Contribution.of(passedChanged));
+                aggregator.replace(AnalyticsAggregator.Contribution.of(ahead),
+                        AnalyticsAggregator.Contribution.of(aheadChanged));
+            } else {
+                var before = AnalyticsAggregator.Contribution.of(becomesDelivered);
+                becomesDelivered.delivered(true).version(2L);
+                aggregator.replace(before, AnalyticsAggregator.Contribution.of(becomesDelivered));
+            }
+        }));
+
+        assertEquals(analytics(3, 5, 100, List.of("rain", "cold", "cold")), aggregator.getAnalytics());
+    }
+
+    @Test
+    void changeReportedAfterReadBeforeSwapIsKeptOnce() {
+        Delivery before = delivery(true, 5, 10, "traffic").deliveryId(1L).version(1L);
+        aggregator.rebuild(Stream.of(before));
+
+        // the change is committed before the rebuild reads the delivery, but reported after every delivery was read
+        Delivery changed = delivery(true, 5, 5, "cold").deliveryId(1L).version(2L);
+        aggregator.rebuild(Stream.concat(Stream.of(changed), Stream.of(changed).flatMap(read -> {
+            aggregator.replace(AnalyticsAggregator.Contribution.of(before), AnalyticsAggregator.Contribution.of(read));
+            return Stream.empty();
+        })));
+
+        assertEquals(analytics(1, 5, 100, List.of("cold")), aggregator.getAnalytics());
+    }
+
+    @Test
+    void changeReportedAfterSwapIsKeptOnce() {
+        Delivery before = delivery(true, 5, 10, "traffic").deliveryId(1L).version(1L);
+        aggregator.rebuild(Stream.of(before));
+
+        Delivery changed = delivery(true, 5, 5, "cold").deliveryId(1L).version(2L);
+        aggregator.rebuild(Stream.of(changed));
+        aggregator.replace(AnalyticsAggregator.Contribution.of(before), AnalyticsAggregator.Contribution.of(changed));
+
+        assertEquals(analytics(1, 5, 100, List.of("cold")), aggregator.getAnalytics());
+    }
+
+    @Test
+    void nonPositiveActualTimeCountsNoTime() {
+        aggregator.rebuild(Stream.of(delivery(true, 5, 0, "instant"), delivery(true, 5, -3, "clock skew"),
+                delivery(true, 5, 10, "traffic")));
+
+        assertEquals(analytics(3, 3, 17, List.of("instant", "clock skew", "traffic")), aggregator.getAnalytics());
+    }
+
+    @Test
+    void sumsStayExactAfterManyChanges() {
+        Delivery delivery = delivery(true, 1, 3, "traffic").deliveryId(1L).version(0L);
+        aggregator.rebuild(Stream.of(delivery(true, 2, 3, "cold")));
+        aggregator.replace(null, AnalyticsAggregator.Contribution.of(delivery));
+
+        for (long version = 1; version <= 10_000; version++) {
+            var before = AnalyticsAggregator.Contribution.of(delivery);
+            delivery.version(version).getTimes().actualDeliveryTime(START.plusMinutes(version % 2 == 0 ? 3 : 7));
+            aggregator.replace(before, AnalyticsAggregator.Contribution.of(delivery));
+        }
+        var before = AnalyticsAggregator.Contribution.of(delivery);
+        delivery.setDelivered(false);
+        aggregator.replace(before, AnalyticsAggregator.Contribution.of(delivery));
+
+        assertEquals(analytics(1, 3, 67, List.of("cold")), aggregator.getAnalytics());
+    }
+}
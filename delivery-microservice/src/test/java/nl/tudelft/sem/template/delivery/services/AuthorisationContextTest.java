@@ -0,0 +1,78 @@
+package nl.tudelft.sem.template.delivery.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import users_microservice.model.UsersGetUserTypeIdGet200Response.UserTypeEnum;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AuthorisationContextTest {
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void testNoContextOutsideRequest() {
+        assertThat(AuthorisationContext.current()).isNull();
+    }
+
+    @Test
+    void testSameContextWithinRequest() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+
+        assertThat(AuthorisationContext.current()).isSameAs(AuthorisationContext.current());
+    }
+
+    @Test
+    void testNewContextForNewRequest() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        AuthorisationContext first = AuthorisationContext.current();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+
+        assertThat(AuthorisationContext.current()).isNotSameAs(first);
+    }
+
+    @Test
+    void testResolvesOnce() {
+        AuthorisationContext context = new AuthorisationContext();
+        AtomicInteger calls = new AtomicInteger();
+
+        context.resolve(1L, id -> {
+            calls.incrementAndGet();
+            return Optional.of(UserTypeEnum.VENDOR);
+        });
+        Optional<UserTypeEnum> type = context.resolve(1L, id -> {
+            calls.incrementAndGet();
+            return Optional.of(UserTypeEnum.ADMIN);
+        });
+
+        assertThat(type).contains(UserTypeEnum.VENDOR);
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void testFailureRememberedAsUnknown() {
+        AuthorisationContext context = new AuthorisationContext();
+        AtomicInteger calls = new AtomicInteger();
+
+        context.resolve(1L, id -> {
+            calls.incrementAndGet();
+            return null;
+        });
+        Optional<UserTypeEnum> type = context.resolve(1L, id -> {
+            calls.incrementAndGet();
+            return Optional.of(UserTypeEnum.ADMIN);
+        });
+
+        assertThat(type).isEmpty();
+        assertThat(calls).hasValue(1);
+    }
+}
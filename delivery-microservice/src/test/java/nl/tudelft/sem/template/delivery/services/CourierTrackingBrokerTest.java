@@ -0,0 +1,206 @@
+package nl.tudelft.sem.template.delivery.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CourierTrackingBrokerTest {
+    private final AtomicInteger serializations = new AtomicInteger();
+    private final ObjectMapper objectMapper = new ObjectMapper() {
+        @Override
+        public String writeValueAsString(Object value) throws JsonProcessingException {
+            serializations.incrementAndGet();
+            return super.writeValueAsString(value);
+        }
+    }.findAndRegisterModules();
+    private final AtomicLong clock = new AtomicLong(10_000);
+    /**
+     * Holds the sending tasks with the time they are due, until {@link #runTasksUntil(long)}.
+     */
+    private final List<Task> tasks = new ArrayList<>();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CourierTrackingBroker broker = new CourierTrackingBroker(objectMapper,
+            (task, delayMs) -> tasks.add(new Task(task, clock.get() + delayMs)), clock::get, 2000, 0,
+            meterRegistry);
+
+    private static final class Task {
+        private final Runnable runnable;
+        private final long due;
+
+        private Task(Runnable runnable, long due) {
+            this.runnable = runnable;
+            this.due = due;
+        }
+    }
+
+    private void runTasksUntil(long time) {
+        clock.set(time);
+        boolean ran = true;
+        while (ran) {
+            ran = false;
+            for (Task task : new ArrayList<>(tasks)) {
+                if (task.due <= time) {
+                    tasks.remove(task);
+                    task.runnable.run();
+                    ran = true;
+                }
+            }
+        }
+    }
+
+    private static CourierPosition position(double latitude, long timestamp) {
+        return new CourierPosition(latitude, 4.3, timestamp);
+    }
+
+    /**
+     * Tracks delivery courierId * 10, brought by the courier.
+     */
+    private EventStream<CourierPosition>.Subscription watch(long courierId, EventStream.Sink sink) {
+        return broker.subscribe(courierId * 10, courierId, sink, () -> { });
+    }
+
+    private double events(String outcome) {
+        return meterRegistry.get("tracking.events").tag("outcome", outcome).counter().count();
+    }
+
+    @Test
+    void positionIsSerializedOnceForAllWatchers() {
+        List<String> first = new ArrayList<>();
+        List<String> second = new ArrayList<>();
+        List<String> other = new ArrayList<>();
+        watch(1L, first::add);
+        watch(1L, second::add);
+        watch(2L, other::add);
+
+        broker.onPosition(1L, position(52.5, 1000L));
+        runTasksUntil(10_000);
+
+        assertEquals(1, serializations.get());
+        assertEquals(1, first.size());
+        assertEquals(first, second);
+        assertTrue(first.get(0).contains("\"latitude\":52.5"));
+        assertEquals(List.of(), other);
+        assertEquals(3, meterRegistry.get("tracking.subscribers").gauge().value());
+    }
+
+    @Test
+    void noWatchersNoSerialization() {
+        broker.onPosition(1L, position(52.5, 1000L));
+
+        assertEquals(0, serializations.get());
+        assertEquals(0, tasks.size());
+    }
+
+    @Test
+    void watcherGetsAtMostOnePositionPerInterval() {
+        List<String> received = new ArrayList<>();
+        watch(1L, received::add);
+
+        broker.onPosition(1L, position(52.1, 1000L));
+        runTasksUntil(10_000);
+        broker.onPosition(1L, position(52.2, 2000L));
+        broker.onPosition(1L, position(52.3, 3000L));
+        runTasksUntil(11_999);
+
+        assertEquals(1, received.size());
+
+        runTasksUntil(12_000);
+
+        assertEquals(2, received.size());
+        assertTrue(received.get(1).contains("\"latitude\":52.3"));
+        assertEquals(2, events("sent"));
+        assertEquals(1, events("conflated"));
+    }
+
+    @Test
+    void olderPositionIsNotSentAfterNewerOne() {
+        List<String> received = new ArrayList<>();
+        var subscription = watch(1L, received::add);
+
+        broker.onPosition(1L, position(52.2, 2000L));
+        runTasksUntil(10_000);
+        subscription.offer(position(52.1, 1000L));
+        runTasksUntil(20_000);
+
+        assertEquals(1, received.size());
+        assertTrue(received.get(0).contains("\"latitude\":52.2"));
+    }
+
+    @Test
+    void failingWatcherIsRemoved() {
+        List<String> received = new ArrayList<>();
+        watch(1L, json -> {
+            throw new IOException("broken pipe");
+        });
+        watch(1L, received::add);
+
+        broker.onPosition(1L, position(52.1, 1000L));
+        runTasksUntil(10_000);
+
+        assertEquals(1, received.size());
+        assertEquals(1, events("failed"));
+        assertEquals(1, meterRegistry.get("tracking.subscribers").gauge().value());
+    }
+
+    @Test
+    void cancelledWatcherGetsNothing() {
+        List<String> received = new ArrayList<>();
+        var subscription = watch(1L, received::add);
+
+        broker.onPosition(1L, position(52.1, 1000L));
+        subscription.cancel();
+        subscription.cancel();
+        runTasksUntil(10_000);
+        broker.onPosition(1L, position(52.2, 2000L));
+        runTasksUntil(20_000);
+
+        assertEquals(List.of(), received);
+        assertEquals(0, meterRegistry.get("tracking.subscribers").gauge().value());
+    }
+
+    @Test
+    void endedTrackingStopsPositionsAndCompletes() {
+        List<String> ended = new ArrayList<>();
+        List<String> received = new ArrayList<>();
+        List<String> otherDelivery = new ArrayList<>();
+        broker.subscribe(10L, 1L, received::add, () -> ended.add("10"));
+        broker.subscribe(11L, 1L, otherDelivery::add, () -> ended.add("11"));
+
+        broker.endTracking(10L);
+        broker.endTracking(10L);
+        broker.onPosition(1L, position(52.1, 1000L));
+        runTasksUntil(10_000);
+
+        assertEquals(List.of("10"), ended);
+        assertEquals(List.of(), received);
+        assertEquals(1, otherDelivery.size());
+        assertEquals(1, meterRegistry.get("tracking.subscribers").gauge().value());
+    }
+
+    @Test
+    void firstPositionIsSentWithoutDelayOnWallClock() {
+        long now = System.currentTimeMillis();
+        List<Long> delays = new ArrayList<>();
+        List<String> received = new ArrayList<>();
+        CourierTrackingBroker wallClockBroker = new CourierTrackingBroker(objectMapper, (task, delayMs) -> {
+            delays.add(delayMs);
+            task.run();
+        }, () -> now, 2000, 0, new SimpleMeterRegistry());
+        wallClockBroker.subscribe(10L, 1L, received::add, () -> { });
+
+        wallClockBroker.onPosition(1L, position(52.1, now));
+
+        assertEquals(List.of(0L), delays);
+        assertEquals(1, received.size());
+    }
+}
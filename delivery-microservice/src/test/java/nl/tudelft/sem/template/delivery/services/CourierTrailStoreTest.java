@@ -0,0 +1,117 @@
+package nl.tudelft.sem.template.delivery.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CourierTrailStoreTest {
+    private final AtomicLong clock = new AtomicLong();
+    private final CourierTrailStore store = new CourierTrailStore(4, clock::get, 60_000);
+
+    @Test
+    void noTrail() {
+        assertNull(store.getTrail(1L, Long.MIN_VALUE));
+    }
+
+    @Test
+    void positionsAreRoundedToFiveDecimals() {
+        store.onPosition(1L, new CourierPosition(51.998824, 4.373536, 1000L));
+        store.onPosition(1L, new CourierPosition(51.998901, 4.373636, 6000L));
+
+        assertEquals(List.of(new CourierPosition(51.99882, 4.37354, 1000L),
+                new CourierPosition(51.9989, 4.37364, 6000L)), store.getTrail(1L, Long.MIN_VALUE));
+    }
+
+    @Test
+    void oldestPositionsAreDroppedWhenFull() {
+        for (int i = 0; i < 10; i++) {
+            store.onPosition(1L, new CourierPosition(52.0 + i * 0.001, 4.3 - i * 0.001, i * 5000L));
+        }
+
+        List<CourierPosition> trail = store.getTrail(1L, Long.MIN_VALUE);
+        assertEquals(4, trail.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(52.006 + i * 0.001, trail.get(i).getLatitude(), 1e-9);
+            assertEquals(4.294 - i * 0.001, trail.get(i).getLongitude(), 1e-9);
+            assertEquals((6 + i) * 5000L, trail.get(i).getTimestamp());
+        }
+    }
+
+    @Test
+    void sinceReturnsOnlyLaterPositions() {
+        store.onPosition(1L, new CourierPosition(52.0, 4.3, 1000L));
+        store.onPosition(1L, new CourierPosition(52.0, 4.3, 2000L));
+        store.onPosition(1L, new CourierPosition(52.0, 4.3, 3000L));
+
+        assertEquals(List.of(2000L, 3000L), timestamps(store.getTrail(1L, 1000L)));
+        assertEquals(List.of(), store.getTrail(1L, 3000L));
+    }
+
+    @Test
+    void olderPositionIsIgnored() {
+        store.onPosition(1L, new CourierPosition(52.0, 4.3, 2000L));
+        store.onPosition(1L, new CourierPosition(52.1, 4.3, 1000L));
+
+        assertEquals(List.of(2000L), timestamps(store.getTrail(1L, Long.MIN_VALUE)));
+    }
+
+    @Test
+    void jumpTooLargeForDeltaStartsNewTrail() {
+        store.onPosition(1L, new CourierPosition(52.0, 4.3, 1000L));
+        store.onPosition(1L, new CourierPosition(52.0, 4.3, 2000L));
+        // one degree is more than a 16 bit delta can hold
+        store.onPosition(1L, new CourierPosition(53.0, 4.3, 3000L));
+        // a gap of a month is more than a 32 bit delta can hold
+        store.onPosition(2L, new CourierPosition(52.0, 4.3, 1000L));
+        store.onPosition(2L, new CourierPosition(52.0, 4.3, 1000L + 31L * 24 * 3600 * 1000));
+
+        assertEquals(List.of(new CourierPosition(53.0, 4.3, 3000L)), store.getTrail(1L, Long.MIN_VALUE));
+        assertEquals(1, store.getTrail(2L, Long.MIN_VALUE).size());
+    }
+
+    @Test
+    void memoryEstimate() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        CourierTrailStore defaultStore = new CourierTrailStore(new MockEnvironment(), meterRegistry);
+        for (long courierId = 0; courierId < 50_000; courierId++) {
+            defaultStore.onPosition(courierId, new CourierPosition(52.0, 4.3, 1000L));
+        }
+
+        // 119 deltas of 8 bytes plus the array header, the trail and its map entry
+        assertEquals(50_000L * (119 * 8 + 16 + 112), defaultStore.estimatedBytes());
+        assertEquals(50_000, meterRegistry.get("courier.trails").gauge().value());
+        assertEquals(defaultStore.estimatedBytes(), meterRegistry.get("courier.trails.memory").gauge().value());
+    }
+
+    @Test
+    void capacityMustHoldTwoPositions() {
+        assertThrows(IllegalArgumentException.class, () -> new CourierTrailStore(1, clock::get, 60_000));
+    }
+
+    @Test
+    void idleTrailIsEvicted() {
+        store.onPosition(1L, new CourierPosition(52.0, 4.3, 1000L));
+        store.onPosition(2L, new CourierPosition(52.0, 4.3, 1000L));
+        clock.set(30_000);
+        store.onPosition(2L, new CourierPosition(52.0, 4.3, 2000L));
+
+        clock.set(60_000);
+        store.evictIdle();
+
+        assertNull(store.getTrail(1L, Long.MIN_VALUE));
+        assertEquals(List.of(1000L, 2000L), timestamps(store.getTrail(2L, Long.MIN_VALUE)));
+        assertEquals(1, store.size());
+    }
+
+    private static List<Long> timestamps(List<CourierPosition> trail) {
+        return trail.stream().map(CourierPosition::getTimestamp).collect(Collectors.toList());
+    }
+}
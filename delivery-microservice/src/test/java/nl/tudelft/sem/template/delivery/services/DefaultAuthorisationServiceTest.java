@@ -1,29 +1,46 @@
 package nl.tudelft.sem.template.delivery.services;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 import users_microservice.ApiException;
 import users_microservice.api.UserApi;
 import users_microservice.model.UsersGetUserTypeIdGet200Response;
 import users_microservice.model.UsersGetUserTypeIdGet200Response.UserTypeEnum;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class DefaultAuthorisationServiceTest {
     @Mock
     private UserApi userApiMock;
 
-    @InjectMocks
+    private SimpleMeterRegistry meterRegistry;
+
     private DefaultAuthorisationService authorisationService;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        authorisationService = new DefaultAuthorisationService(userApiMock, new MockEnvironment(), meterRegistry);
     }
 
     // Is Customer
@@ -247,5 +264,148 @@ public class DefaultAuthorisationServiceTest {
         assertFalse(result);
     }
 
-}
+    // Caching
+
+    @Test
+    void testIsUser_SingleFetch() throws ApiException {
+        when(userApiMock.usersGetUserTypeIdGet(1L))
+            .thenReturn(new UsersGetUserTypeIdGet200Response().userType(UserTypeEnum.CUSTOMER));
+
+        assertTrue(authorisationService.isUser(1L));
+        verify(userApiMock, times(1)).usersGetUserTypeIdGet(1L);
+    }
+
+    @Test
+    void testCachedAcrossChecks() throws ApiException {
+        when(userApiMock.usersGetUserTypeIdGet(1L))
+            .thenReturn(new UsersGetUserTypeIdGet200Response().userType(UserTypeEnum.COURIER));
+
+        assertTrue(authorisationService.isCourier(1L));
+        assertTrue(authorisationService.isUser(1L));
+        assertFalse(authorisationService.isAdmin(1L));
 
+        verify(userApiMock, times(1)).usersGetUserTypeIdGet(1L);
+        assertEquals(2.0, meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("result", "miss").functionCounter().count());
+    }
+
+    @Test
+    void testUnknownUserIsCached() throws ApiException {
+        when(userApiMock.usersGetUserTypeIdGet(1L))
+            .thenThrow(new ApiException(404, "User with ID not found"));
+
+        assertFalse(authorisationService.isUser(1L));
+        assertFalse(authorisationService.isUser(1L));
+        verify(userApiMock, times(1)).usersGetUserTypeIdGet(1L);
+    }
+
+    @Test
+    void testFailedLookupIsNotCached() throws ApiException {
+        when(userApiMock.usersGetUserTypeIdGet(1L))
+            .thenThrow(new ApiException(503, "Service unavailable"))
+            .thenReturn(new UsersGetUserTypeIdGet200Response().userType(UserTypeEnum.VENDOR));
+
+        assertFalse(authorisationService.isVendor(1L));
+        assertTrue(authorisationService.isVendor(1L));
+        verify(userApiMock, times(2)).usersGetUserTypeIdGet(1L);
+    }
+
+    @Test
+    void testCacheDisabled() throws ApiException {
+        MockEnvironment environment = new MockEnvironment().withProperty("authorisation.cache.enabled", "false");
+        DefaultAuthorisationService uncached =
+            new DefaultAuthorisationService(userApiMock, environment, new SimpleMeterRegistry());
+        when(userApiMock.usersGetUserTypeIdGet(1L))
+            .thenReturn(new UsersGetUserTypeIdGet200Response().userType(UserTypeEnum.VENDOR));
+
+        assertTrue(uncached.isVendor(1L));
+        assertTrue(uncached.isVendor(1L));
+        verify(userApiMock, times(2)).usersGetUserTypeIdGet(1L);
+    }
+
+    // Request scope
+
+    @Test
+    void testResolvedOncePerRequestWithoutCache() throws ApiException {
+        MockEnvironment environment = new MockEnvironment().withProperty("authorisation.cache.enabled", "false");
+        DefaultAuthorisationService uncached =
+            new DefaultAuthorisationService(userApiMock, environment, new SimpleMeterRegistry());
+        when(userApiMock.usersGetUserTypeIdGet(1L))
+            .thenReturn(new UsersGetUserTypeIdGet200Response().userType(UserTypeEnum.COURIER));
+        when(userApiMock.usersGetUserTypeIdGet(2L))
+            .thenReturn(new UsersGetUserTypeIdGet200Response().userType(UserTypeEnum.CUSTOMER));
+
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        try {
+            assertTrue(uncached.isCourier(1L));
+            assertTrue(uncached.isUser(2L));
+            assertTrue(uncached.isUser(1L));
+            assertFalse(uncached.isAdmin(2L));
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+
+        verify(userApiMock, times(1)).usersGetUserTypeIdGet(1L);
+        verify(userApiMock, times(1)).usersGetUserTypeIdGet(2L);
+    }
+
+    // Single flight
+
+    @Test
+    void testConcurrentLookupsCoalesced() throws Exception {
+        assertConcurrentLookupsCoalesced(new MockEnvironment().withProperty("authorisation.cache.enabled", "false"));
+    }
+
+    @Test
+    void testConcurrentLookupsCoalescedInCache() throws Exception {
+        assertConcurrentLookupsCoalesced(new MockEnvironment());
+    }
+
+    private void assertConcurrentLookupsCoalesced(MockEnvironment environment) throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        DefaultAuthorisationService service = new DefaultAuthorisationService(userApiMock, environment, registry);
+        CountDownLatch called = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(userApiMock.usersGetUserTypeIdGet(1L)).thenAnswer(invocation -> {
+            called.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return new UsersGetUserTypeIdGet200Response().userType(UserTypeEnum.COURIER);
+        });
+        Counter coalesced = registry.get("authorisation.userType.lookups").tag("outcome", "coalesced").counter();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Boolean> first = executor.submit(() -> service.isCourier(1L));
+            assertTrue(called.await(5, TimeUnit.SECONDS));
+            Future<Boolean> second = executor.submit(() -> service.isCourier(1L));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (coalesced.count() < 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            assertTrue(first.get(5, TimeUnit.SECONDS));
+            assertTrue(second.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(userApiMock, times(1)).usersGetUserTypeIdGet(1L);
+        assertEquals(1.0, coalesced.count());
+        assertEquals(1.0, registry.get("authorisation.userType.lookups").tag("outcome", "remote").counter().count());
+    }
+
+    @Test
+    void testSequentialLookupsNotCoalesced() throws ApiException {
+        MockEnvironment environment = new MockEnvironment().withProperty("authorisation.cache.enabled", "false");
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        DefaultAuthorisationService uncached = new DefaultAuthorisationService(userApiMock, environment, registry);
+        when(userApiMock.usersGetUserTypeIdGet(1L)).thenThrow(new ApiException(500, "down"));
+
+        assertFalse(uncached.isUser(1L));
+        assertFalse(uncached.isUser(1L));
+
+        verify(userApiMock, times(2)).usersGetUserTypeIdGet(1L);
+        assertEquals(0.0, registry.get("authorisation.userType.lookups").tag("outcome", "coalesced").counter().count());
+    }
+}
@@ -1,15 +1,22 @@
 package nl.tudelft.sem.template.delivery.services;
 
 
+import delivery_microservice.model.CreateDeliveryRequest;
 import delivery_microservice.model.Delay;
 import delivery_microservice.model.Delivery;
 import delivery_microservice.model.Location;
 import delivery_microservice.model.Locations;
+import delivery_microservice.model.OrderStatusChange;
 import delivery_microservice.model.Times;
 import delivery_microservice.model.UpdateDeliveryRequest;
 import nl.tudelft.sem.template.delivery.database.DelayRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import nl.tudelft.sem.template.delivery.database.DeliveryRepository;
+import nl.tudelft.sem.template.delivery.database.OrderStatusChangeRepository;
+import nl.tudelft.sem.template.delivery.dtos.DeliveryField;
+import nl.tudelft.sem.template.delivery.dtos.DeliverySummary;
 import nl.tudelft.sem.template.delivery.dtos.UpdateDeliveryDto;
+import nl.tudelft.sem.template.delivery.exceptions.DeliveryConflictException;
 import nl.tudelft.sem.template.delivery.exceptions.EntityNotFoundException;
 import orders_microservice.ApiException;
 import orders_microservice.api.OrderApi;
@@ -25,29 +32,51 @@ import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 
 import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.mock.env.MockEnvironment;
 import users_microservice.api.VendorApi;
 import users_microservice.model.Vendor;
 
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import javax.persistence.EntityManager;
 
 class DefaultDeliveryServiceTest {
     private final DeliveryRepository deliveryRepository = mock(DeliveryRepository.class);
     private final OrderApi orderApi = mock(OrderApi.class);
     private final VendorApi vendorApi = mock(VendorApi.class);
     private final DelayRepository delayRepository = mock(DelayRepository.class);
+    private final EntityManager entityManager = mock(EntityManager.class);
+    private final DeliveryArchive deliveryArchive = mock(DeliveryArchive.class);
+    private final AnalyticsAggregator analyticsAggregator = new AnalyticsAggregator(deliveryRepository, entityManager,
+            deliveryArchive);
+    private final DispatchQueue dispatchQueue = new DispatchQueue(deliveryRepository);
+    private final OrderStatusChangeRepository orderStatusChangeRepository = mock(OrderStatusChangeRepository.class);
+    private final OrderStatusOutbox orderStatusOutbox = new OrderStatusOutbox(deliveryRepository,
+            orderStatusChangeRepository, orderApi, new MockEnvironment(), new SimpleMeterRegistry());
+    private final DeliveryEventBroker deliveryEventBroker = mock(DeliveryEventBroker.class);
+    private final CourierTrackingBroker courierTrackingBroker = mock(CourierTrackingBroker.class);
     private final DeliveryService deliveryService = new DefaultDeliveryService(deliveryRepository,
-            delayRepository, orderApi, vendorApi);
+            delayRepository, new VendorDirectory(vendorApi, new MockEnvironment()), entityManager,
+            analyticsAggregator, dispatchQueue, orderStatusOutbox, deliveryEventBroker, deliveryArchive,
+            courierTrackingBroker);
     private Delivery delivery = new Delivery();
     private Delivery createdDelivery = new Delivery();
     private Delivery differentDelivery = new Delivery();
@@ -215,21 +244,92 @@ class DefaultDeliveryServiceTest {
 
     @Test
     void getDeliveryByVendorId() {
-        differentDelivery.setVendorId(8L);
-        when(deliveryRepository.findAll()).thenReturn(List.of(delivery, differentDelivery));
-        assertEquals(deliveryService.getDeliveryByVendorId(3L), List.of(delivery));
+        when(deliveryRepository.findDeliveryIdsByVendorId(3L, -1L, PageRequest.of(0, 10))).thenReturn(List.of(5L));
+        when(deliveryRepository.findWithDelaysByDeliveryIdIn(List.of(5L))).thenReturn(List.of(delivery));
+        assertEquals(deliveryService.getDeliveryByVendorId(3L, -1L, 10), List.of(delivery));
+        verify(deliveryRepository, never()).findAll();
     }
 
     @Test
     void getDeliveryByVendorIdMultiple() {
-        when(deliveryRepository.findAll()).thenReturn(List.of(delivery, differentDelivery));
-        assertEquals(deliveryService.getDeliveryByVendorId(3L), List.of(delivery, differentDelivery));
+        when(deliveryRepository.findDeliveryIdsByVendorId(3L, 7L, PageRequest.of(0, 2))).thenReturn(List.of(8L, 9L));
+        when(deliveryRepository.findWithDelaysByDeliveryIdIn(List.of(8L, 9L)))
+                .thenReturn(List.of(delivery, differentDelivery));
+        assertEquals(deliveryService.getDeliveryByVendorId(3L, 7L, 2), List.of(delivery, differentDelivery));
+    }
+
+    @Test
+    void getDeliveryByVendorIdEmptyPage() {
+        when(deliveryRepository.findDeliveryIdsByVendorId(3L, 7L, PageRequest.of(0, 2))).thenReturn(List.of());
+        assertEquals(deliveryService.getDeliveryByVendorId(3L, 7L, 2), List.of());
+        verify(deliveryRepository, never()).findWithDelaysByDeliveryIdIn(any());
+    }
+
+    @Test
+    void getDeliveriesLoadsDistinctIdsInOneQuery() {
+        when(deliveryRepository.findWithDelaysByDeliveryIdIn(List.of(9L, 8L)))
+                .thenReturn(List.of(delivery, differentDelivery));
+        assertEquals(List.of(delivery, differentDelivery), deliveryService.getDeliveries(List.of(9L, 8L, 9L)));
+        verify(deliveryRepository, times(1)).findWithDelaysByDeliveryIdIn(any());
+        verify(deliveryRepository, never()).findById(anyLong());
+    }
+
+    @Test
+    void archivedDeliveryIsFoundById() {
+        when(deliveryRepository.findById(8L)).thenReturn(Optional.empty());
+        when(deliveryArchive.find(8L)).thenReturn(Optional.of(delivery));
+
+        assertEquals(Optional.of(delivery), deliveryService.getDelivery(8L));
+    }
+
+    @Test
+    void getDeliveriesFallsBackToArchive() {
+        when(deliveryRepository.findWithDelaysByDeliveryIdIn(List.of(9L, 8L))).thenReturn(List.of(differentDelivery));
+        when(deliveryArchive.findAll(List.of(8L))).thenReturn(List.of(delivery));
+
+        assertEquals(List.of(delivery, differentDelivery), deliveryService.getDeliveries(List.of(9L, 8L)));
+    }
+
+    @Test
+    void getDeliverySummaryByOrderId() {
+        DeliverySummary summary = new DeliverySummary();
+        Set<DeliveryField> fields = EnumSet.of(DeliveryField.DELIVERY_ID);
+        when(deliveryRepository.findSummariesByOrderId(4L, fields)).thenReturn(List.of(summary));
+
+        assertEquals(Optional.of(summary), deliveryService.getDeliverySummaryByOrderId(4L, fields));
+        assertEquals(Optional.empty(), deliveryService.getDeliverySummaryByOrderId(5L, fields));
+        verify(deliveryRepository, never()).findDeliveryByOrderId(anyLong());
     }
 
     @Test
     void getDeliveryByCourierId() {
-        when(deliveryRepository.findAll()).thenReturn(List.of(delivery, differentDelivery));
-        assertEquals(deliveryService.getDeliveryByCourierId(14L), List.of(delivery));
+        when(deliveryRepository.findDeliveryIdsByCourierId(14L, -1L, PageRequest.of(0, 10))).thenReturn(List.of(5L));
+        when(deliveryRepository.findWithDelaysByDeliveryIdIn(List.of(5L))).thenReturn(List.of(delivery));
+        assertEquals(deliveryService.getDeliveryByCourierId(14L, -1L, 10), List.of(delivery));
+        verify(deliveryRepository, never()).findAll();
+    }
+
+    @Test
+    void forEachDeliveryByVendorIdDetaches() {
+        when(deliveryRepository.streamDeliveriesByVendorId(3L)).thenReturn(Stream.of(delivery, differentDelivery));
+        List<Delivery> consumed = new ArrayList<>();
+
+        deliveryService.forEachDeliveryByVendorId(3L, consumed::add);
+
+        assertEquals(List.of(delivery, differentDelivery), consumed);
+        verify(entityManager, times(1)).detach(delivery);
+        verify(entityManager, times(1)).detach(differentDelivery);
+    }
+
+    @Test
+    void forEachDeliveryByCourierId() {
+        when(deliveryRepository.streamDeliveriesByCourierId(14L)).thenReturn(Stream.of(delivery));
+        List<Delivery> consumed = new ArrayList<>();
+
+        deliveryService.forEachDeliveryByCourierId(14L, consumed::add);
+
+        assertEquals(List.of(delivery), consumed);
+        verify(entityManager, times(1)).detach(delivery);
     }
 
     @Test
@@ -303,10 +403,49 @@ class DefaultDeliveryServiceTest {
     }
 
     @Test
-    void updateDelivery() throws ApiException, EntityNotFoundException {
+    void createDeliveries() throws users_microservice.ApiException, EntityNotFoundException {
+        when(vendorApi.vendorsVerifiedGet()).thenReturn(List.of(vendor));
+        when(deliveryRepository.saveAll(any())).thenAnswer(invocation -> {
+            List<Delivery> deliveries = invocation.getArgument(0);
+            for (int i = 0; i < deliveries.size(); i++) {
+                deliveries.get(i).setDeliveryId(100L + i);
+            }
+            return deliveries;
+        });
+
+        List<CreateDeliveryRequest> requests = new ArrayList<>();
+        for (long orderId = 1; orderId <= 3; orderId++) {
+            requests.add(new CreateDeliveryRequest().orderId(orderId).vendorId(3L).deliveryLocation(new Location()));
+        }
+
+        List<Delivery> created = deliveryService.createDeliveries(requests);
+
+        assertEquals(3, created.size());
+        assertEquals(2L, created.get(1).getOrderId());
+        assertEquals(3L, created.get(1).getVendorId());
+        assertEquals(vendor.getLocation().getStreet(), created.get(1).getLocations().getVendorAddress());
+        assertEquals(List.of(100L, 101L, 102L), deliveryService.getUnassigned());
+        verify(vendorApi, times(1)).vendorsVerifiedGet();
+        verify(deliveryRepository, never()).save(any());
+    }
+
+    @Test
+    void createDeliveriesUnknownVendorCreatesNothing() throws users_microservice.ApiException {
+        when(vendorApi.vendorsVerifiedGet()).thenReturn(List.of(vendor));
+
+        List<CreateDeliveryRequest> requests = List.of(
+                new CreateDeliveryRequest().orderId(1L).vendorId(3L).deliveryLocation(new Location()),
+                new CreateDeliveryRequest().orderId(2L).vendorId(77L).deliveryLocation(new Location()));
+
+        assertThrows(EntityNotFoundException.class, () -> deliveryService.createDeliveries(requests));
+        verify(deliveryRepository, never()).saveAll(any());
+    }
+
+    @Test
+    void updateDelivery() throws ApiException, EntityNotFoundException, DeliveryConflictException {
 
         when(deliveryRepository.findById(8L)).thenReturn(Optional.ofNullable(createdDelivery));
-        when(orderApi.orderOrderIDGet(delivery.getDeliveryId())).thenReturn(List.of(order));
+        when(orderApi.orderOrderIDGet(createdDelivery.getOrderId())).thenReturn(List.of(order));
         when(deliveryRepository.save(any(Delivery.class))).thenReturn(createdDelivery);
 
         var delay = new Delay();
@@ -330,13 +469,94 @@ class DefaultDeliveryServiceTest {
         assertEquals(returned, delivery);
 
         verify(deliveryRepository, times(1)).save(captor.capture());
-        verify(orderApi, times(1)).orderPut(42L, updatedOrder);
         verify(delayRepository, times(1)).saveAll(any());
+        verify(deliveryEventBroker, times(1)).publish(createdDelivery);
 
         Delivery captured = captor.getValue();
 
         assertEquals(captured, delivery);
         assertSame(captured.getTimes().getDelays(), delayList);
+
+        ArgumentCaptor<OrderStatusChange> changeCaptor = ArgumentCaptor.forClass(OrderStatusChange.class);
+        verify(orderStatusChangeRepository, times(1)).save(changeCaptor.capture());
+        verify(orderApi, never()).orderPut(any(), any());
+
+        when(orderStatusChangeRepository.findDue(any(), any())).thenReturn(List.of(changeCaptor.getValue().id(1L)));
+        orderStatusOutbox.dispatch();
+
+        verify(orderApi, times(1)).orderPut(42L, updatedOrder);
+    }
+
+    @Test
+    void updateStatusGoesToOutbox() throws ApiException, EntityNotFoundException, DeliveryConflictException {
+        when(deliveryRepository.findById(8L)).thenReturn(Optional.of(createdDelivery));
+        when(deliveryRepository.save(any(Delivery.class))).thenReturn(createdDelivery);
+
+        deliveryService.updateDelivery(42L, UpdateDeliveryDto.builder()
+                .deliveryId(8L)
+                .status(UpdateDeliveryRequest.StatusEnum.GIVEN_TO_COURIER)
+                .build());
+
+        ArgumentCaptor<OrderStatusChange> captor = ArgumentCaptor.forClass(OrderStatusChange.class);
+        verify(orderStatusChangeRepository, times(1)).save(captor.capture());
+        assertEquals(createdDelivery.getOrderId(), captor.getValue().getOrderId());
+        assertEquals(42L, captor.getValue().getUserId());
+        assertEquals("GIVEN_TO_COURIER", captor.getValue().getStatus());
+        verify(orderApi, never()).orderOrderIDGet(any());
+        verify(orderApi, never()).orderPut(any(), any());
+    }
+
+    @Test
+    void updateWithoutStatusLeavesOutbox() throws EntityNotFoundException, DeliveryConflictException {
+        when(deliveryRepository.findById(8L)).thenReturn(Optional.of(createdDelivery));
+        when(deliveryRepository.save(any(Delivery.class))).thenReturn(createdDelivery);
+
+        deliveryService.updateDelivery(42L, UpdateDeliveryDto.builder().deliveryId(8L).rating(5).build());
+
+        verify(orderStatusChangeRepository, never()).save(any());
+    }
+
+    @Test
+    void updateRetriedOnConcurrentChangeOfOtherField()
+            throws ApiException, EntityNotFoundException, DeliveryConflictException {
+        Delivery stale = new Delivery().deliveryId(8L).version(1L);
+        Delivery fresh = new Delivery().deliveryId(8L).courierId(99L).version(2L);
+        when(deliveryRepository.findById(8L)).thenReturn(Optional.of(stale), Optional.of(fresh));
+        when(deliveryRepository.save(any(Delivery.class)))
+                .thenThrow(new ObjectOptimisticLockingFailureException(Delivery.class, 8L))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        Delivery saved = deliveryService.updateDelivery(42L, UpdateDeliveryDto.builder().deliveryId(8L).rating(5).build());
+
+        assertSame(fresh, saved);
+        assertEquals(99L, saved.getCourierId());
+        assertEquals(5, saved.getRating());
+        verify(entityManager, times(1)).detach(stale);
+    }
+
+    @Test
+    void updateConflictsOnConcurrentChangeOfSameField() {
+        Delivery stale = new Delivery().deliveryId(8L).version(1L);
+        Delivery fresh = new Delivery().deliveryId(8L).courierId(99L).version(2L);
+        when(deliveryRepository.findById(8L)).thenReturn(Optional.of(stale), Optional.of(fresh));
+        when(deliveryRepository.save(any(Delivery.class)))
+                .thenThrow(new ObjectOptimisticLockingFailureException(Delivery.class, 8L));
+
+        assertThrows(DeliveryConflictException.class, () -> deliveryService.updateDelivery(
+                42L, UpdateDeliveryDto.builder().deliveryId(8L).courierId(14L).build()));
+        verify(deliveryRepository, times(1)).save(any(Delivery.class));
+        verify(deliveryEventBroker, never()).publish(any());
+    }
+
+    @Test
+    void updateGivesUpAfterMaxAttempts() {
+        when(deliveryRepository.findById(8L)).thenAnswer(invocation -> Optional.of(new Delivery().deliveryId(8L)));
+        when(deliveryRepository.save(any(Delivery.class)))
+                .thenThrow(new ObjectOptimisticLockingFailureException(Delivery.class, 8L));
+
+        assertThrows(DeliveryConflictException.class, () -> deliveryService.updateDelivery(
+                42L, UpdateDeliveryDto.builder().deliveryId(8L).rating(5).build()));
+        verify(deliveryRepository, times(DefaultDeliveryService.MAX_UPDATE_ATTEMPTS)).save(any(Delivery.class));
     }
 
     @Test
@@ -357,8 +577,115 @@ class DefaultDeliveryServiceTest {
 
     @Test
     void getUnassigned() {
-        when(deliveryRepository.findDeliveriesByCourierIdNull()).thenReturn(List.of(createdDelivery));
+        when(deliveryRepository.findUnassignedDeliveryIds()).thenReturn(List.of(createdDelivery.getDeliveryId()));
+        dispatchQueue.rebuild();
+
+        assertEquals(deliveryService.getUnassigned(), List.of(createdDelivery.getDeliveryId()));
         assertEquals(deliveryService.getUnassigned(), List.of(createdDelivery.getDeliveryId()));
+        verify(deliveryRepository, times(1)).findUnassignedDeliveryIds();
+    }
+
+    @Test
+    void createdDeliveryIsUnassigned() throws users_microservice.ApiException, EntityNotFoundException {
+        when(vendorApi.vendorsVerifiedGet()).thenReturn(List.of(vendor));
+        when(deliveryRepository.save(any(Delivery.class))).thenReturn(createdDelivery);
+
+        deliveryService.createDelivery(8, 3, new Location(), null);
+
+        assertEquals(List.of(createdDelivery.getDeliveryId()), deliveryService.getUnassigned());
+    }
+
+    @Test
+    void updatedCourierLeavesQueue() throws ApiException, EntityNotFoundException, DeliveryConflictException {
+        dispatchQueue.offer(8L);
+        when(deliveryRepository.findById(8L)).thenReturn(Optional.of(createdDelivery));
+        when(deliveryRepository.save(any(Delivery.class))).thenReturn(createdDelivery);
+
+        deliveryService.updateDelivery(42L, UpdateDeliveryDto.builder().deliveryId(8L).courierId(14L).build());
+
+        assertEquals(List.of(), deliveryService.getUnassigned());
+    }
+
+    @Test
+    void queueIsEmptyAfterCouriersAreAssigned() throws EntityNotFoundException, DeliveryConflictException {
+        LongStream.range(100, 1100).forEach(dispatchQueue::offer);
+        when(deliveryRepository.findById(anyLong()))
+                .thenAnswer(invocation -> Optional.of(new Delivery().deliveryId(invocation.getArgument(0))));
+        when(deliveryRepository.save(any(Delivery.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        for (long deliveryId = 100; deliveryId < 1100; deliveryId++) {
+            deliveryService.updateDelivery(42L, UpdateDeliveryDto.builder().deliveryId(deliveryId).courierId(14L).build());
+        }
+
+        assertEquals(0, dispatchQueue.size());
+        assertEquals(List.of(), deliveryService.getUnassigned());
+    }
+
+    @Test
+    void newCourierEndsTracking() throws EntityNotFoundException, DeliveryConflictException {
+        when(deliveryRepository.findById(8L)).thenReturn(Optional.of(new Delivery().deliveryId(8L).courierId(3L)));
+        when(deliveryRepository.save(any(Delivery.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        deliveryService.updateDelivery(42L, UpdateDeliveryDto.builder().deliveryId(8L).rating(4).build());
+        verify(courierTrackingBroker, never()).endTracking(anyLong());
+
+        deliveryService.updateDelivery(42L, UpdateDeliveryDto.builder().deliveryId(8L).courierId(14L).build());
+        verify(courierTrackingBroker).endTracking(8L);
+    }
+
+    @Test
+    void deliveredEndsTracking() throws EntityNotFoundException, DeliveryConflictException {
+        when(deliveryRepository.findById(8L)).thenReturn(Optional.of(new Delivery().deliveryId(8L).courierId(3L)));
+        when(deliveryRepository.save(any(Delivery.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        deliveryService.updateDelivery(42L, UpdateDeliveryDto.builder().deliveryId(8L).delivered(true).build());
+
+        verify(courierTrackingBroker).endTracking(8L);
+    }
+
+    @Test
+    void failedCourierUpdateStaysInQueue() {
+        dispatchQueue.offer(8L);
+        when(deliveryRepository.findById(8L)).thenAnswer(invocation -> Optional.of(new Delivery().deliveryId(8L)));
+        when(deliveryRepository.save(any(Delivery.class)))
+                .thenThrow(new ObjectOptimisticLockingFailureException(Delivery.class, 8L));
+
+        assertThrows(DeliveryConflictException.class, () -> deliveryService.updateDelivery(
+                42L, UpdateDeliveryDto.builder().deliveryId(8L).courierId(14L).build()));
+        assertEquals(List.of(8L), deliveryService.getUnassigned());
+    }
+
+    @Test
+    void claimDelivery() {
+        dispatchQueue.offer(8L);
+        when(deliveryRepository.assignCourierIfUnassigned(8L, 14L)).thenReturn(1);
+        when(deliveryRepository.findById(8L)).thenReturn(Optional.of(delivery));
+
+        assertEquals(Optional.of(delivery), deliveryService.claimDelivery(14L));
+        assertEquals(Optional.empty(), deliveryService.claimDelivery(15L));
+        verify(deliveryEventBroker, times(1)).publish(delivery);
+        verify(courierTrackingBroker).endTracking(8L);
+    }
+
+    @Test
+    void claimDeliverySkipsAssignedElsewhere() {
+        dispatchQueue.offer(7L);
+        dispatchQueue.offer(8L);
+        when(deliveryRepository.assignCourierIfUnassigned(7L, 14L)).thenReturn(0);
+        when(deliveryRepository.assignCourierIfUnassigned(8L, 14L)).thenReturn(1);
+        when(deliveryRepository.findById(8L)).thenReturn(Optional.of(delivery));
+
+        assertEquals(Optional.of(delivery), deliveryService.claimDelivery(14L));
+        verify(deliveryRepository, never()).findById(7L);
+    }
+
+    @Test
+    void claimDeliveryFailureRequeues() {
+        dispatchQueue.offer(8L);
+        when(deliveryRepository.assignCourierIfUnassigned(8L, 14L)).thenThrow(new IllegalStateException());
+
+        assertThrows(IllegalStateException.class, () -> deliveryService.claimDelivery(14L));
+        assertEquals(List.of(8L), deliveryService.getUnassigned());
     }
 
     @Test
@@ -370,4 +697,36 @@ class DefaultDeliveryServiceTest {
         when(deliveryRepository.findDeliveredDeliveries()).thenReturn(deliveryList);
         assertEquals(deliveryList, deliveryService.getAllDeliveredDeliveries());
     }
-}
\ No newline at end of file
+
+    @Test
+    void recordActualPickupTimePublishesChange() {
+        OffsetDateTime time = OffsetDateTime.of(2024, 1, 6, 11, 20, 0, 0, ZoneOffset.UTC);
+        when(deliveryRepository.setActualPickupTimeIfUnset(8L, 14L, time)).thenReturn(1);
+        when(deliveryRepository.findWithDelaysByDeliveryIdIn(List.of(8L))).thenReturn(List.of(delivery));
+
+        assertTrue(deliveryService.recordActualPickupTime(8L, 14L, time));
+        verify(deliveryEventBroker).publish(delivery);
+    }
+
+    @Test
+    void recordActualDeliveryTimeEndsTracking() {
+        OffsetDateTime time = OffsetDateTime.of(2024, 1, 6, 11, 40, 0, 0, ZoneOffset.UTC);
+        when(deliveryRepository.setActualDeliveryTimeIfUnset(8L, 14L, time)).thenReturn(1);
+        when(deliveryRepository.findWithDelaysByDeliveryIdIn(List.of(8L))).thenReturn(List.of(delivery));
+
+        assertTrue(deliveryService.recordActualDeliveryTime(8L, 14L, time));
+        verify(deliveryEventBroker).publish(delivery);
+        verify(courierTrackingBroker).endTracking(8L);
+    }
+
+    @Test
+    void recordActualDeliveryTimeAlreadySet() {
+        OffsetDateTime time = OffsetDateTime.of(2024, 1, 6, 11, 40, 0, 0, ZoneOffset.UTC);
+        when(deliveryRepository.setActualDeliveryTimeIfUnset(8L, 14L, time)).thenReturn(0);
+
+        assertFalse(deliveryService.recordActualDeliveryTime(8L, 14L, time));
+        verify(deliveryRepository, never()).findWithDelaysByDeliveryIdIn(any());
+        verify(deliveryEventBroker, never()).publish(any());
+        verify(courierTrackingBroker, never()).endTracking(anyLong());
+    }
+}
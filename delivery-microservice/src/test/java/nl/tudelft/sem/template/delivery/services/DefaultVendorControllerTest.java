@@ -4,6 +4,8 @@ import delivery_microservice.model.Location;
 import delivery_microservice.model.PrivateCourier;
 import delivery_microservice.model.RadiusVendorPair;
 import delivery_microservice.model.UpdateVendorDeliveryRadiusRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import nl.tudelft.sem.template.delivery.controllers.ConditionalGet;
 import nl.tudelft.sem.template.delivery.controllers.VendorController;
 import nl.tudelft.sem.template.delivery.exceptions.LocationNotFoundException;
 import org.junit.jupiter.api.BeforeEach;
@@ -35,7 +37,8 @@ public class DefaultVendorControllerTest {
         radiusVendorPairService = Mockito.mock(RadiusVendorPairService.class);
         courierService = Mockito.mock(CourierService.class);
         authorisationService = Mockito.mock(AuthorisationService.class);
-        vendorController = new VendorController(radiusVendorPairService, courierService, authorisationService);
+        vendorController = new VendorController(radiusVendorPairService, courierService, authorisationService,
+                new ConditionalGet(new SimpleMeterRegistry()));
     }
 
     /**
@@ -107,7 +110,7 @@ public class DefaultVendorControllerTest {
         when(authorisationService.isVendor(anyLong())).thenReturn(true);
 
 
-        var response = vendorController.getDeliveryRadii(1L);
+        var response = vendorController.getDeliveryRadii(1L, null);
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(2, Objects.requireNonNull(response.getBody()).size());
@@ -118,6 +121,26 @@ public class DefaultVendorControllerTest {
 
     }
 
+    /**
+     * Test get delivery radii 304 while no radius changed.
+     */
+    @Test
+    public void testGetDeliveryRadiiNotModified() {
+        when(radiusVendorPairService.getAllRadiusVendorPairs())
+            .thenReturn(List.of(new RadiusVendorPair().vendorId(1L).radius(2)))
+            .thenReturn(List.of(new RadiusVendorPair().vendorId(1L).radius(2)))
+            .thenReturn(List.of(new RadiusVendorPair().vendorId(1L).radius(3)));
+        when(authorisationService.isUser(anyLong())).thenReturn(true);
+
+        var etag = vendorController.getDeliveryRadii(1L, null).getHeaders().getETag();
+        var unchanged = vendorController.getDeliveryRadii(1L, etag);
+        var changed = vendorController.getDeliveryRadii(1L, etag);
+
+        assertEquals(HttpStatus.NOT_MODIFIED, unchanged.getStatusCode());
+        assertEquals(HttpStatus.OK, changed.getStatusCode());
+        assertEquals(3, (int) Objects.requireNonNull(changed.getBody()).get(0).getRadius());
+    }
+
     /**
      * Test get delivery radii 403.
      */
@@ -125,7 +148,7 @@ public class DefaultVendorControllerTest {
     public void testGetDeliveryRadii403() {
         when(authorisationService.isUser(anyLong())).thenReturn(false);
 
-        var response = vendorController.getDeliveryRadii(1L);
+        var response = vendorController.getDeliveryRadii(1L, null);
 
         assertEquals(HttpStatus.FORBIDDEN, response.getStatusCode());
     }
@@ -143,13 +166,29 @@ public class DefaultVendorControllerTest {
         when(authorisationService.isUser(anyLong())).thenReturn(true);
         when(authorisationService.isVendor(anyLong())).thenReturn(true);
 
-        var response = vendorController.getVendorDeliveryRadius(1L, 1L);
+        var response = vendorController.getVendorDeliveryRadius(1L, 1L, null);
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(radiusVendorPair.getRadius(), Objects.requireNonNull(response.getBody()).getRadius());
     }
 
 
+    /**
+     * Test get vendor delivery radius 304 with a current copy.
+     */
+    @Test
+    public void testGetVendorDeliveryRadiusNotModified() {
+        when(radiusVendorPairService.getRadiusVendorPair(anyLong()))
+            .thenReturn(java.util.Optional.of(new RadiusVendorPair().vendorId(1L).radius(2)));
+        when(authorisationService.isUser(anyLong())).thenReturn(true);
+
+        var etag = vendorController.getVendorDeliveryRadius(1L, 1L, null).getHeaders().getETag();
+        var response = vendorController.getVendorDeliveryRadius(1L, 1L, "W/" + etag);
+
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertEquals(etag, response.getHeaders().getETag());
+    }
+
     /**
      * Test get vendor delivery radius 403.
      */
@@ -157,7 +196,7 @@ public class DefaultVendorControllerTest {
     public void testGetVendorDeliveryRadius403() {
         when(authorisationService.isUser(anyLong())).thenReturn(false);
 
-        var response = vendorController.getVendorDeliveryRadius(1L, 1L);
+        var response = vendorController.getVendorDeliveryRadius(1L, 1L, null);
 
         assertEquals(HttpStatus.FORBIDDEN, response.getStatusCode());
     }
@@ -171,7 +210,7 @@ public class DefaultVendorControllerTest {
         when(authorisationService.isVendor(anyLong())).thenReturn(true);
         when(radiusVendorPairService.getRadiusVendorPair(anyLong())).thenReturn(java.util.Optional.empty());
 
-        var response = vendorController.getVendorDeliveryRadius(1L, 1L);
+        var response = vendorController.getVendorDeliveryRadius(1L, 1L, null);
 
         assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
     }
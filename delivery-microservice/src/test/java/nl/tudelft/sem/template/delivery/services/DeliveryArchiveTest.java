@@ -0,0 +1,129 @@
+package nl.tudelft.sem.template.delivery.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import delivery_microservice.model.Delay;
+import delivery_microservice.model.Delivery;
+import delivery_microservice.model.Times;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeliveryArchiveTest {
+    private final AtomicInteger parsedDeliveries = new AtomicInteger();
+    private final ObjectMapper objectMapper = new ObjectMapper() {
+        @Override
+        public <T> T readValue(String content, Class<T> valueType) throws JsonProcessingException {
+            if (valueType == Delivery.class) {
+                parsedDeliveries.incrementAndGet();
+            }
+            return super.readValue(content, valueType);
+        }
+    }.findAndRegisterModules();
+
+    @TempDir
+    Path directory;
+
+    private DeliveryArchive archive;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        archive = new DeliveryArchive(objectMapper, directory);
+        archive.load();
+    }
+
+    private static Delivery delivery(long id) {
+        return new Delivery().deliveryId(id).orderId(id + 100).vendorId(1L).delivered(true).rating((int) id);
+    }
+
+    private List<Long> ids(Stream<Delivery> deliveries) {
+        try (deliveries) {
+            return deliveries.map(Delivery::getDeliveryId).collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    void publishedDeliveriesCanBeFound() throws IOException {
+        OffsetDateTime delivered = OffsetDateTime.of(2023, 11, 24, 15, 0, 0, 0, ZoneOffset.UTC);
+        Delivery withTimes = delivery(7L).times(new Times()
+                .actualDeliveryTime(delivered)
+                .delays(List.of(new Delay().description("traffic"))));
+        archive.write(List.of(delivery(9L), withTimes, delivery(3L))).publish();
+        archive.write(List.of(delivery(12L))).publish();
+
+        assertEquals(4, archive.size());
+        assertTrue(archive.contains(7L));
+        assertFalse(archive.contains(8L));
+        assertEquals(Optional.empty(), archive.find(8L));
+        Delivery found = archive.find(7L).orElseThrow();
+        assertEquals(7, found.getRating());
+        assertEquals("traffic", found.getTimes().getDelays().get(0).getDescription());
+        assertTrue(delivered.isEqual(found.getTimes().getActualDeliveryTime()));
+        assertEquals(12L, archive.find(12L).orElseThrow().getDeliveryId());
+        assertEquals(List.of(3L, 7L, 9L, 12L), ids(archive.stream()));
+    }
+
+    @Test
+    void newestCopyIsFound() throws IOException {
+        archive.write(List.of(delivery(5L).rating(1))).publish();
+        archive.write(List.of(delivery(5L).rating(2))).publish();
+
+        assertEquals(2, archive.find(5L).orElseThrow().getRating());
+    }
+
+    @Test
+    void lookupsParseOnlyTheWantedLines() throws IOException {
+        archive.write(List.of(delivery(1L), delivery(2L), delivery(3L), delivery(4L))).publish();
+        archive.write(List.of(delivery(5L), delivery(6L))).publish();
+
+        assertEquals(4L, archive.find(4L).orElseThrow().getDeliveryId());
+        assertEquals(1, parsedDeliveries.get());
+
+        List<Delivery> found = archive.findAll(List.of(6L, 4L, 2L, 8L));
+        assertEquals(List.of(2L, 4L, 6L), ids(found.stream().sorted(Comparator.comparing(Delivery::getDeliveryId))));
+        assertEquals(4, parsedDeliveries.get());
+    }
+
+    @Test
+    void discardedSegmentIsNotVisible() throws IOException {
+        archive.write(List.of(delivery(5L))).discard();
+
+        assertFalse(archive.contains(5L));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void segmentsAreReadBackAndUnfinishedOnesRemoved() throws IOException {
+        archive.write(List.of(delivery(5L), delivery(6L))).publish();
+        archive.write(List.of(delivery(8L)));
+
+        DeliveryArchive reopened = new DeliveryArchive(objectMapper, directory);
+        reopened.load();
+
+        assertEquals(List.of(5L, 6L), ids(reopened.stream()));
+        assertEquals(6L, reopened.find(6L).orElseThrow().getDeliveryId());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+        reopened.write(List.of(delivery(9L))).publish();
+        assertEquals(List.of(5L, 6L, 9L), ids(reopened.stream()));
+    }
+}
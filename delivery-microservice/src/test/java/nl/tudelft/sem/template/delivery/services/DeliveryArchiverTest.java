@@ -0,0 +1,103 @@
+package nl.tudelft.sem.template.delivery.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import delivery_microservice.model.Delay;
+import delivery_microservice.model.Delivery;
+import delivery_microservice.model.Times;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import nl.tudelft.sem.template.delivery.database.DelayRepository;
+import nl.tudelft.sem.template.delivery.database.DeliveryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DeliveryArchiverTest {
+    private final DeliveryRepository deliveryRepository = mock(DeliveryRepository.class);
+    private final DelayRepository delayRepository = mock(DelayRepository.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @TempDir
+    Path directory;
+
+    private DeliveryArchive archive;
+    private DeliveryArchiver archiver;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        archive = new DeliveryArchive(new ObjectMapper().findAndRegisterModules(), directory);
+        archive.load();
+        archiver = new DeliveryArchiver(deliveryRepository, delayRepository, archive,
+                new MockEnvironment().withProperty("archive.batchSize", "2"), meterRegistry);
+    }
+
+    private void oldDeliveries(Delivery... deliveries) {
+        List<Long> ids = List.of(deliveries[0].getDeliveryId(), deliveries[1].getDeliveryId());
+        when(deliveryRepository.findArchivableDeliveryIds(any(), any())).thenReturn(ids);
+        when(deliveryRepository.findWithDelaysByDeliveryIdIn(ids)).thenReturn(List.of(deliveries));
+    }
+
+    @Test
+    void oldDeliveriesAreMovedToArchive() {
+        Delay delay = new Delay().id(4L).description("traffic");
+        Delivery first = new Delivery().deliveryId(1L).delivered(true).times(new Times().delays(List.of(delay)));
+        Delivery second = new Delivery().deliveryId(2L).delivered(true);
+        oldDeliveries(first, second);
+
+        assertEquals(2, archiver.archive());
+
+        assertTrue(archive.contains(1L));
+        assertTrue(archive.contains(2L));
+        verify(deliveryRepository).deleteAll(List.of(first, second));
+        verify(delayRepository).deleteAll(List.of(delay));
+        assertEquals(2, meterRegistry.get("deliveries.archived").counter().count());
+        assertEquals(2, meterRegistry.get("deliveries.archive.size").gauge().value());
+    }
+
+    @Test
+    void failedDeleteLeavesNothingArchived() {
+        oldDeliveries(new Delivery().deliveryId(1L).delivered(true), new Delivery().deliveryId(2L).delivered(true));
+        doThrow(new ObjectOptimisticLockingFailureException(Delivery.class, 1L)).when(deliveryRepository).flush();
+
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> archiver.archive());
+
+        assertFalse(archive.contains(1L));
+        assertEquals(0, archive.size());
+    }
+
+    @Test
+    void alreadyArchivedIsOnlyDeleted() throws IOException {
+        Delivery first = new Delivery().deliveryId(1L).delivered(true);
+        Delivery second = new Delivery().deliveryId(2L).delivered(true);
+        archive.write(List.of(first)).publish();
+        oldDeliveries(first, second);
+
+        archiver.archive();
+
+        assertEquals(2, archive.size());
+        verify(deliveryRepository).deleteAll(List.of(first, second));
+    }
+
+    @Test
+    void nothingToArchive() {
+        assertEquals(0, archiver.archive());
+
+        verify(deliveryRepository, never()).deleteAll(any());
+    }
+}
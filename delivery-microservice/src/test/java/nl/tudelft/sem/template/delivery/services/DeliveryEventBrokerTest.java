@@ -0,0 +1,186 @@
+package nl.tudelft.sem.template.delivery.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import delivery_microservice.model.Delivery;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeliveryEventBrokerTest {
+    private final AtomicInteger serializations = new AtomicInteger();
+    private final ObjectMapper objectMapper = new ObjectMapper() {
+        @Override
+        public String writeValueAsString(Object value) throws JsonProcessingException {
+            serializations.incrementAndGet();
+            return super.writeValueAsString(value);
+        }
+    };
+    /**
+     * Holds the sending tasks until {@link #runTasks()}, like a client that has not read yet.
+     */
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final DeliveryEventBroker broker = new DeliveryEventBroker(objectMapper, tasks::add, 0, meterRegistry);
+
+    private static Delivery delivery(long id, long version, int rating) {
+        return new Delivery().deliveryId(id).version(version).rating(rating);
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private double events(String outcome) {
+        return meterRegistry.get("deliveries.events").tag("outcome", outcome).counter().count();
+    }
+
+    private double subscribers() {
+        return meterRegistry.get("deliveries.events.subscribers").gauge().value();
+    }
+
+    @Test
+    void changeIsSerializedOnceForAllSubscribers() {
+        List<String> first = new ArrayList<>();
+        List<String> second = new ArrayList<>();
+        List<String> other = new ArrayList<>();
+        broker.subscribe(1L, first::add, () -> { });
+        broker.subscribe(1L, second::add, () -> { });
+        broker.subscribe(2L, other::add, () -> { });
+
+        broker.publish(delivery(1L, 1L, 5));
+        runTasks();
+
+        assertEquals(1, serializations.get());
+        assertEquals(1, first.size());
+        assertEquals(first, second);
+        assertTrue(first.get(0).contains("\"rating\":5"));
+        assertEquals(List.of(), other);
+        assertEquals(3, subscribers());
+    }
+
+    @Test
+    void noSubscribersNoSerialization() {
+        broker.publish(delivery(1L, 1L, 5));
+
+        assertEquals(0, serializations.get());
+        assertEquals(0, tasks.size());
+    }
+
+    @Test
+    void slowSubscriberGetsLatestStateOnly() {
+        List<String> received = new ArrayList<>();
+        broker.subscribe(1L, received::add, () -> { });
+
+        broker.publish(delivery(1L, 1L, 1));
+        broker.publish(delivery(1L, 2L, 2));
+        broker.publish(delivery(1L, 3L, 3));
+        runTasks();
+
+        assertEquals(1, received.size());
+        assertTrue(received.get(0).contains("\"rating\":3"));
+        assertEquals(1, events("sent"));
+        assertEquals(2, events("conflated"));
+    }
+
+    @Test
+    void olderStateIsNotSentAfterNewerOne() {
+        List<String> received = new ArrayList<>();
+        var subscription = broker.subscribe(1L, received::add, () -> { });
+
+        broker.publish(delivery(1L, 4L, 4));
+        runTasks();
+        subscription.offer(delivery(1L, 3L, 3));
+        runTasks();
+
+        assertEquals(1, received.size());
+        assertTrue(received.get(0).contains("\"rating\":4"));
+    }
+
+    @Test
+    void failingSubscriberIsRemoved() {
+        List<String> received = new ArrayList<>();
+        broker.subscribe(1L, json -> {
+            throw new IOException("broken pipe");
+        }, () -> { });
+        broker.subscribe(1L, received::add, () -> { });
+
+        broker.publish(delivery(1L, 1L, 1));
+        runTasks();
+        broker.publish(delivery(1L, 2L, 2));
+        runTasks();
+
+        assertEquals(2, received.size());
+        assertEquals(1, events("failed"));
+        assertEquals(1, subscribers());
+    }
+
+    @Test
+    void cancelledSubscriberGetsNothing() {
+        List<String> received = new ArrayList<>();
+        var subscription = broker.subscribe(1L, received::add, () -> { });
+
+        broker.publish(delivery(1L, 1L, 1));
+        subscription.cancel();
+        subscription.cancel();
+        runTasks();
+        broker.publish(delivery(1L, 2L, 2));
+        runTasks();
+
+        assertEquals(List.of(), received);
+        assertEquals(0, subscribers());
+    }
+
+    @Test
+    void blockedSubscriberIsDroppedWithoutHoldingUpOthers() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        DeliveryEventBroker timedBroker = new DeliveryEventBroker(objectMapper, Executors.newSingleThreadExecutor(),
+                100, registry);
+        CountDownLatch neverRead = new CountDownLatch(1);
+        CountDownLatch dropped = new CountDownLatch(1);
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        try {
+            timedBroker.subscribe(1L, json -> {
+                try {
+                    neverRead.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }, dropped::countDown);
+            timedBroker.subscribe(2L, received::add, () -> { });
+            timedBroker.subscribe(2L, received::add, () -> { });
+
+            // the only sending thread takes the blocked send first
+            timedBroker.publish(delivery(1L, 1L, 1));
+            timedBroker.publish(delivery(2L, 1L, 1));
+
+            assertNotNull(received.poll(5, TimeUnit.SECONDS));
+            assertNotNull(received.poll(5, TimeUnit.SECONDS));
+            assertTrue(dropped.await(5, TimeUnit.SECONDS));
+            assertEquals(1, registry.get("deliveries.events").tag("outcome", "timedOut").counter().count());
+            assertEquals(0, registry.get("deliveries.events").tag("outcome", "failed").counter().count());
+            assertEquals(2, registry.get("deliveries.events.subscribers").gauge().value());
+        } finally {
+            timedBroker.shutdown();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package nl.tudelft.sem.template.delivery.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import delivery_microservice.model.Delay;
+import delivery_microservice.model.Delivery;
+import delivery_microservice.model.Times;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import nl.tudelft.sem.template.delivery.database.DelayRepository;
+import nl.tudelft.sem.template.delivery.database.DeliveryRepository;
+import nl.tudelft.sem.template.delivery.database.OrderStatusChangeRepository;
+import orders_microservice.api.OrderApi;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import users_microservice.api.VendorApi;
+
+import javax.persistence.EntityManager;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Times recorded by the geofence are published from a background thread, outside any transaction or request. The
+ * delivery must still reach its subscribers together with its delays.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class DeliveryTimeRecordingTest {
+    @Autowired
+    private DeliveryRepository deliveryRepository;
+
+    @Autowired
+    private DelayRepository delayRepository;
+
+    @Autowired
+    private OrderStatusChangeRepository orderStatusChangeRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @AfterEach
+    void tearDown() {
+        deliveryRepository.deleteAll();
+        delayRepository.deleteAll();
+    }
+
+    @Test
+    void recordedTimeIsPublishedWithDelays() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        DeliveryEventBroker deliveryEventBroker = new DeliveryEventBroker(new ObjectMapper().findAndRegisterModules(),
+                Runnable::run, 0, meterRegistry);
+        DeliveryArchive deliveryArchive = mock(DeliveryArchive.class);
+        DeliveryService deliveryService = new DefaultDeliveryService(deliveryRepository, delayRepository,
+                new VendorDirectory(mock(VendorApi.class), new MockEnvironment()), entityManager,
+                new AnalyticsAggregator(deliveryRepository, entityManager, deliveryArchive),
+                new DispatchQueue(deliveryRepository),
+                new OrderStatusOutbox(deliveryRepository, orderStatusChangeRepository, mock(OrderApi.class),
+                        new MockEnvironment(), meterRegistry),
+                deliveryEventBroker, deliveryArchive, mock(CourierTrackingBroker.class));
+
+        Delay delay = delayRepository.save(new Delay().description("traffic jam"));
+        long deliveryId = deliveryRepository.save(new Delivery()
+                .orderId(1L)
+                .vendorId(1L)
+                .courierId(2L)
+                .delivered(false)
+                .times(new Times().delays(new ArrayList<>(List.of(delay))))).getDeliveryId();
+        List<String> received = new ArrayList<>();
+        deliveryEventBroker.subscribe(deliveryId, received::add, () -> { });
+
+        assertTrue(deliveryService.recordActualPickupTime(deliveryId, 2L,
+                OffsetDateTime.of(2024, 1, 6, 11, 20, 0, 0, ZoneOffset.UTC)));
+
+        assertEquals(1, received.size());
+        assertTrue(received.get(0).contains("actualPickupTime"));
+        assertTrue(received.get(0).contains("traffic jam"));
+        assertEquals(0, meterRegistry.get("deliveries.events").tag("outcome", "failed").counter().count());
+    }
+}
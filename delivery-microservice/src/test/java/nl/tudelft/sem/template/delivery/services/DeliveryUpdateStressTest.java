@@ -0,0 +1,125 @@
+package nl.tudelft.sem.template.delivery.services;
+
+import delivery_microservice.model.Delivery;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import nl.tudelft.sem.template.delivery.database.DelayRepository;
+import nl.tudelft.sem.template.delivery.database.DeliveryRepository;
+import nl.tudelft.sem.template.delivery.database.OrderStatusChangeRepository;
+import nl.tudelft.sem.template.delivery.dtos.UpdateDeliveryDto;
+import nl.tudelft.sem.template.delivery.exceptions.DeliveryConflictException;
+import orders_microservice.api.OrderApi;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import users_microservice.api.VendorApi;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Several threads updating the same few deliveries, half of them the rating and half the courier. Every update
+ * writes a value no other update writes, so every saved update must raise the version by exactly one; otherwise an
+ * update was silently overwritten.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class DeliveryUpdateStressTest {
+    private static final int THREADS = 8;
+    private static final int UPDATES_PER_THREAD = 200;
+    private static final int DELIVERIES = 4;
+
+    @Autowired
+    private DeliveryRepository deliveryRepository;
+
+    @Autowired
+    private DelayRepository delayRepository;
+
+    @Autowired
+    private OrderStatusChangeRepository orderStatusChangeRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @AfterEach
+    void tearDown() {
+        deliveryRepository.deleteAll();
+    }
+
+    @Test
+    void concurrentUpdatesAreNeverLost() throws Exception {
+        OrderStatusOutbox orderStatusOutbox = new OrderStatusOutbox(deliveryRepository, orderStatusChangeRepository,
+                mock(OrderApi.class), new MockEnvironment(), new SimpleMeterRegistry());
+        DeliveryArchive deliveryArchive = mock(DeliveryArchive.class);
+        DeliveryService deliveryService = new DefaultDeliveryService(deliveryRepository, delayRepository,
+                new VendorDirectory(mock(VendorApi.class), new MockEnvironment()), entityManager,
+                new AnalyticsAggregator(deliveryRepository, entityManager, deliveryArchive),
+                new DispatchQueue(deliveryRepository), orderStatusOutbox, mock(DeliveryEventBroker.class),
+                deliveryArchive, mock(CourierTrackingBroker.class));
+
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < DELIVERIES; i++) {
+            ids.add(deliveryRepository.save(new Delivery().orderId((long) i).vendorId(1L).delivered(false))
+                    .getDeliveryId());
+        }
+
+        AtomicLong saved = new AtomicLong();
+        AtomicLong conflicts = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                boolean rating = t % 2 == 0;
+                int firstValue = t * UPDATES_PER_THREAD + 1;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < UPDATES_PER_THREAD; i++) {
+                        ThreadLocalRandom random = ThreadLocalRandom.current();
+                        var dto = UpdateDeliveryDto.builder().deliveryId(ids.get(random.nextInt(DELIVERIES)));
+                        if (rating) {
+                            dto.rating(firstValue + i);
+                        } else {
+                            dto.courierId((long) firstValue + i);
+                        }
+                        try {
+                            deliveryService.updateDelivery(1L, dto.build());
+                            saved.incrementAndGet();
+                        } catch (DeliveryConflictException e) {
+                            conflicts.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(2, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        long versions = 0;
+        for (Long id : ids) {
+            versions += deliveryRepository.findById(id).orElseThrow().getVersion();
+        }
+        assertEquals(THREADS * UPDATES_PER_THREAD, saved.get() + conflicts.get());
+        assertEquals(saved.get(), versions);
+
+        System.out.printf("%d updates saved, %d conflicts in %d ms (%.0f updates/s)%n",
+                saved.get(), conflicts.get(), elapsedMs, saved.get() * 1000.0 / Math.max(elapsedMs, 1));
+    }
+}
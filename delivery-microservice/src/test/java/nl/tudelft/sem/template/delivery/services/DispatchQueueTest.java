@@ -0,0 +1,101 @@
+package nl.tudelft.sem.template.delivery.services;
+
+import nl.tudelft.sem.template.delivery.database.DeliveryRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DispatchQueueTest {
+    private final DeliveryRepository deliveryRepository = mock(DeliveryRepository.class);
+    private final DispatchQueue dispatchQueue = new DispatchQueue(deliveryRepository);
+
+    @Test
+    void rebuildKeepsDatabaseOrder() {
+        when(deliveryRepository.findUnassignedDeliveryIds()).thenReturn(List.of(3L, 5L, 9L));
+        dispatchQueue.rebuild();
+
+        assertEquals(List.of(3L, 5L, 9L), dispatchQueue.snapshot());
+        assertEquals(3L, dispatchQueue.poll());
+        assertEquals(List.of(5L, 9L), dispatchQueue.snapshot());
+    }
+
+    @Test
+    void removedIdIsSkipped() {
+        dispatchQueue.offer(1L);
+        dispatchQueue.offer(2L);
+        dispatchQueue.remove(1L);
+
+        assertEquals(List.of(2L), dispatchQueue.snapshot());
+        assertEquals(2L, dispatchQueue.poll());
+        assertNull(dispatchQueue.poll());
+    }
+
+    @Test
+    void removedIdLeavesNothingBehind() {
+        LongStream.range(0, 1000).forEach(dispatchQueue::offer);
+        LongStream.range(0, 1000).forEach(dispatchQueue::remove);
+
+        assertEquals(0, dispatchQueue.size());
+        assertEquals(List.of(), dispatchQueue.snapshot());
+        assertNull(dispatchQueue.poll());
+    }
+
+    @Test
+    void offeredTwiceIsHandedOutOnce() {
+        dispatchQueue.offer(1L);
+        dispatchQueue.remove(1L);
+        dispatchQueue.offer(1L);
+        dispatchQueue.offer(1L);
+
+        assertEquals(List.of(1L), dispatchQueue.snapshot());
+        assertEquals(1L, dispatchQueue.poll());
+        assertNull(dispatchQueue.poll());
+    }
+
+    @Test
+    void concurrentPollsHandOutEveryIdOnce() throws Exception {
+        final int ids = 10_000;
+        final int threads = 16;
+        LongStream.range(0, ids).forEach(dispatchQueue::offer);
+
+        Set<Long> handedOut = ConcurrentHashMap.newKeySet();
+        AtomicInteger duplicates = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    Long id;
+                    while ((id = dispatchQueue.poll()) != null) {
+                        if (!handedOut.add(id)) {
+                            duplicates.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(0, duplicates.get());
+        assertEquals(LongStream.range(0, ids).boxed().collect(Collectors.toSet()), handedOut);
+    }
+}
@@ -7,8 +7,17 @@ import nl.tudelft.sem.template.delivery.external.FakeCourierLocationService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class FakeCourierLocationServiceTest {
     private FakeCourierLocationService courierLocationService;
@@ -46,4 +55,55 @@ public class FakeCourierLocationServiceTest {
         assertThat(courierLocationService.getLocationOfCourier(1L).getAddress())
                 .isEqualTo("Address 1");
     }
+
+    @Test
+    void testPositionNotFound() {
+        assertThrows(EntityNotFoundException.class, () -> courierLocationService.getPositionOfCourier(1L));
+    }
+
+    @Test
+    void testNewerPositionReplacesOlder() throws EntityNotFoundException {
+        assertTrue(courierLocationService.updatePositionOfCourier(1L, new CourierPosition(52.0, 4.3, 1000L)));
+        assertTrue(courierLocationService.updatePositionOfCourier(1L, new CourierPosition(52.1, 4.4, 2000L)));
+
+        assertEquals(new CourierPosition(52.1, 4.4, 2000L), courierLocationService.getPositionOfCourier(1L));
+    }
+
+    @Test
+    void testOutOfOrderPositionIsIgnored() throws EntityNotFoundException {
+        courierLocationService.updatePositionOfCourier(1L, new CourierPosition(52.1, 4.4, 2000L));
+
+        assertFalse(courierLocationService.updatePositionOfCourier(1L, new CourierPosition(52.0, 4.3, 1000L)));
+        assertFalse(courierLocationService.updatePositionOfCourier(1L, new CourierPosition(52.0, 4.3, 2000L)));
+        assertEquals(new CourierPosition(52.1, 4.4, 2000L), courierLocationService.getPositionOfCourier(1L));
+    }
+
+    @Test
+    void testConcurrentReportsKeepNewestPosition() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                int offset = thread;
+                futures.add(executor.submit(() -> {
+                    for (long time = offset; time < 10_000; time += 4) {
+                        for (long courierId = 0; courierId < 10; courierId++) {
+                            courierLocationService.updatePositionOfCourier(courierId,
+                                    new CourierPosition(courierId, offset, time));
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        for (long courierId = 0; courierId < 10; courierId++) {
+            assertEquals(new CourierPosition(courierId, 3, 9999L),
+                    courierLocationService.getPositionOfCourier(courierId));
+        }
+    }
 }
@@ -0,0 +1,175 @@
+package nl.tudelft.sem.template.delivery.services;
+
+import delivery_microservice.model.Delivery;
+import delivery_microservice.model.Location;
+import delivery_microservice.model.Locations;
+import delivery_microservice.model.Times;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import nl.tudelft.sem.template.delivery.external.FakeGeocodingData;
+import nl.tudelft.sem.template.delivery.external.FakeGeocodingService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class GeofenceProcessorTest {
+    private static final long COURIER = 14L;
+    // Mekelweg 4 and Brabantse Turfmarkt 78, about 1.5 km apart
+    private static final Coordinate VENDOR = new Coordinate(51.99882, 4.37354);
+    private static final Coordinate CUSTOMER = new Coordinate(52.01045, 4.36077);
+
+    private final DeliveryService deliveryService = mock(DeliveryService.class);
+    private final FakeGeocodingService geocodingService = new FakeGeocodingService(new FakeGeocodingData());
+    /**
+     * Holds the background tasks until {@link #runTasks()}.
+     */
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final GeofenceProcessor processor = new GeofenceProcessor(deliveryService, geocodingService, tasks::add,
+            clock::get, 50, 30_000, meterRegistry);
+
+    @BeforeEach
+    void setup() {
+        geocodingService.setLocationCoordinates(vendorLocation(), VENDOR);
+        geocodingService.setLocationCoordinates(customerLocation(), CUSTOMER);
+        when(deliveryService.recordActualPickupTime(anyLong(), anyLong(), any())).thenReturn(true);
+        when(deliveryService.recordActualDeliveryTime(anyLong(), anyLong(), any())).thenReturn(true);
+    }
+
+    private static Location vendorLocation() {
+        return new Location().country("Netherlands").city("Delft").address("Mekelweg 4").postalCode("2628 CD");
+    }
+
+    private static Location customerLocation() {
+        return new Location().country("Netherlands").city("Delft").address("Brabantse Turfmarkt 78")
+                .postalCode("2611 CP");
+    }
+
+    private static Delivery delivery(long id) {
+        return new Delivery().deliveryId(id).courierId(COURIER).locations(new Locations()
+                .vendorCountry("Netherlands").vendorCity("Delft").vendorAddress("Mekelweg 4")
+                .vendorPostalCode("2628 CD")
+                .customerCountry("Netherlands").customerCity("Delft").customerAddress("Brabantse Turfmarkt 78")
+                .customerPostalCode("2611 CP"));
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private void report(Coordinate coordinate, long timestamp) {
+        processor.onPosition(COURIER, new CourierPosition(coordinate.getLatitude(), coordinate.getLongitude(),
+                timestamp));
+        runTasks();
+    }
+
+    private static OffsetDateTime time(long timestamp) {
+        return OffsetDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneOffset.UTC);
+    }
+
+    @Test
+    void pickupThenDeliveryAreRecorded() {
+        when(deliveryService.getActiveDeliveriesByCourierId(COURIER)).thenReturn(List.of(delivery(8L)));
+
+        // passing the customer before the pickup records nothing
+        report(CUSTOMER, 1000L);
+        // 30 meters north of the vendor
+        report(new Coordinate(VENDOR.getLatitude() + 0.00027, VENDOR.getLongitude()), 2000L);
+        report(VENDOR, 3000L);
+        report(new Coordinate(52.005, 4.367), 4000L);
+        report(CUSTOMER, 5000L);
+        report(CUSTOMER, 6000L);
+
+        verify(deliveryService).recordActualPickupTime(8L, COURIER, time(2000L));
+        verify(deliveryService).recordActualDeliveryTime(8L, COURIER, time(5000L));
+        assertEquals(1, meterRegistry.get("geofence.arrivals").tag("stop", "vendor").counter().count());
+        assertEquals(1, meterRegistry.get("geofence.arrivals").tag("stop", "customer").counter().count());
+    }
+
+    @Test
+    void positionOutsideRadiusRecordsNothing() {
+        when(deliveryService.getActiveDeliveriesByCourierId(COURIER)).thenReturn(List.of(delivery(8L)));
+
+        // 60 meters east of the vendor
+        report(new Coordinate(VENDOR.getLatitude(), VENDOR.getLongitude() + 0.00087), 1000L);
+
+        verify(deliveryService, never()).recordActualPickupTime(anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void alreadyPickedUpDeliveryOnlyGetsDeliveryTime() {
+        Delivery delivery = delivery(8L).times(new Times().actualPickupTime(time(0L)));
+        when(deliveryService.getActiveDeliveriesByCourierId(COURIER)).thenReturn(List.of(delivery));
+
+        report(VENDOR, 1000L);
+        report(CUSTOMER, 2000L);
+
+        verify(deliveryService, never()).recordActualPickupTime(anyLong(), anyLong(), any());
+        verify(deliveryService).recordActualDeliveryTime(8L, COURIER, time(2000L));
+    }
+
+    @Test
+    void deliveriesAreReadOncePerRefreshInterval() {
+        when(deliveryService.getActiveDeliveriesByCourierId(COURIER)).thenReturn(List.of());
+
+        for (int i = 0; i < 100; i++) {
+            report(VENDOR, i * 1000L);
+            clock.addAndGet(100);
+        }
+        verify(deliveryService, times(1)).getActiveDeliveriesByCourierId(COURIER);
+
+        // a delivery assigned in the meantime is seen after the interval
+        when(deliveryService.getActiveDeliveriesByCourierId(COURIER)).thenReturn(List.of(delivery(9L)));
+        clock.addAndGet(30_000);
+        report(VENDOR, 200_000L);
+
+        verify(deliveryService, times(2)).getActiveDeliveriesByCourierId(COURIER);
+        verify(deliveryService).recordActualPickupTime(9L, COURIER, time(200_000L));
+        assertEquals(2, meterRegistry.get("geofence.refreshes").counter().count());
+    }
+
+    @Test
+    void failedRecordIsRetriedOnNextPosition() {
+        when(deliveryService.getActiveDeliveriesByCourierId(COURIER)).thenReturn(List.of(delivery(8L)));
+        when(deliveryService.recordActualPickupTime(anyLong(), anyLong(), any()))
+                .thenThrow(new IllegalStateException("database down"))
+                .thenReturn(true);
+
+        report(VENDOR, 1000L);
+        report(VENDOR, 2000L);
+
+        verify(deliveryService).recordActualPickupTime(8L, COURIER, time(2000L));
+    }
+
+    @Test
+    void idleCouriersAreForgotten() {
+        when(deliveryService.getActiveDeliveriesByCourierId(COURIER)).thenReturn(List.of());
+        report(VENDOR, 1000L);
+        processor.evictIdle();
+        assertEquals(1, processor.size());
+
+        clock.addAndGet(60_000);
+        processor.evictIdle();
+
+        assertEquals(0, processor.size());
+    }
+}
@@ -0,0 +1,139 @@
+package nl.tudelft.sem.template.delivery.services;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import users_microservice.model.UsersGetUserTypeIdGet200Response.UserTypeEnum;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+public class JwtAuthorisationServiceTest {
+    private static final String SECRET = "testSecret";
+
+    @Mock
+    private DefaultAuthorisationService remoteMock;
+
+    private MockHttpServletRequest request;
+
+    private JwtAuthorisationService authorisationService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        authorisationService = new JwtAuthorisationService(
+                new MockEnvironment().withProperty("jwt.secret", SECRET), remoteMock);
+        request = new MockHttpServletRequest();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    private static String token(long userId, String role, String secret, long expiresInMs) {
+        return Jwts.builder()
+                .setSubject(String.valueOf(userId))
+                .claim(JwtAuthorisationService.ROLE_CLAIM, role)
+                .setExpiration(new Date(System.currentTimeMillis() + expiresInMs))
+                .signWith(SignatureAlgorithm.HS256, secret.getBytes(StandardCharsets.UTF_8))
+                .compact();
+    }
+
+    private void authenticate(String token) {
+        request.addHeader(HttpHeaders.AUTHORIZATION, "Bearer " + token);
+    }
+
+    @Test
+    void testCallerAnsweredFromToken() {
+        authenticate(token(1L, UserTypeEnum.VENDOR.getValue(), SECRET, 60_000));
+
+        assertTrue(authorisationService.isVendor(1L));
+        assertTrue(authorisationService.isUser(1L));
+        assertFalse(authorisationService.isCourier(1L));
+        verifyNoInteractions(remoteMock);
+    }
+
+    @Test
+    void testAdminInToken() {
+        authenticate(token(1L, UserTypeEnum.ADMIN.getValue(), SECRET, 60_000));
+
+        assertTrue(authorisationService.isCustomer(1L));
+        assertTrue(authorisationService.isCourier(1L));
+        verifyNoInteractions(remoteMock);
+    }
+
+    @Test
+    void testOtherIdDelegatedToRemote() {
+        authenticate(token(1L, UserTypeEnum.VENDOR.getValue(), SECRET, 60_000));
+        when(remoteMock.getUserType(2L)).thenReturn(UserTypeEnum.COURIER);
+
+        assertTrue(authorisationService.isCourier(2L));
+        verify(remoteMock).getUserType(2L);
+    }
+
+    @Test
+    void testWrongSignature() {
+        authenticate(token(1L, UserTypeEnum.VENDOR.getValue(), "otherSecret", 60_000));
+
+        assertNull(authorisationService.getPrincipal(request));
+        assertFalse(authorisationService.isVendor(1L));
+    }
+
+    @Test
+    void testExpiredToken() {
+        authenticate(token(1L, UserTypeEnum.VENDOR.getValue(), SECRET, -60_000));
+
+        assertNull(authorisationService.getPrincipal(request));
+        assertFalse(authorisationService.isVendor(1L));
+    }
+
+    @Test
+    void testUnknownRole() {
+        authenticate(token(1L, "Pilot", SECRET, 60_000));
+
+        assertNull(authorisationService.getPrincipal(request));
+    }
+
+    @Test
+    void testNoToken() {
+        assertNull(authorisationService.getPrincipal(request));
+        assertFalse(authorisationService.isVendor(1L));
+    }
+
+    @Test
+    void testPrincipalParsedOncePerRequest() {
+        authenticate(token(3L, UserTypeEnum.CUSTOMER.getValue(), SECRET, 60_000));
+
+        var principal = authorisationService.getPrincipal(request);
+        assertEquals(3L, principal.getUserId());
+        assertEquals(UserTypeEnum.CUSTOMER, principal.getUserType());
+        assertTrue(principal == authorisationService.getPrincipal(request));
+    }
+
+    @Test
+    void testInvalidId() {
+        assertFalse(authorisationService.isValid(-1L));
+        assertFalse(authorisationService.isValid(null));
+        assertFalse(authorisationService.isAdmin(-1L));
+        verifyNoInteractions(remoteMock);
+    }
+}
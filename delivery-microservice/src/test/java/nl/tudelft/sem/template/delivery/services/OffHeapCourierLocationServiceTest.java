@@ -0,0 +1,139 @@
+package nl.tudelft.sem.template.delivery.services;
+
+import delivery_microservice.model.Location;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import nl.tudelft.sem.template.delivery.exceptions.CourierLocationStoreFullException;
+import nl.tudelft.sem.template.delivery.exceptions.EntityNotFoundException;
+import nl.tudelft.sem.template.delivery.external.FakeCourierLocationData;
+import nl.tudelft.sem.template.delivery.external.FakeCourierLocationService;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapCourierLocationServiceTest {
+    private final FakeCourierLocationService addressService = new FakeCourierLocationService(
+            new FakeCourierLocationData());
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final OffHeapCourierLocationService service = new OffHeapCourierLocationService(addressService, 16,
+            meterRegistry);
+
+    @Test
+    void positionNotFound() {
+        assertThrows(EntityNotFoundException.class, () -> service.getPositionOfCourier(1L));
+        assertFalse(service.readPositionOfCourier(1L, (latitude, longitude, timestamp) -> {
+            throw new AssertionError();
+        }));
+        assertFalse(service.readPositionOfCourier(-1L, (latitude, longitude, timestamp) -> {
+            throw new AssertionError();
+        }));
+    }
+
+    @Test
+    void newerPositionReplacesOlder() throws EntityNotFoundException {
+        assertTrue(service.updatePositionOfCourier(0L, new CourierPosition(52.0, 4.3, 1000L)));
+        assertTrue(service.updatePositionOfCourier(0L, 52.1, -4.4, 2000L));
+
+        assertEquals(new CourierPosition(52.1, -4.4, 2000L), service.getPositionOfCourier(0L));
+        assertEquals(1, service.size());
+    }
+
+    @Test
+    void outOfOrderPositionIsIgnored() throws EntityNotFoundException {
+        service.updatePositionOfCourier(1L, 52.1, 4.4, 2000L);
+
+        assertFalse(service.updatePositionOfCourier(1L, 52.0, 4.3, 1000L));
+        assertFalse(service.updatePositionOfCourier(1L, 52.0, 4.3, 2000L));
+        assertEquals(new CourierPosition(52.1, 4.4, 2000L), service.getPositionOfCourier(1L));
+    }
+
+    @Test
+    void probedCouriersKeepTheirOwnPositions() throws EntityNotFoundException {
+        for (long courierId = 0; courierId < 12; courierId++) {
+            service.updatePositionOfCourier(courierId * 16, courierId, -courierId, courierId + 1);
+        }
+
+        for (long courierId = 0; courierId < 12; courierId++) {
+            assertEquals(new CourierPosition(courierId, -courierId, courierId + 1),
+                    service.getPositionOfCourier(courierId * 16));
+        }
+    }
+
+    @Test
+    void fullStoreRefusesNewCouriers() {
+        for (long courierId = 0; courierId < 12; courierId++) {
+            service.updatePositionOfCourier(courierId, 52.0, 4.3, 1000L);
+        }
+
+        assertThrows(CourierLocationStoreFullException.class,
+                () -> service.updatePositionOfCourier(12L, 52.0, 4.3, 1000L));
+        assertThrows(CourierLocationStoreFullException.class,
+                () -> service.updatePositionOfCourier(13L, 52.0, 4.3, 1000L));
+        // known couriers can still report
+        assertTrue(service.updatePositionOfCourier(11L, 52.0, 4.3, 2000L));
+        assertEquals(2, meterRegistry.get("courier.locations.rejected").counter().count());
+    }
+
+    @Test
+    void capacityMustBePowerOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new OffHeapCourierLocationService(addressService, 100,
+                meterRegistry));
+        assertThrows(IllegalArgumentException.class, () -> new OffHeapCourierLocationService(addressService,
+                2 * OffHeapCourierLocationService.MAX_CAPACITY, meterRegistry));
+        assertThrows(IllegalArgumentException.class, () -> service.updatePositionOfCourier(-1L, 52.0, 4.3, 1L));
+    }
+
+    @Test
+    void addressesComeFromTheGpsService() throws EntityNotFoundException {
+        addressService.setLocationOfCourier(1L, new Location().address("Address 1"));
+
+        assertEquals("Address 1", service.getLocationOfCourier(1L).getAddress());
+    }
+
+    @Test
+    void concurrentReportsKeepNewestPositionAndReadsAreNeverTorn() throws Exception {
+        OffHeapCourierLocationService large = new OffHeapCourierLocationService(addressService, 64,
+                meterRegistry);
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                int offset = thread;
+                futures.add(executor.submit(() -> {
+                    for (long time = offset; time < 20_000; time += 4) {
+                        for (long courierId = 0; courierId < 10; courierId++) {
+                            // every field derived from the time, so a torn read is visible
+                            large.updatePositionOfCourier(courierId, time, -time, time);
+                        }
+                    }
+                }));
+            }
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    large.readPositionOfCourier(i % 10, (latitude, longitude, timestamp) -> {
+                        if (latitude != timestamp || longitude != -timestamp) {
+                            throw new AssertionError("torn read");
+                        }
+                    });
+                }
+            }));
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        for (long courierId = 0; courierId < 10; courierId++) {
+            assertEquals(new CourierPosition(19_999, -19_999, 19_999L), large.getPositionOfCourier(courierId));
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package nl.tudelft.sem.template.delivery.services;
+
+import delivery_microservice.model.OrderStatusChange;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import nl.tudelft.sem.template.delivery.database.DeliveryRepository;
+import nl.tudelft.sem.template.delivery.database.OrderStatusChangeRepository;
+import orders_microservice.ApiException;
+import orders_microservice.api.OrderApi;
+import orders_microservice.model.Order;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OrderStatusOutboxTest {
+    private final OrderStatusChangeRepository orderStatusChangeRepository = mock(OrderStatusChangeRepository.class);
+    private final OrderApi orderApi = mock(OrderApi.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final OrderStatusOutbox outbox = new OrderStatusOutbox(mock(DeliveryRepository.class),
+            orderStatusChangeRepository, orderApi,
+            new MockEnvironment()
+                    .withProperty("orders.outbox.retryBaseMs", "1000")
+                    .withProperty("orders.outbox.retryMaxMs", "5000")
+                    .withProperty("orders.outbox.maxAttempts", "3"),
+            meterRegistry);
+
+    private static OrderStatusChange change(long id, long orderId, Order.StatusEnum status) {
+        return new OrderStatusChange()
+                .id(id)
+                .orderId(orderId)
+                .userId(42L)
+                .status(status.name())
+                .attempts(0)
+                .nextAttemptAt(OffsetDateTime.now());
+    }
+
+    private double changes(String outcome) {
+        return meterRegistry.get("orders.outbox.changes").tag("outcome", outcome).counter().count();
+    }
+
+    @Test
+    void newestChangePerOrderIsSent() throws ApiException {
+        when(orderStatusChangeRepository.findDue(any(), any())).thenReturn(List.of(
+                change(1L, 8L, Order.StatusEnum.ACCEPTED),
+                change(2L, 9L, Order.StatusEnum.ACCEPTED),
+                change(3L, 8L, Order.StatusEnum.GIVEN_TO_COURIER)));
+        when(orderApi.orderOrderIDGet(8L)).thenReturn(List.of(new Order().orderID(8L)));
+        when(orderApi.orderOrderIDGet(9L)).thenReturn(List.of(new Order().orderID(9L)));
+
+        outbox.dispatch();
+
+        verify(orderApi, times(1)).orderPut(42L, new Order().orderID(8L).status(Order.StatusEnum.GIVEN_TO_COURIER));
+        verify(orderApi, times(1)).orderPut(42L, new Order().orderID(9L).status(Order.StatusEnum.ACCEPTED));
+        verify(orderStatusChangeRepository).deleteSentChanges(8L, 3L);
+        verify(orderStatusChangeRepository).deleteSentChanges(9L, 2L);
+        assertEquals(2, changes("sent"));
+        assertEquals(1, changes("coalesced"));
+    }
+
+    @Test
+    void failedChangeIsRetriedLater() throws ApiException {
+        OrderStatusChange failing = change(5L, 8L, Order.StatusEnum.ACCEPTED);
+        when(orderStatusChangeRepository.findDue(any(), any())).thenReturn(List.of(failing));
+        when(orderApi.orderOrderIDGet(8L)).thenThrow(new ApiException(503, "unavailable"));
+        OffsetDateTime before = OffsetDateTime.now();
+
+        outbox.dispatch();
+
+        ArgumentCaptor<Iterable<OrderStatusChange>> captor = ArgumentCaptor.forClass(Iterable.class);
+        verify(orderStatusChangeRepository).saveAll(captor.capture());
+        assertEquals(List.of(failing), captor.getValue());
+        assertEquals(1, failing.getAttempts());
+        assertTrue(failing.getNextAttemptAt().isAfter(before.plusNanos(999_000_000L)));
+        verify(orderStatusChangeRepository).deleteSentChanges(8L, 4L);
+        verify(orderStatusChangeRepository, never()).deleteSentChanges(8L, 5L);
+        assertEquals(1, changes("failed"));
+    }
+
+    @Test
+    void unexpectedFailureDoesNotBlockLaterChanges() throws ApiException {
+        OrderStatusChange failing = change(5L, 8L, Order.StatusEnum.ACCEPTED).status("NOT_A_STATUS");
+        when(orderStatusChangeRepository.findDue(any(), any()))
+                .thenReturn(List.of(failing, change(6L, 9L, Order.StatusEnum.ACCEPTED)));
+        when(orderApi.orderOrderIDGet(8L)).thenReturn(List.of(new Order().orderID(8L)));
+        when(orderApi.orderOrderIDGet(9L)).thenReturn(List.of(new Order().orderID(9L)));
+        OffsetDateTime before = OffsetDateTime.now();
+
+        outbox.dispatch();
+
+        verify(orderApi).orderPut(42L, new Order().orderID(9L).status(Order.StatusEnum.ACCEPTED));
+        verify(orderStatusChangeRepository).deleteSentChanges(9L, 6L);
+        ArgumentCaptor<Iterable<OrderStatusChange>> captor = ArgumentCaptor.forClass(Iterable.class);
+        verify(orderStatusChangeRepository).saveAll(captor.capture());
+        assertEquals(List.of(failing), captor.getValue());
+        assertEquals(1, failing.getAttempts());
+        assertTrue(failing.getNextAttemptAt().isAfter(before.plusNanos(999_000_000L)));
+        assertEquals(1, changes("sent"));
+        assertEquals(1, changes("failed"));
+    }
+
+    @Test
+    void changeIsGivenUpAfterMaxAttempts() throws ApiException {
+        OrderStatusChange failing = change(5L, 8L, Order.StatusEnum.ACCEPTED).attempts(2);
+        when(orderStatusChangeRepository.findDue(any(), any())).thenReturn(List.of(failing));
+        when(orderApi.orderOrderIDGet(8L)).thenThrow(new ApiException(503, "unavailable"));
+
+        outbox.dispatch();
+
+        assertEquals(3, failing.getAttempts());
+        assertNull(failing.getNextAttemptAt());
+        verify(orderStatusChangeRepository).saveAll(List.of(failing));
+        assertEquals(1, changes("abandoned"));
+    }
+
+    @Test
+    void missingOrderIsDropped() throws ApiException {
+        when(orderStatusChangeRepository.findDue(any(), any()))
+                .thenReturn(List.of(change(1L, 8L, Order.StatusEnum.ACCEPTED)));
+        when(orderApi.orderOrderIDGet(8L)).thenReturn(List.of());
+
+        outbox.dispatch();
+
+        verify(orderApi, never()).orderPut(any(), any());
+        verify(orderStatusChangeRepository).deleteSentChanges(8L, 1L);
+    }
+
+    @Test
+    void retryDelayDoublesUpToMaximum() {
+        assertEquals(1000, outbox.retryDelayMs(1));
+        assertEquals(2000, outbox.retryDelayMs(2));
+        assertEquals(4000, outbox.retryDelayMs(3));
+        assertEquals(5000, outbox.retryDelayMs(4));
+        assertEquals(5000, outbox.retryDelayMs(100));
+    }
+}
@@ -0,0 +1,75 @@
+package nl.tudelft.sem.template.delivery.services;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import users_microservice.ApiException;
+import users_microservice.api.VendorApi;
+import users_microservice.model.Vendor;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class VendorDirectoryTest {
+    private final VendorApi vendorApi = mock(VendorApi.class);
+    private final Vendor first = new Vendor().id(1L).name("First");
+    private final Vendor second = new Vendor().id(2L).name("Second");
+
+    @Test
+    void lookupServedFromDirectory() throws ApiException {
+        when(vendorApi.vendorsVerifiedGet()).thenReturn(List.of(first, second));
+        VendorDirectory directory = new VendorDirectory(vendorApi, new MockEnvironment());
+
+        assertEquals(Optional.of(first), directory.getVendor(1L));
+        assertEquals(Optional.of(second), directory.getVendor(2L));
+        assertEquals(Optional.of(first), directory.getVendor(1L));
+        verify(vendorApi, times(1)).vendorsVerifiedGet();
+    }
+
+    @Test
+    void missRefreshesDirectory() throws ApiException {
+        when(vendorApi.vendorsVerifiedGet()).thenReturn(List.of(first)).thenReturn(List.of(first, second));
+        VendorDirectory directory = new VendorDirectory(
+                vendorApi, new MockEnvironment().withProperty("vendors.directory.minMissRefreshMs", "0"));
+
+        directory.scheduledRefresh();
+        assertEquals(Optional.of(second), directory.getVendor(2L));
+        verify(vendorApi, times(2)).vendorsVerifiedGet();
+    }
+
+    @Test
+    void missRefreshIsRateLimited() throws ApiException {
+        when(vendorApi.vendorsVerifiedGet()).thenReturn(List.of(first));
+        VendorDirectory directory = new VendorDirectory(vendorApi, new MockEnvironment());
+
+        assertTrue(directory.getVendor(77L).isEmpty());
+        assertTrue(directory.getVendor(77L).isEmpty());
+        assertTrue(directory.getVendor(78L).isEmpty());
+        verify(vendorApi, times(1)).vendorsVerifiedGet();
+    }
+
+    @Test
+    void failedScheduledRefreshKeepsDirectory() throws ApiException {
+        when(vendorApi.vendorsVerifiedGet()).thenReturn(List.of(first)).thenThrow(new ApiException(503, "down"));
+        VendorDirectory directory = new VendorDirectory(vendorApi, new MockEnvironment());
+
+        directory.scheduledRefresh();
+        directory.scheduledRefresh();
+        assertEquals(Optional.of(first), directory.getVendor(1L));
+    }
+
+    @Test
+    void failedMissRefreshThrows() throws ApiException {
+        when(vendorApi.vendorsVerifiedGet()).thenThrow(new ApiException(503, "down"));
+        VendorDirectory directory = new VendorDirectory(vendorApi, new MockEnvironment());
+
+        assertThrows(ApiException.class, () -> directory.getVendor(1L));
+    }
+}
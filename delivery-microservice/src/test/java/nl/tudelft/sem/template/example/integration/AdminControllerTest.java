@@ -9,7 +9,9 @@ import delivery_microservice.model.RadiusVendorPair;
 import delivery_microservice.model.Analytics;
 import nl.tudelft.sem.template.delivery.controllers.AdminController;
 import nl.tudelft.sem.template.delivery.services.AuthorisationService;
-import nl.tudelft.sem.template.delivery.services.DeliveryService;
+import nl.tudelft.sem.template.delivery.services.DeliveryArchive;
+import nl.tudelft.sem.template.delivery.database.DeliveryRepository;
+import nl.tudelft.sem.template.delivery.services.AnalyticsAggregator;
 import nl.tudelft.sem.template.delivery.services.RadiusVendorPairService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -22,6 +24,8 @@ import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+import javax.persistence.EntityManager;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.when;
@@ -35,7 +39,7 @@ public class AdminControllerTest {
 
     RadiusVendorPairService pairMock;
 
-    DeliveryService deliveryMock;
+    AnalyticsAggregator analyticsAggregator;
 
     AuthorisationService authMock;
 
@@ -45,9 +49,11 @@ public class AdminControllerTest {
     @BeforeEach
     public void setup() {
         pairMock = Mockito.mock(RadiusVendorPairService.class);
-        deliveryMock = Mockito.mock(DeliveryService.class);
+        analyticsAggregator = new AnalyticsAggregator(
+                Mockito.mock(DeliveryRepository.class), Mockito.mock(EntityManager.class),
+                Mockito.mock(DeliveryArchive.class));
         authMock = Mockito.mock(AuthorisationService.class);
-        controller = new AdminController(pairMock, deliveryMock, authMock);
+        controller = new AdminController(pairMock, analyticsAggregator, authMock);
 
         when(authMock.isValid(4L)).thenReturn(true);
         when(authMock.isValid(null)).thenReturn(false);
@@ -204,7 +210,7 @@ public class AdminControllerTest {
                                 DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneOffset.UTC)))
                         .delays(List.of(new Delay().description("food was not ready"))));
 
-        when(deliveryMock.getAllDeliveredDeliveries()).thenReturn(List.of(delivery1, delivery2, delivery3));
+        analyticsAggregator.rebuild(Stream.of(delivery1, delivery2, delivery3));
         ResponseEntity<Analytics> response = controller.getAnalytics(1L);
         Analytics responseValue = new Analytics()
                 .completedDeliveries(3)
@@ -264,7 +270,7 @@ public class AdminControllerTest {
                                 DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneOffset.UTC)))
                         .delays(List.of(new Delay().description("food was not ready"))));
 
-        when(deliveryMock.getAllDeliveredDeliveries()).thenReturn(List.of(delivery1, delivery2, delivery3, delivery4));
+        analyticsAggregator.rebuild(Stream.of(delivery1, delivery2, delivery3, delivery4));
         ResponseEntity<Analytics> response = controller.getAnalytics(1L);
         Analytics responseValue = new Analytics()
                 .completedDeliveries(4)
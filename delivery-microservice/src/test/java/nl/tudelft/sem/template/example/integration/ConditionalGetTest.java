@@ -0,0 +1,50 @@
+package nl.tudelft.sem.template.example.integration;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import nl.tudelft.sem.template.delivery.controllers.ConditionalGet;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ConditionalGetTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ConditionalGet conditionalGet = new ConditionalGet(meterRegistry);
+    private final AtomicInteger bodies = new AtomicInteger();
+
+    private HttpStatus status(String ifNoneMatch, String etag) {
+        return conditionalGet.respond("test", ifNoneMatch, etag, bodies::incrementAndGet).getStatusCode();
+    }
+
+    @Test
+    public void matchingCopyIsNotBuilt() {
+        assertEquals(HttpStatus.NOT_MODIFIED, status("\"1-2\"", "\"1-2\""));
+        assertEquals(HttpStatus.NOT_MODIFIED, status("W/\"1-2\"", "\"1-2\""));
+        assertEquals(HttpStatus.NOT_MODIFIED, status("\"0-1\", \"1-2\"", "\"1-2\""));
+        assertEquals(HttpStatus.NOT_MODIFIED, status("*", "\"1-2\""));
+        assertEquals(0, bodies.get());
+        assertEquals(4, meterRegistry.get("http.conditional.get").tag("outcome", "hit").counter().count());
+    }
+
+    @Test
+    public void otherCopyGetsBody() {
+        assertEquals(HttpStatus.OK, status(null, "\"1-2\""));
+        assertEquals(HttpStatus.OK, status("\"1-1\"", "\"1-2\""));
+        assertEquals(HttpStatus.OK, status("\"1-2\"", null));
+        assertEquals(3, bodies.get());
+        assertEquals(2, meterRegistry.get("http.conditional.get").tag("outcome", "miss").counter().count());
+    }
+
+    @Test
+    public void etags() {
+        assertEquals("\"5-0\"", ConditionalGet.fromVersion(5L, 0L));
+        assertNull(ConditionalGet.fromVersion(5L, null));
+        assertEquals(ConditionalGet.fromContent(1L, 2L), ConditionalGet.fromContent(1L, 2L));
+        assertNotEquals(ConditionalGet.fromContent(1L, 2L), ConditionalGet.fromContent(2L, 1L));
+        assertEquals(34, ConditionalGet.fromContent().length());
+    }
+}
@@ -1,23 +1,52 @@
 package nl.tudelft.sem.template.example.integration;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import delivery_microservice.model.CourierLocationUpdate;
+import delivery_microservice.model.CourierLocationsResult;
+import delivery_microservice.model.CourierTrailPoint;
+import delivery_microservice.model.Delivery;
 import delivery_microservice.model.Location;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import nl.tudelft.sem.template.delivery.controllers.CourierController;
+import nl.tudelft.sem.template.delivery.exceptions.CourierLocationStoreFullException;
 import nl.tudelft.sem.template.delivery.exceptions.EntityNotFoundException;
 import nl.tudelft.sem.template.delivery.services.CourierLocationService;
 import nl.tudelft.sem.template.delivery.services.AuthorisationService;
+import nl.tudelft.sem.template.delivery.services.CourierPosition;
+import nl.tudelft.sem.template.delivery.services.CourierTrackingBroker;
+import nl.tudelft.sem.template.delivery.services.CourierTrailStore;
+import nl.tudelft.sem.template.delivery.services.DeliveryService;
 import nl.tudelft.sem.template.delivery.external.FakeCourierLocationService;
+import orders_microservice.ApiException;
+import orders_microservice.api.OrderApi;
+import orders_microservice.model.Order;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class CourierControllerTest {
@@ -28,6 +57,16 @@ public class CourierControllerTest {
 
     AuthorisationService authMock;
 
+    CourierTrailStore trailStore;
+
+    DeliveryService deliveryService;
+
+    CourierTrackingBroker trackingBroker;
+
+    OrderApi orderApi;
+
+    SimpleMeterRegistry meterRegistry;
+
     /**
      * Setup for the tests.
      */
@@ -35,11 +74,20 @@ public class CourierControllerTest {
     public void setup() {
         gpsService = Mockito.mock(FakeCourierLocationService.class);
         authMock = Mockito.mock(AuthorisationService.class);
-        controller = new CourierController(gpsService, authMock);
+        meterRegistry = new SimpleMeterRegistry();
+        trailStore = new CourierTrailStore(new MockEnvironment(), meterRegistry);
+        trackingBroker = new CourierTrackingBroker(new ObjectMapper().findAndRegisterModules(),
+                new MockEnvironment(), meterRegistry);
+        deliveryService = Mockito.mock(DeliveryService.class);
+        orderApi = Mockito.mock(OrderApi.class);
+        controller = new CourierController(gpsService, authMock, trailStore, List.of(trailStore, trackingBroker),
+                deliveryService, trackingBroker, orderApi);
 
         when(authMock.isValid(4L)).thenReturn(true);
         when(authMock.isValid(null)).thenReturn(false);
         when(authMock.isValid(1L)).thenReturn(true);
+        when(authMock.isValid(2L)).thenReturn(true);
+        when(authMock.isValid(3L)).thenReturn(true);
         when(authMock.isValid(-1015L)).thenReturn(false);
         when(authMock.isValid(1015L)).thenReturn(true);
         when(authMock.isValid(1016L)).thenReturn(true);
@@ -147,4 +195,204 @@ public class CourierControllerTest {
         }
     }
 
+    private static CourierLocationUpdate update(long courierId, double latitude, long seconds) {
+        return new CourierLocationUpdate()
+                .courierId(courierId)
+                .latitude(latitude)
+                .longitude(4.37)
+                .timestamp(OffsetDateTime.of(2023, 11, 30, 14, 0, 0, 0, ZoneOffset.UTC).plusSeconds(seconds));
+    }
+
+    @Test
+    public void updateCourierLocationsOwnPosition() {
+        when(gpsService.updatePositionOfCourier(anyLong(), any())).thenReturn(true, false);
+
+        ResponseEntity<CourierLocationsResult> response = controller.updateCourierLocations(1015L,
+                List.of(update(1015L, 52.0, 1), update(1015L, 52.1, 0)));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(new CourierLocationsResult().accepted(1).stale(1), response.getBody());
+        long time = OffsetDateTime.of(2023, 11, 30, 14, 0, 1, 0, ZoneOffset.UTC).toInstant().toEpochMilli();
+        verify(gpsService).updatePositionOfCourier(1015L, new CourierPosition(52.0, 4.37, time));
+        verify(gpsService).updatePositionOfCourier(1015L, new CourierPosition(52.1, 4.37, time - 1000));
+    }
+
+    @Test
+    public void updateCourierLocationsStoreFull() {
+        when(gpsService.updatePositionOfCourier(anyLong(), any()))
+                .thenThrow(new CourierLocationStoreFullException(1015L, 16));
+
+        ResponseEntity<CourierLocationsResult> response = controller.updateCourierLocations(1015L,
+                List.of(update(1015L, 52.0, 0)));
+
+        assertEquals(new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE), response);
+        assertNull(trailStore.getTrail(1015L, Long.MIN_VALUE));
+    }
+
+    @Test
+    public void updateCourierLocationsOtherCourierForbidden() {
+        ResponseEntity<CourierLocationsResult> response = controller.updateCourierLocations(1015L,
+                List.of(update(1015L, 52.0, 0), update(1016L, 52.0, 0)));
+
+        assertEquals(new ResponseEntity<>(HttpStatus.FORBIDDEN), response);
+        verify(gpsService, never()).updatePositionOfCourier(anyLong(), any());
+    }
+
+    @Test
+    public void updateCourierLocationsAdminForAnyCourier() {
+        when(authMock.isAdmin(1L)).thenReturn(true);
+        when(gpsService.updatePositionOfCourier(anyLong(), any())).thenReturn(true);
+
+        ResponseEntity<CourierLocationsResult> response = controller.updateCourierLocations(1L,
+                List.of(update(1015L, 52.0, 0), update(1016L, 52.0, 0)));
+
+        assertEquals(new CourierLocationsResult().accepted(2).stale(0), response.getBody());
+    }
+
+    @Test
+    public void updateCourierLocationsNotCourierForbidden() {
+        ResponseEntity<CourierLocationsResult> response = controller.updateCourierLocations(1L,
+                List.of(update(1L, 52.0, 0)));
+
+        assertEquals(new ResponseEntity<>(HttpStatus.FORBIDDEN), response);
+    }
+
+    @Test
+    public void updateCourierLocationsResponse400() {
+        assertEquals(HttpStatus.BAD_REQUEST, controller.updateCourierLocations(null,
+                List.of(update(1015L, 52.0, 0))).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, controller.updateCourierLocations(1015L,
+                Collections.emptyList()).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, controller.updateCourierLocations(1015L,
+                List.of(update(1015L, 91.0, 0))).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, controller.updateCourierLocations(1015L,
+                List.of(update(1015L, Double.NaN, 0))).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, controller.updateCourierLocations(1015L,
+                List.of(update(-1015L, 52.0, 0))).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, controller.updateCourierLocations(1015L,
+                List.of(update(1015L, 52.0, 0).timestamp(null))).getStatusCode());
+
+        List<CourierLocationUpdate> tooMany = new ArrayList<>();
+        for (int i = 0; i <= 5000; i++) {
+            tooMany.add(update(1015L, 52.0, i));
+        }
+        assertEquals(HttpStatus.BAD_REQUEST, controller.updateCourierLocations(1015L, tooMany).getStatusCode());
+        verify(gpsService, never()).updatePositionOfCourier(anyLong(), any());
+    }
+
+    @Test
+    public void keptPositionsAreAddedToTheTrail() {
+        when(authMock.isAdmin(1L)).thenReturn(true);
+        when(gpsService.updatePositionOfCourier(anyLong(), any())).thenReturn(true, false, true);
+
+        controller.updateCourierLocations(1L, List.of(update(1015L, 52.0, 0), update(1015L, 52.5, 5),
+                update(1015L, 52.00001, 10)));
+
+        ResponseEntity<List<CourierTrailPoint>> response = controller.getCourierTrail(1L, 1015L, null);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(List.of(52.0, 52.00001), response.getBody().stream()
+                .map(CourierTrailPoint::getLatitude).collect(Collectors.toList()));
+        assertEquals(OffsetDateTime.of(2023, 11, 30, 14, 0, 10, 0, ZoneOffset.UTC),
+                response.getBody().get(1).getTimestamp());
+    }
+
+    @Test
+    public void getCourierTrailSince() {
+        trailStore.onPosition(1015L, new CourierPosition(52.0, 4.3, 1000L));
+        trailStore.onPosition(1015L, new CourierPosition(52.1, 4.3, 2000L));
+
+        ResponseEntity<List<CourierTrailPoint>> response = controller.getCourierTrail(1L, 1015L,
+                OffsetDateTime.ofInstant(Instant.ofEpochMilli(1000L), ZoneOffset.UTC));
+
+        assertEquals(1, response.getBody().size());
+        assertEquals(52.1, response.getBody().get(0).getLatitude());
+    }
+
+    @Test
+    public void getCourierTrailResponses() {
+        assertEquals(new ResponseEntity<>(HttpStatus.BAD_REQUEST), controller.getCourierTrail(null, 1015L, null));
+        assertEquals(new ResponseEntity<>(HttpStatus.BAD_REQUEST), controller.getCourierTrail(1L, -1015L, null));
+        assertEquals(new ResponseEntity<>(HttpStatus.BAD_REQUEST), controller.getCourierTrail(1L, 2L, null));
+        assertEquals(new ResponseEntity<>(HttpStatus.FORBIDDEN), controller.getCourierTrail(4L, 1015L, null));
+        assertEquals(new ResponseEntity<>(HttpStatus.NOT_FOUND), controller.getCourierTrail(1L, 1015L, null));
+    }
+
+    @Test
+    public void trackDelivery() throws EntityNotFoundException, ApiException {
+        when(deliveryService.getDelivery(2L))
+                .thenReturn(Optional.of(new Delivery().deliveryId(2L).orderId(20L).courierId(1015L)));
+        when(authMock.isCustomer(1L)).thenReturn(true);
+        when(orderApi.orderOrderIDGet(20L)).thenReturn(List.of(new Order().orderID(20L).customerID(1L)));
+        when(gpsService.getPositionOfCourier(1015L)).thenReturn(new CourierPosition(52.0, 4.3, 1000L));
+
+        ResponseEntity<SseEmitter> response = controller.trackDelivery(1L, 2L);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(MediaType.TEXT_EVENT_STREAM, response.getHeaders().getContentType());
+        assertEquals(1, meterRegistry.get("tracking.subscribers").gauge().value());
+        verify(gpsService).getPositionOfCourier(1015L);
+        verify(authMock, never()).isCourier(anyLong());
+    }
+
+    @Test
+    public void trackDeliveryWithoutCourierNotFound() {
+        when(deliveryService.getDelivery(2L)).thenReturn(Optional.of(new Delivery().deliveryId(2L)));
+        when(deliveryService.getDelivery(3L)).thenReturn(Optional.of(new Delivery().deliveryId(3L).courierId(1015L)
+                .delivered(true)));
+        when(deliveryService.getDelivery(4L)).thenReturn(Optional.empty());
+
+        assertEquals(HttpStatus.NOT_FOUND, controller.trackDelivery(1L, 2L).getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, controller.trackDelivery(1L, 3L).getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, controller.trackDelivery(1L, 4L).getStatusCode());
+        assertEquals(0, meterRegistry.get("tracking.subscribers").gauge().value());
+    }
+
+    @Test
+    public void trackDeliveryBadRequestAndForbidden() {
+        assertEquals(HttpStatus.BAD_REQUEST, controller.trackDelivery(1L, -2L).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, controller.trackDelivery(null, 2L).getStatusCode());
+        assertEquals(HttpStatus.FORBIDDEN, controller.trackDelivery(4L, 2L).getStatusCode());
+        verify(deliveryService, never()).getDelivery(anyLong());
+    }
+
+    @Test
+    public void trackDeliveryOnlyByItsParticipants() throws ApiException {
+        when(deliveryService.getDelivery(2L)).thenReturn(Optional.of(new Delivery().deliveryId(2L).orderId(20L)
+                .vendorId(1016L).courierId(1015L)));
+        when(authMock.isValid(1020L)).thenReturn(true);
+        when(authMock.isUser(1020L)).thenReturn(true);
+        when(authMock.isCustomer(1L)).thenReturn(true);
+        when(orderApi.orderOrderIDGet(20L)).thenReturn(List.of(new Order().orderID(20L).customerID(43L)));
+
+        assertEquals(HttpStatus.FORBIDDEN, controller.trackDelivery(1L, 2L).getStatusCode());
+        when(authMock.isUser(1015L)).thenReturn(true);
+        assertEquals(HttpStatus.OK, controller.trackDelivery(1015L, 2L).getStatusCode());
+        when(authMock.isUser(1016L)).thenReturn(true);
+        assertEquals(HttpStatus.OK, controller.trackDelivery(1016L, 2L).getStatusCode());
+        when(authMock.isAdmin(1020L)).thenReturn(true);
+        assertEquals(HttpStatus.OK, controller.trackDelivery(1020L, 2L).getStatusCode());
+        assertEquals(3, meterRegistry.get("tracking.subscribers").gauge().value());
+    }
+
+    @Test
+    public void trackingEndsWhenDeliveryChangesCourier() {
+        when(deliveryService.getDelivery(2L)).thenReturn(Optional.of(new Delivery().deliveryId(2L).courierId(1015L)));
+        when(authMock.isUser(1015L)).thenReturn(true);
+
+        assertEquals(HttpStatus.OK, controller.trackDelivery(1015L, 2L).getStatusCode());
+        trackingBroker.endTracking(2L);
+
+        assertEquals(0, meterRegistry.get("tracking.subscribers").gauge().value());
+    }
+
+    @Test
+    public void trackingRefusedWhenCourierChangesWhileSubscribing() {
+        when(deliveryService.getDelivery(2L)).thenReturn(
+                Optional.of(new Delivery().deliveryId(2L).courierId(1015L)),
+                Optional.of(new Delivery().deliveryId(2L).courierId(1016L)));
+        when(authMock.isUser(1015L)).thenReturn(true);
+
+        assertEquals(HttpStatus.NOT_FOUND, controller.trackDelivery(1015L, 2L).getStatusCode());
+        assertEquals(0, meterRegistry.get("tracking.subscribers").gauge().value());
+    }
 }
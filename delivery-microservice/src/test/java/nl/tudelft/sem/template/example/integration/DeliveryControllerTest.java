@@ -1,28 +1,50 @@
 package nl.tudelft.sem.template.example.integration;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import delivery_microservice.model.CreateDeliveryRequest;
 import delivery_microservice.model.Delivery;
 import delivery_microservice.model.Location;
 import delivery_microservice.model.Times;
 import delivery_microservice.model.UpdateDeliveryRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import nl.tudelft.sem.template.delivery.controllers.ConditionalGet;
 import nl.tudelft.sem.template.delivery.controllers.DeliveryController;
+import nl.tudelft.sem.template.delivery.dtos.DeliveryField;
+import nl.tudelft.sem.template.delivery.dtos.DeliverySummary;
 import nl.tudelft.sem.template.delivery.dtos.UpdateDeliveryDto;
+import nl.tudelft.sem.template.delivery.exceptions.DeliveryConflictException;
 import nl.tudelft.sem.template.delivery.exceptions.EntityNotFoundException;
 import nl.tudelft.sem.template.delivery.services.AuthorisationService;
+import nl.tudelft.sem.template.delivery.services.DeliveryEventBroker;
 import nl.tudelft.sem.template.delivery.services.DeliveryService;
 import orders_microservice.ApiException;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyInt;
 import static org.mockito.Mockito.anyLong;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -37,6 +59,10 @@ public class DeliveryControllerTest {
 
     AuthorisationService authorisationService;
 
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    DeliveryEventBroker deliveryEventBroker;
+
     /**
      * Setup for each test.
      */
@@ -44,7 +70,9 @@ public class DeliveryControllerTest {
     public void setup() {
         deliveryServiceMock = mock(DeliveryService.class);
         authorisationService = mock(AuthorisationService.class);
-        deliveryControllerMock = new DeliveryController(deliveryServiceMock, authorisationService);
+        deliveryEventBroker = new DeliveryEventBroker(new ObjectMapper(), new MockEnvironment(), meterRegistry);
+        deliveryControllerMock = new DeliveryController(deliveryServiceMock, authorisationService, new ObjectMapper(),
+                deliveryEventBroker, new ConditionalGet(meterRegistry));
 
         when(authorisationService.isUser(1L)).thenReturn(true);
         when(authorisationService.isUser(2L)).thenReturn(true);
@@ -52,6 +80,11 @@ public class DeliveryControllerTest {
         when(authorisationService.isUser(9L)).thenReturn(false);
     }
 
+    @AfterEach
+    public void tearDown() {
+        deliveryEventBroker.shutdown();
+    }
+
     @Test
     void createDeliverySuccess() throws EntityNotFoundException, users_microservice.ApiException {
         Delivery example = new Delivery();
@@ -119,6 +152,78 @@ public class DeliveryControllerTest {
         verify(mockException, times(1)).printStackTrace();
     }
 
+    @Test
+    void createDeliveriesSuccess() throws EntityNotFoundException, users_microservice.ApiException {
+        List<CreateDeliveryRequest> requests = List.of(
+                new CreateDeliveryRequest(1L, 2L, new Location()),
+                new CreateDeliveryRequest(3L, 2L, new Location()));
+        List<Delivery> created = List.of(new Delivery().deliveryId(10L), new Delivery().deliveryId(11L));
+        when(deliveryServiceMock.createDeliveries(requests)).thenReturn(created);
+
+        ResponseEntity<List<Delivery>> response = deliveryControllerMock.createDeliveries(1L, requests);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(created, response.getBody());
+    }
+
+    @Test
+    void createDeliveriesBadRequest() throws EntityNotFoundException, users_microservice.ApiException {
+        List<CreateDeliveryRequest> tooMany = new ArrayList<>();
+        for (long i = 0; i <= 1000; i++) {
+            tooMany.add(new CreateDeliveryRequest(i, 2L, new Location()));
+        }
+
+        assertEquals(HttpStatus.BAD_REQUEST, deliveryControllerMock.createDeliveries(1L, List.of()).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, deliveryControllerMock.createDeliveries(1L, tooMany).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, deliveryControllerMock.createDeliveries(1L, List.of(
+                new CreateDeliveryRequest(1L, 2L, new Location()),
+                new CreateDeliveryRequest(3L, 2L, null))).getStatusCode());
+        verify(deliveryServiceMock, never()).createDeliveries(any());
+    }
+
+    @Test
+    void createDeliveriesForbidden() throws EntityNotFoundException, users_microservice.ApiException {
+        ResponseEntity<List<Delivery>> response = deliveryControllerMock.createDeliveries(9L,
+                List.of(new CreateDeliveryRequest(1L, 2L, new Location())));
+
+        assertEquals(HttpStatus.FORBIDDEN, response.getStatusCode());
+        verify(deliveryServiceMock, never()).createDeliveries(any());
+    }
+
+    @Test
+    void createDeliveriesUnknownVendor() throws EntityNotFoundException, users_microservice.ApiException {
+        List<CreateDeliveryRequest> requests = List.of(new CreateDeliveryRequest(1L, 77L, new Location()));
+        when(deliveryServiceMock.createDeliveries(requests)).thenThrow(new EntityNotFoundException(Delivery.class, 77L));
+
+        assertEquals(HttpStatus.NOT_FOUND, deliveryControllerMock.createDeliveries(1L, requests).getStatusCode());
+    }
+
+    @Test
+    void subscribeDelivery() {
+        when(deliveryServiceMock.getDelivery(2L)).thenReturn(Optional.of(new Delivery().deliveryId(2L).version(0L)));
+
+        ResponseEntity<SseEmitter> response = deliveryControllerMock.subscribeDelivery(1L, 2L);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(MediaType.TEXT_EVENT_STREAM, response.getHeaders().getContentType());
+        assertEquals(1, meterRegistry.get("deliveries.events.subscribers").gauge().value());
+    }
+
+    @Test
+    void subscribeDeliveryNotFound() {
+        when(deliveryServiceMock.getDelivery(2L)).thenReturn(Optional.empty());
+
+        assertEquals(HttpStatus.NOT_FOUND, deliveryControllerMock.subscribeDelivery(1L, 2L).getStatusCode());
+        assertEquals(0, meterRegistry.get("deliveries.events.subscribers").gauge().value());
+    }
+
+    @Test
+    void subscribeDeliveryBadRequestAndForbidden() {
+        assertEquals(HttpStatus.BAD_REQUEST, deliveryControllerMock.subscribeDelivery(1L, -2L).getStatusCode());
+        assertEquals(HttpStatus.FORBIDDEN, deliveryControllerMock.subscribeDelivery(9L, 2L).getStatusCode());
+        verify(deliveryServiceMock, never()).getDelivery(anyLong());
+    }
+
     @Test
     public void testUnassignedBadRequest() {
         Long userId = -1L;
@@ -152,6 +257,45 @@ public class DeliveryControllerTest {
 
     }
 
+    @Test
+    public void testClaimBadRequest() {
+        ResponseEntity<Delivery> example = deliveryControllerMock.claimDelivery(-1L);
+
+        assertEquals(HttpStatus.BAD_REQUEST, example.getStatusCode());
+        verify(deliveryServiceMock, never()).claimDelivery(anyLong());
+    }
+
+    @Test
+    public void testClaimForbidden() {
+        when(authorisationService.isCourier(2L)).thenReturn(false);
+        ResponseEntity<Delivery> example = deliveryControllerMock.claimDelivery(2L);
+
+        assertEquals(HttpStatus.FORBIDDEN, example.getStatusCode());
+        verify(deliveryServiceMock, never()).claimDelivery(anyLong());
+    }
+
+    @Test
+    public void testClaimSuccess() {
+        Delivery claimed = new Delivery().deliveryId(4L).courierId(2L);
+        when(authorisationService.isCourier(2L)).thenReturn(true);
+        when(deliveryServiceMock.claimDelivery(2L)).thenReturn(Optional.of(claimed));
+
+        ResponseEntity<Delivery> example = deliveryControllerMock.claimDelivery(2L);
+
+        assertEquals(HttpStatus.OK, example.getStatusCode());
+        assertEquals(claimed, example.getBody());
+    }
+
+    @Test
+    public void testClaimNothingWaiting() {
+        when(authorisationService.isCourier(2L)).thenReturn(true);
+        when(deliveryServiceMock.claimDelivery(2L)).thenReturn(Optional.empty());
+
+        ResponseEntity<Delivery> example = deliveryControllerMock.claimDelivery(2L);
+
+        assertEquals(HttpStatus.NOT_FOUND, example.getStatusCode());
+    }
+
     @Test
     public void testUnassignedNotFound() {
         Long userId = 1L;
@@ -168,7 +312,7 @@ public class DeliveryControllerTest {
     public void testByDeliveryIdBadRequest() {
         Long userId = -1L;
         Long deliveryId = 1L;
-        ResponseEntity<Delivery> example = deliveryControllerMock.getDeliveryById(userId, deliveryId);
+        ResponseEntity<Delivery> example = deliveryControllerMock.getDeliveryById(userId, deliveryId, null);
 
         assertEquals(HttpStatus.BAD_REQUEST, example.getStatusCode());
         verify(deliveryServiceMock, never()).getDelivery(deliveryId);
@@ -178,7 +322,7 @@ public class DeliveryControllerTest {
     public void testByDeliveryIdForbidden() {
         Long userId = 9L;
         Long deliveryId = 1L;
-        ResponseEntity<Delivery> example = deliveryControllerMock.getDeliveryById(userId, deliveryId);
+        ResponseEntity<Delivery> example = deliveryControllerMock.getDeliveryById(userId, deliveryId, null);
 
         assertEquals(HttpStatus.FORBIDDEN, example.getStatusCode());
         verify(deliveryServiceMock, never()).getDelivery(deliveryId);
@@ -190,7 +334,7 @@ public class DeliveryControllerTest {
         Long deliveryId = 1L;
 
         when(deliveryServiceMock.getDelivery(deliveryId)).thenReturn(Optional.empty());
-        ResponseEntity<Delivery> example = deliveryControllerMock.getDeliveryById(userId, deliveryId);
+        ResponseEntity<Delivery> example = deliveryControllerMock.getDeliveryById(userId, deliveryId, null);
 
         assertEquals(HttpStatus.NOT_FOUND, example.getStatusCode());
         verify(deliveryServiceMock, times(1)).getDelivery(deliveryId);
@@ -204,14 +348,76 @@ public class DeliveryControllerTest {
         Delivery expected = new Delivery();
 
         when(deliveryServiceMock.getDelivery(deliveryId)).thenReturn(Optional.of(expected));
-        Delivery example = deliveryControllerMock.getDeliveryById(userId, deliveryId).getBody();
+        Delivery example = deliveryControllerMock.getDeliveryById(userId, deliveryId, null).getBody();
 
         assertEquals(expected, example);
         verify(deliveryServiceMock, times(1)).getDelivery(deliveryId);
     }
 
     @Test
-    public void testUpdateBadRequest() throws EntityNotFoundException, ApiException {
+    public void testBulkSuccess() {
+        List<Delivery> expected = List.of(new Delivery().deliveryId(3L), new Delivery().deliveryId(5L));
+        when(deliveryServiceMock.getDeliveries(List.of(5L, 3L, 4L))).thenReturn(expected);
+
+        ResponseEntity<List<Delivery>> example = deliveryControllerMock.getDeliveriesById(1L, List.of(5L, 3L, 4L));
+
+        assertEquals(HttpStatus.OK, example.getStatusCode());
+        assertEquals(expected, example.getBody());
+        verify(authorisationService, times(1)).isUser(1L);
+        verify(deliveryServiceMock, never()).getDelivery(anyLong());
+    }
+
+    @Test
+    public void testBulkBadRequest() {
+        List<Long> tooMany = new ArrayList<>();
+        for (long i = 0; i <= 200; i++) {
+            tooMany.add(i);
+        }
+
+        assertEquals(HttpStatus.BAD_REQUEST, deliveryControllerMock.getDeliveriesById(1L, List.of()).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, deliveryControllerMock.getDeliveriesById(1L, tooMany).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST,
+                deliveryControllerMock.getDeliveriesById(1L, List.of(1L, -1L)).getStatusCode());
+        verify(deliveryServiceMock, never()).getDeliveries(any());
+    }
+
+    @Test
+    public void testBulkForbidden() {
+        ResponseEntity<List<Delivery>> example = deliveryControllerMock.getDeliveriesById(9L, List.of(1L));
+
+        assertEquals(HttpStatus.FORBIDDEN, example.getStatusCode());
+        verify(deliveryServiceMock, never()).getDeliveries(any());
+    }
+
+    @Test
+    public void testByDeliveryIdNotModified() {
+        Delivery delivery = new Delivery().deliveryId(3L).version(7L);
+        when(deliveryServiceMock.getDelivery(3L)).thenReturn(Optional.of(delivery));
+
+        ResponseEntity<Delivery> first = deliveryControllerMock.getDeliveryById(1L, 3L, null);
+        ResponseEntity<Delivery> second = deliveryControllerMock.getDeliveryById(1L, 3L, first.getHeaders().getETag());
+
+        assertEquals(HttpStatus.OK, first.getStatusCode());
+        assertEquals("\"3-7\"", first.getHeaders().getETag());
+        assertEquals(HttpStatus.NOT_MODIFIED, second.getStatusCode());
+        assertEquals(null, second.getBody());
+        assertEquals("\"3-7\"", second.getHeaders().getETag());
+        assertEquals(1, meterRegistry.get("http.conditional.get").tag("outcome", "hit").counter().count());
+        assertEquals(1, meterRegistry.get("http.conditional.get").tag("outcome", "miss").counter().count());
+    }
+
+    @Test
+    public void testByDeliveryIdChangedSinceCopy() {
+        when(deliveryServiceMock.getDelivery(3L)).thenReturn(Optional.of(new Delivery().deliveryId(3L).version(8L)));
+
+        ResponseEntity<Delivery> example = deliveryControllerMock.getDeliveryById(1L, 3L, "\"3-7\"");
+
+        assertEquals(HttpStatus.OK, example.getStatusCode());
+        assertEquals("\"3-8\"", example.getHeaders().getETag());
+    }
+
+    @Test
+    public void testUpdateBadRequest() throws EntityNotFoundException, ApiException, DeliveryConflictException {
         Long userId = -1L;
         Long deliveryId = 2L;
         Long courierId = 6L;
@@ -238,7 +444,7 @@ public class DeliveryControllerTest {
 
 
     @Test
-    public void testUpdateForbidden() throws EntityNotFoundException, ApiException {
+    public void testUpdateForbidden() throws EntityNotFoundException, ApiException, DeliveryConflictException {
         Long userId = 9L;
         Long deliveryId = 2L;
         Long courierId = 6L;
@@ -264,7 +470,7 @@ public class DeliveryControllerTest {
     }
 
     @Test
-    public void testUpdateNotFoundRequest() throws EntityNotFoundException, ApiException {
+    public void testUpdateNotFoundRequest() throws EntityNotFoundException, ApiException, DeliveryConflictException {
         Long deliveryId = 2L;
         Long courierId = 6L;
         int rating = 4;
@@ -291,7 +497,7 @@ public class DeliveryControllerTest {
     }
 
     @Test
-    public void testUpdateSuccess() throws EntityNotFoundException, ApiException {
+    public void testUpdateSuccess() throws EntityNotFoundException, ApiException, DeliveryConflictException {
         Long deliveryId = 2L;
         Long courierId = 6L;
         Integer rating = null;
@@ -320,7 +526,19 @@ public class DeliveryControllerTest {
     }
 
     @Test
-    public void testUpdateCatch() throws EntityNotFoundException, ApiException {
+    public void testUpdateConflict() throws EntityNotFoundException, ApiException, DeliveryConflictException {
+        UpdateDeliveryRequest updateDeliveryRequest = new UpdateDeliveryRequest();
+        updateDeliveryRequest.setRating(7);
+        UpdateDeliveryDto dto = UpdateDeliveryDto.builder().deliveryId(2L).rating(7).build();
+        when(deliveryServiceMock.updateDelivery(1L, dto)).thenThrow(new DeliveryConflictException(2L, "rating"));
+
+        ResponseEntity<Delivery> example = deliveryControllerMock.updateDelivery(1L, 2L, updateDeliveryRequest);
+
+        assertEquals(HttpStatus.CONFLICT, example.getStatusCode());
+    }
+
+    @Test
+    public void testUpdateCatch() throws EntityNotFoundException, ApiException, DeliveryConflictException {
         Long deliveryId = 2L;
         Long courierId = 6L;
         Integer rating = null;
@@ -357,11 +575,11 @@ public class DeliveryControllerTest {
         Long orderId = 4L;
         Long courierId = 77L;
         ResponseEntity<List<Delivery>> example =
-            deliveryControllerMock.getDeliveryFromOrder(userId, orderId, vendorId, courierId);
+            deliveryControllerMock.getDeliveryFromOrder(userId, orderId, vendorId, courierId, null, null);
 
         assertEquals(HttpStatus.BAD_REQUEST, example.getStatusCode());
-        verify(deliveryServiceMock, never()).getDeliveryByCourierId(courierId);
-        verify(deliveryServiceMock, never()).getDeliveryByVendorId(vendorId);
+        verify(deliveryServiceMock, never()).getDeliveryByCourierId(anyLong(), anyLong(), anyInt());
+        verify(deliveryServiceMock, never()).getDeliveryByVendorId(anyLong(), anyLong(), anyInt());
         verify(deliveryServiceMock, never()).getDeliveryByOrderId(orderId);
     }
 
@@ -372,11 +590,11 @@ public class DeliveryControllerTest {
         Long orderId = 4L;
         Long courierId = 77L;
         ResponseEntity<List<Delivery>> example =
-            deliveryControllerMock.getDeliveryFromOrder(userId, orderId, vendorId, courierId);
+            deliveryControllerMock.getDeliveryFromOrder(userId, orderId, vendorId, courierId, null, null);
 
         assertEquals(HttpStatus.FORBIDDEN, example.getStatusCode());
-        verify(deliveryServiceMock, never()).getDeliveryByCourierId(courierId);
-        verify(deliveryServiceMock, never()).getDeliveryByVendorId(vendorId);
+        verify(deliveryServiceMock, never()).getDeliveryByCourierId(anyLong(), anyLong(), anyInt());
+        verify(deliveryServiceMock, never()).getDeliveryByVendorId(anyLong(), anyLong(), anyInt());
         verify(deliveryServiceMock, never()).getDeliveryByOrderId(orderId);
     }
 
@@ -389,12 +607,12 @@ public class DeliveryControllerTest {
         Delivery expected = new Delivery();
         List<Delivery> list = new ArrayList<>();
         list.add(expected);
-        when(deliveryServiceMock.getDeliveryByCourierId(courierId)).thenReturn(list);
+        when(deliveryServiceMock.getDeliveryByCourierId(courierId, -1L, 100)).thenReturn(list);
 
-        List<Delivery> example = deliveryControllerMock.getDeliveryFromOrder(userId, orderId, vendorId, courierId).getBody();
+        List<Delivery> example = deliveryControllerMock.getDeliveryFromOrder(userId, orderId, vendorId, courierId, null, null).getBody();
 
         assertEquals(list, example);
-        verify(deliveryServiceMock, times(1)).getDeliveryByCourierId(courierId);
+        verify(deliveryServiceMock, times(1)).getDeliveryByCourierId(courierId, -1L, 100);
     }
 
     @Test
@@ -404,13 +622,13 @@ public class DeliveryControllerTest {
         Long orderId = -4L;
         Long courierId = 77L;
         List<Delivery> list = new ArrayList<>();
-        when(deliveryServiceMock.getDeliveryByCourierId(courierId)).thenReturn(new ArrayList<>());
+        when(deliveryServiceMock.getDeliveryByCourierId(courierId, -1L, 100)).thenReturn(new ArrayList<>());
 
         ResponseEntity<List<Delivery>> example =
-            deliveryControllerMock.getDeliveryFromOrder(userId, orderId, vendorId, courierId);
+            deliveryControllerMock.getDeliveryFromOrder(userId, orderId, vendorId, courierId, null, null);
 
         assertEquals(HttpStatus.NOT_FOUND, example.getStatusCode());
-        verify(deliveryServiceMock, times(1)).getDeliveryByCourierId(courierId);
+        verify(deliveryServiceMock, times(1)).getDeliveryByCourierId(courierId, -1L, 100);
     }
 
     @Test
@@ -422,12 +640,12 @@ public class DeliveryControllerTest {
         Delivery expected = new Delivery();
         List<Delivery> list = new ArrayList<>();
         list.add(expected);
-        when(deliveryServiceMock.getDeliveryByVendorId(vendorId)).thenReturn(list);
+        when(deliveryServiceMock.getDeliveryByVendorId(vendorId, -1L, 100)).thenReturn(list);
 
-        List<Delivery> example = deliveryControllerMock.getDeliveryFromOrder(userId, orderId, vendorId, courierId).getBody();
+        List<Delivery> example = deliveryControllerMock.getDeliveryFromOrder(userId, orderId, vendorId, courierId, null, null).getBody();
 
         assertEquals(list, example);
-        verify(deliveryServiceMock, times(1)).getDeliveryByVendorId(vendorId);
+        verify(deliveryServiceMock, times(1)).getDeliveryByVendorId(vendorId, -1L, 100);
     }
 
     @Test
@@ -437,13 +655,13 @@ public class DeliveryControllerTest {
         Long orderId = -1L;
         Long courierId = -1L;
 
-        when(deliveryServiceMock.getDeliveryByVendorId(vendorId)).thenReturn(new ArrayList<>());
+        when(deliveryServiceMock.getDeliveryByVendorId(vendorId, -1L, 100)).thenReturn(new ArrayList<>());
 
         ResponseEntity<List<Delivery>> example =
-            deliveryControllerMock.getDeliveryFromOrder(userId, orderId, vendorId, courierId);
+            deliveryControllerMock.getDeliveryFromOrder(userId, orderId, vendorId, courierId, null, null);
 
         assertEquals(HttpStatus.NOT_FOUND, example.getStatusCode());
-        verify(deliveryServiceMock, times(1)).getDeliveryByVendorId(vendorId);
+        verify(deliveryServiceMock, times(1)).getDeliveryByVendorId(vendorId, -1L, 100);
     }
 
     @Test
@@ -456,7 +674,7 @@ public class DeliveryControllerTest {
 
         when(deliveryServiceMock.getDeliveryByOrderId(orderId)).thenReturn(Optional.of(expected));
 
-        List<Delivery> example = deliveryControllerMock.getDeliveryFromOrder(userId, orderId, vendorId, courierId).getBody();
+        List<Delivery> example = deliveryControllerMock.getDeliveryFromOrder(userId, orderId, vendorId, courierId, null, null).getBody();
 
         assertEquals(List.of(expected), example);
         verify(deliveryServiceMock, times(1)).getDeliveryByOrderId(orderId);
@@ -471,11 +689,146 @@ public class DeliveryControllerTest {
         when(deliveryServiceMock.getDeliveryByOrderId(orderId)).thenReturn(Optional.empty());
 
         ResponseEntity<List<Delivery>> example =
-            deliveryControllerMock.getDeliveryFromOrder(userId, orderId, vendorId, courierId);
+            deliveryControllerMock.getDeliveryFromOrder(userId, orderId, vendorId, courierId, null, null);
 
         assertEquals(HttpStatus.NOT_FOUND, example.getStatusCode());
         verify(deliveryServiceMock, times(1)).getDeliveryByOrderId(orderId);
     }
 
-}
+    @Test
+    public void testGetVendorFullPageHasCursor() {
+        Long userId = 2L;
+        Long vendorId = 1L;
+        Delivery first = new Delivery().deliveryId(5L);
+        Delivery second = new Delivery().deliveryId(8L);
+        when(deliveryServiceMock.getDeliveryByVendorId(vendorId, 3L, 2)).thenReturn(List.of(first, second));
+
+        ResponseEntity<List<Delivery>> example =
+            deliveryControllerMock.getDeliveryFromOrder(userId, null, vendorId, null, 2, 3L);
+
+        assertEquals(HttpStatus.OK, example.getStatusCode());
+        assertEquals(List.of(first, second), example.getBody());
+        assertEquals("8", example.getHeaders().getFirst("X-Next-After"));
+    }
 
+    @Test
+    public void testGetVendorPartialPageHasNoCursor() {
+        Long userId = 2L;
+        Long vendorId = 1L;
+        Delivery first = new Delivery().deliveryId(5L);
+        when(deliveryServiceMock.getDeliveryByVendorId(vendorId, -1L, 2)).thenReturn(List.of(first));
+
+        ResponseEntity<List<Delivery>> example =
+            deliveryControllerMock.getDeliveryFromOrder(userId, null, vendorId, null, 2, null);
+
+        assertEquals(List.of(first), example.getBody());
+        assertFalse(example.getHeaders().containsKey("X-Next-After"));
+    }
+
+    @Test
+    public void testGetCourierExhaustedCursorIsEmpty() {
+        Long userId = 2L;
+        Long courierId = 1L;
+        when(deliveryServiceMock.getDeliveryByCourierId(courierId, 40L, 100)).thenReturn(new ArrayList<>());
+
+        ResponseEntity<List<Delivery>> example =
+            deliveryControllerMock.getDeliveryFromOrder(userId, null, null, courierId, null, 40L);
+
+        assertEquals(HttpStatus.OK, example.getStatusCode());
+        assertEquals(List.of(), example.getBody());
+    }
+
+    @Test
+    public void testGetInvalidLimit() {
+        ResponseEntity<List<Delivery>> example =
+            deliveryControllerMock.getDeliveryFromOrder(2L, null, 1L, null, 1001, null);
+
+        assertEquals(HttpStatus.BAD_REQUEST, example.getStatusCode());
+        verify(deliveryServiceMock, never()).getDeliveryByVendorId(anyLong(), anyLong(), anyInt());
+    }
+
+    @Test
+    public void testGetFieldsOfVendorPage() {
+        DeliverySummary first = new DeliverySummary();
+        first.setDeliveryId(5L);
+        first.setCourierId(7L);
+        DeliverySummary second = new DeliverySummary();
+        second.setDeliveryId(8L);
+        Set<DeliveryField> fields = EnumSet.of(DeliveryField.DELIVERY_ID, DeliveryField.COURIER_ID,
+                DeliveryField.DELIVERED);
+        when(deliveryServiceMock.getDeliverySummariesByVendorId(1L, -1L, 2, fields)).thenReturn(List.of(first, second));
+
+        ResponseEntity<List<DeliverySummary>> example = deliveryControllerMock.getDeliveryFields(2L, null, 1L, null,
+                2, null, List.of("courierId", "delivered"));
+
+        assertEquals(HttpStatus.OK, example.getStatusCode());
+        assertEquals(List.of(first, second), example.getBody());
+        assertEquals("8", example.getHeaders().getFirst("X-Next-After"));
+        verify(deliveryServiceMock, never()).getDeliveryByVendorId(anyLong(), anyLong(), anyInt());
+    }
+
+    @Test
+    public void testGetFieldsOfOrder() {
+        DeliverySummary summary = new DeliverySummary();
+        summary.setDeliveryId(5L);
+        when(deliveryServiceMock.getDeliverySummaryByOrderId(3L, EnumSet.of(DeliveryField.DELIVERY_ID)))
+                .thenReturn(Optional.of(summary));
+
+        ResponseEntity<List<DeliverySummary>> example = deliveryControllerMock.getDeliveryFields(2L, 3L, null, null,
+                null, null, List.of("deliveryId"));
+
+        assertEquals(List.of(summary), example.getBody());
+    }
+
+    @Test
+    public void testGetUnknownField() {
+        ResponseEntity<List<DeliverySummary>> example = deliveryControllerMock.getDeliveryFields(2L, null, 1L, null,
+                null, null, List.of("courierId", "locations"));
+
+        assertEquals(HttpStatus.BAD_REQUEST, example.getStatusCode());
+        verify(deliveryServiceMock, never()).getDeliverySummariesByVendorId(anyLong(), anyLong(), anyInt(), any());
+    }
+
+    @Test
+    public void testSummaryOmitsFieldsNotAskedFor() throws IOException {
+        DeliverySummary summary = new DeliverySummary();
+        summary.setDeliveryId(5L);
+        summary.setDelivered(false);
+
+        assertEquals("{\"deliveryId\":5,\"delivered\":false}", new ObjectMapper().writeValueAsString(summary));
+    }
+
+    @Test
+    public void testStreamBadRequest() {
+        ResponseEntity<StreamingResponseBody> example = deliveryControllerMock.streamDeliveries(2L, 1L, 3L);
+
+        assertEquals(HttpStatus.BAD_REQUEST, example.getStatusCode());
+    }
+
+    @Test
+    public void testStreamForbidden() {
+        ResponseEntity<StreamingResponseBody> example = deliveryControllerMock.streamDeliveries(9L, 1L, null);
+
+        assertEquals(HttpStatus.FORBIDDEN, example.getStatusCode());
+    }
+
+    @Test
+    public void testStreamVendor() throws IOException {
+        doAnswer(invocation -> {
+            Consumer<Delivery> consumer = invocation.getArgument(1);
+            consumer.accept(new Delivery().deliveryId(1L));
+            consumer.accept(new Delivery().deliveryId(2L));
+            return null;
+        }).when(deliveryServiceMock).forEachDeliveryByVendorId(eq(1L), any());
+
+        ResponseEntity<StreamingResponseBody> example = deliveryControllerMock.streamDeliveries(2L, 1L, null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        example.getBody().writeTo(out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].contains("\"deliveryId\":1"));
+        assertTrue(lines[1].contains("\"deliveryId\":2"));
+        verify(deliveryServiceMock, never()).forEachDeliveryByCourierId(anyLong(), any());
+    }
+}